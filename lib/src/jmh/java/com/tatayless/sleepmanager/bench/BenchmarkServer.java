@@ -0,0 +1,193 @@
+package com.tatayless.sleepmanager.bench;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.commands.CommandManager;
+import com.tatayless.sleepmanager.config.ConfigManager;
+import com.tatayless.sleepmanager.listeners.PlayerListener;
+import com.tatayless.sleepmanager.managers.VoteManager;
+import com.tatayless.sleepmanager.managers.WorldStateRegistry;
+import com.tatayless.sleepmanager.scheduling.BukkitTaskDispatcher;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import com.tatayless.sleepmanager.utils.MessageUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.GameMode;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.mockito.MockSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * A stub server for benchmarks: one overworld with a configurable number of
+ * survival players, wired to the real managers, listener and command handler.
+ * Mocks are stub-only so they don't record invocations while measuring.
+ */
+public final class BenchmarkServer {
+    public static final String WORLD_NAME = "world";
+
+    private static final Map<String, World> WORLDS = new ConcurrentHashMap<>();
+    private static final List<World> WORLD_LIST = new ArrayList<>();
+    // Repeating tasks started by each plugin, run by tick()
+    private static final Map<Object, List<Runnable>> REPEATING = new ConcurrentHashMap<>();
+
+    public final SleepManager plugin;
+    public final World world;
+    public final List<Player> players;
+    public final VoteManager voteManager;
+    public final MessageUtils messageUtils;
+    public final PlayerListener listener;
+    public final CommandManager commandManager;
+
+    private final WorldStateRegistry worldStates = new WorldStateRegistry();
+    // Off, as in a server with stats-enabled: false; benchmarks flip it to measure the probes
+    public final StatsRecorder stats = new StatsRecorder();
+    private long time = 18000L;
+
+    public BenchmarkServer(int playerCount) throws IOException {
+        installServer();
+
+        world = mock(World.class, stubOnly());
+        UUID worldUid = UUID.randomUUID();
+        when(world.getName()).thenReturn(WORLD_NAME);
+        when(world.getUID()).thenReturn(worldUid);
+        when(world.getEnvironment()).thenReturn(World.Environment.NORMAL);
+        when(world.getTime()).thenAnswer(invocation -> time);
+        registerWorld(world);
+
+        players = new ArrayList<>(playerCount);
+        for (int i = 0; i < playerCount; i++) {
+            players.add(player(world));
+        }
+        when(world.getPlayers()).thenReturn(players);
+
+        File dataFolder = Files.createTempDirectory("sleepmanager-bench").toFile();
+        dataFolder.deleteOnExit();
+
+        plugin = mock(SleepManager.class, stubOnly());
+        when(plugin.getWorldStates()).thenReturn(worldStates);
+        when(plugin.getStats()).thenReturn(stats);
+        BukkitTaskDispatcher dispatcher = new BukkitTaskDispatcher(plugin);
+        when(plugin.getDispatcher()).thenReturn(dispatcher);
+        // Never started, so the benchmarks always see a healthy server
+        when(plugin.getTickHealth()).thenReturn(
+                new TickHealthMonitor(dispatcher, Logger.getLogger("SleepManagerBench"), 0, 0));
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("SleepManagerBench"));
+        when(plugin.getResource(anyString())).thenAnswer(
+                invocation -> SleepManager.class.getClassLoader().getResourceAsStream(invocation.getArgument(0)));
+
+        ConfigManager configManager = mock(ConfigManager.class, stubOnly());
+        when(configManager.getLanguage()).thenReturn("en");
+        when(configManager.getVoteTimeLimit()).thenReturn(30);
+        when(configManager.getRevoteCooldown()).thenReturn(0);
+        when(configManager.getVotePercentageThreshold()).thenReturn(50);
+        when(configManager.isWorldEnabled(anyString())).thenReturn(true);
+        when(plugin.getConfigManager()).thenReturn(configManager);
+
+        messageUtils = new MessageUtils(plugin);
+        when(plugin.getMessageUtils()).thenReturn(messageUtils);
+
+        voteManager = new VoteManager(plugin);
+        when(plugin.getVoteManager()).thenReturn(voteManager);
+        for (Player player : players) {
+            voteManager.updatePlayer(player, world, GameMode.SURVIVAL);
+        }
+
+        listener = new PlayerListener(plugin);
+        commandManager = new CommandManager(plugin);
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    /**
+     * Adds an extra named world, e.g. for tab completion
+     */
+    public static void registerWorld(World world) {
+        if (WORLDS.put(world.getName(), world) == null) {
+            synchronized (WORLD_LIST) {
+                WORLD_LIST.add(world);
+            }
+        }
+    }
+
+    public static World namedWorld(String name) {
+        World world = mock(World.class, stubOnly());
+        when(world.getName()).thenReturn(name);
+        when(world.getUID()).thenReturn(UUID.randomUUID());
+        when(world.getEnvironment()).thenReturn(World.Environment.NORMAL);
+        return world;
+    }
+
+    private static Player player(World world) {
+        Player player = mock(Player.class, stubOnly());
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+        when(player.getWorld()).thenReturn(world);
+        when(player.getGameMode()).thenReturn(GameMode.SURVIVAL);
+        when(player.hasPermission(anyString())).thenReturn(true);
+        Player.Spigot spigot = mock(Player.Spigot.class, stubOnly());
+        when(player.spigot()).thenReturn(spigot);
+        return player;
+    }
+
+    /**
+     * Runs one tick of every repeating task the plugin has started, e.g. the
+     * vote timer that applies queued votes
+     */
+    public void tick() {
+        for (Runnable task : REPEATING.getOrDefault(plugin, Collections.emptyList())) {
+            task.run();
+        }
+    }
+
+    private static MockSettings stubOnly() {
+        return withSettings().stubOnly();
+    }
+
+    // Bukkit's server is a JVM-wide singleton, so install one that resolves whatever worlds are registered
+    private static synchronized void installServer() {
+        if (Bukkit.getServer() != null) {
+            return;
+        }
+
+        BukkitTask task = mock(BukkitTask.class, stubOnly());
+        BukkitScheduler scheduler = mock(BukkitScheduler.class, stubOnly());
+        when(scheduler.runTask(any(), any(Runnable.class))).thenReturn(task);
+        when(scheduler.runTaskLater(any(), any(Runnable.class), anyLong())).thenReturn(task);
+        when(scheduler.runTaskTimer(any(), any(Runnable.class), anyLong(), anyLong())).thenAnswer(invocation -> {
+            List<Runnable> tasks = REPEATING.computeIfAbsent(invocation.getArgument(0),
+                    owner -> new CopyOnWriteArrayList<>());
+            Runnable repeating = invocation.getArgument(1);
+            tasks.add(repeating);
+            BukkitTask handle = mock(BukkitTask.class, stubOnly());
+            doAnswer(cancel -> tasks.remove(repeating)).when(handle).cancel();
+            return handle;
+        });
+
+        Server server = mock(Server.class, stubOnly());
+        when(server.getLogger()).thenReturn(Logger.getLogger("BenchmarkServer"));
+        when(server.getScheduler()).thenReturn(scheduler);
+        when(server.getWorld(anyString())).thenAnswer(invocation -> WORLDS.get(invocation.<String>getArgument(0)));
+        when(server.getWorlds()).thenAnswer(invocation -> {
+            synchronized (WORLD_LIST) {
+                return new ArrayList<>(WORLD_LIST);
+            }
+        });
+        when(server.getOnlinePlayers()).thenReturn(Collections.emptyList());
+        Bukkit.setServer(server);
+    }
+}
@@ -0,0 +1,56 @@
+package com.tatayless.sleepmanager.bench;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tab completion of subcommands and of world names for /sleepmanager toggle.
+ * World name completion scales with the number of loaded worlds, so that is
+ * the parameter here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandManagerBenchmark {
+
+    @Param({ "1", "50", "500" })
+    int worlds;
+
+    private BenchmarkServer server;
+    private CommandSender sender;
+    private Command command;
+
+    private final String[] subCommandArgs = { "t" };
+    private final String[] worldArgs = { "toggle", "world_1" };
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new BenchmarkServer(1);
+        for (int i = 1; i < worlds; i++) {
+            BenchmarkServer.registerWorld(BenchmarkServer.namedWorld("world_" + i));
+        }
+
+        sender = mock(CommandSender.class, withSettings().stubOnly());
+        when(sender.hasPermission(anyString())).thenReturn(true);
+        command = mock(Command.class, withSettings().stubOnly());
+    }
+
+    @Benchmark
+    public List<String> completeSubCommand() {
+        return server.commandManager.onTabComplete(sender, command, "sleepmanager", subCommandArgs);
+    }
+
+    @Benchmark
+    public List<String> completeWorldName() {
+        return server.commandManager.onTabComplete(sender, command, "sleepmanager", worldArgs);
+    }
+}
@@ -0,0 +1,50 @@
+package com.tatayless.sleepmanager.bench;
+
+import com.tatayless.sleepmanager.utils.MessageKey;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message lookups and vote prompt delivery to 1, 50 and 500 players.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageUtilsBenchmark {
+
+    @Param({ "1", "50", "500" })
+    int players;
+
+    private BenchmarkServer server;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new BenchmarkServer(players);
+    }
+
+    @Benchmark
+    public String getMessageByPath() {
+        return server.messageUtils.getMessage("vote.voted_yes");
+    }
+
+    @Benchmark
+    public String getMessageByKey() {
+        return server.messageUtils.getMessage(MessageKey.VOTE_VOTED_YES);
+    }
+
+    @Benchmark
+    public void sendVoteMessageToEachPlayer() {
+        for (int i = 0; i < server.players.size(); i++) {
+            server.messageUtils.sendVoteMessage(server.players.get(i), BenchmarkServer.WORLD_NAME);
+        }
+    }
+
+    @Benchmark
+    public void broadcastVotePrompt() {
+        server.messageUtils.broadcastVotePrompt(BenchmarkServer.WORLD_NAME, server.players);
+    }
+}
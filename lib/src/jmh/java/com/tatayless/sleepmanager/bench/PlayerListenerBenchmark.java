@@ -0,0 +1,64 @@
+package com.tatayless.sleepmanager.bench;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerBedEnterEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Bed entries in a world with 1, 50 and 500 eligible players: rejected during
+ * the day, ignored while a vote is open, and the one that starts a vote
+ * (including the prompt broadcast). Each runs with instrumentation off and on
+ * to show what the stats probes cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerListenerBenchmark {
+
+    @Param({ "1", "50", "500" })
+    int players;
+
+    @Param({ "false", "true" })
+    boolean stats;
+
+    private BenchmarkServer server;
+    private PlayerBedEnterEvent event;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new BenchmarkServer(players);
+        server.stats.setEnabled(stats);
+        Player sleeper = server.players.get(0);
+        event = mock(PlayerBedEnterEvent.class, withSettings().stubOnly());
+        when(event.getPlayer()).thenReturn(sleeper);
+    }
+
+    @Benchmark
+    public void rejectedDuringDay() {
+        server.setTime(6000L);
+        server.listener.onPlayerBedEnter(event);
+    }
+
+    @Benchmark
+    public void duringOpenVote() {
+        server.setTime(18000L);
+        if (!server.voteManager.hasActiveVote(BenchmarkServer.WORLD_NAME)) {
+            server.voteManager.startVote(BenchmarkServer.WORLD_NAME);
+        }
+        server.listener.onPlayerBedEnter(event);
+    }
+
+    @Benchmark
+    public void startsVote() {
+        server.setTime(18000L);
+        server.listener.onPlayerBedEnter(event);
+        server.voteManager.clearVote(BenchmarkServer.WORLD_NAME);
+    }
+}
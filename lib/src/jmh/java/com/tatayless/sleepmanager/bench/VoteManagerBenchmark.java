@@ -0,0 +1,57 @@
+package com.tatayless.sleepmanager.bench;
+
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vote handling in a world with 1, 50 and 500 eligible players: a single
+ * changed vote during an open session, and a full round from start through
+ * every vote to the result broadcast. Votes are queued and counted on the
+ * next tick, so both include that tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoteManagerBenchmark {
+
+    @Param({ "1", "50", "500" })
+    int players;
+
+    private BenchmarkServer server;
+    private boolean nextVote;
+
+    @Setup
+    public void setUp() throws Exception {
+        server = new BenchmarkServer(players);
+    }
+
+    @Benchmark
+    public boolean singleVote() {
+        if (!server.voteManager.hasActiveVote(BenchmarkServer.WORLD_NAME)) {
+            server.voteManager.startVote(BenchmarkServer.WORLD_NAME);
+        }
+        // Flip one player's vote so the session never completes
+        nextVote = !nextVote;
+        boolean accepted = server.voteManager.vote(server.players.get(0), nextVote);
+        server.tick();
+        return accepted;
+    }
+
+    @Benchmark
+    public boolean fullVoteRound() {
+        List<Player> voters = server.players;
+        server.voteManager.startVote(BenchmarkServer.WORLD_NAME);
+        for (int i = 0; i < voters.size(); i++) {
+            server.voteManager.vote(voters.get(i), (i & 1) == 0);
+        }
+        // Counts the whole batch, and ends the vote now that everyone has voted
+        server.tick();
+        return server.voteManager.isSleepEnabled(BenchmarkServer.WORLD_NAME);
+    }
+}
@@ -0,0 +1,95 @@
+package com.tatayless.sleepmanager.managers;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a full vote (every eligible player votes, completion is checked after
+ * each vote, then the result is counted) against the incremental VoteSession
+ * and the previous scan-based implementation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoteSessionBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int eligiblePlayers;
+
+    private List<UUID> playerIds;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        playerIds = new ArrayList<>(eligiblePlayers);
+        for (int i = 0; i < eligiblePlayers; i++) {
+            playerIds.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+    }
+
+    @Benchmark
+    public int incrementalTallies() {
+        VoteSession session = new VoteSession("world", playerIds);
+        for (int i = 0; i < playerIds.size(); i++) {
+            session.vote(playerIds.get(i), (i & 1) == 0);
+            if (session.haveAllPlayersVoted()) {
+                break;
+            }
+        }
+        return session.countYesVotes() + session.getTotalVotes();
+    }
+
+    @Benchmark
+    public int legacyScan() {
+        LegacyVoteSession session = new LegacyVoteSession(playerIds);
+        for (int i = 0; i < playerIds.size(); i++) {
+            session.vote(playerIds.get(i), (i & 1) == 0);
+            if (session.haveAllPlayersVoted()) {
+                break;
+            }
+        }
+        return session.countYesVotes() + session.getTotalVotes();
+    }
+
+    // The VoteSession implementation before tallies were kept incrementally
+    static final class LegacyVoteSession {
+        private final Map<UUID, Boolean> votes = new HashMap<>();
+        private final Set<UUID> eligiblePlayers;
+
+        LegacyVoteSession(Collection<UUID> playerIds) {
+            this.eligiblePlayers = new HashSet<>(playerIds);
+        }
+
+        void vote(UUID playerUuid, boolean voteYes) {
+            votes.put(playerUuid, voteYes);
+        }
+
+        boolean haveAllPlayersVoted() {
+            for (UUID playerId : eligiblePlayers) {
+                if (!votes.containsKey(playerId)) {
+                    return false;
+                }
+            }
+            return !eligiblePlayers.isEmpty();
+        }
+
+        int countYesVotes() {
+            int count = 0;
+            for (Boolean vote : votes.values()) {
+                if (vote) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        int getTotalVotes() {
+            return votes.size();
+        }
+    }
+}
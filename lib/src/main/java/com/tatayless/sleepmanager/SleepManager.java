@@ -1,33 +1,95 @@
 package com.tatayless.sleepmanager;
 
+import com.tatayless.sleepmanager.cache.BinaryCache;
 import com.tatayless.sleepmanager.commands.CommandManager;
 import com.tatayless.sleepmanager.config.ConfigManager;
+import com.tatayless.sleepmanager.config.ConfigSnapshot;
+import com.tatayless.sleepmanager.config.ConfigWatcher;
+import com.tatayless.sleepmanager.history.VoteHistoryLog;
 import com.tatayless.sleepmanager.listeners.PlayerListener;
+import com.tatayless.sleepmanager.listeners.WorldListener;
 import com.tatayless.sleepmanager.managers.VoteManager;
+import com.tatayless.sleepmanager.managers.WorldStateRegistry;
+import com.tatayless.sleepmanager.scheduling.TaskDispatcher;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import com.tatayless.sleepmanager.sync.PluginMessagingTransport;
+import com.tatayless.sleepmanager.sync.VoteSync;
 import com.tatayless.sleepmanager.utils.MessageUtils;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
 public class SleepManager extends JavaPlugin {
 
+    private WorldStateRegistry worldStates;
+    private BinaryCache binaryCache;
+    private StatsRecorder stats;
+    private TaskDispatcher dispatcher;
+    private TickHealthMonitor tickHealth;
+    private VoteHistoryLog voteHistory;
+    private VoteSync voteSync;
     private ConfigManager configManager;
+    private ConfigWatcher configWatcher;
     private VoteManager voteManager;
     private MessageUtils messageUtils;
 
     @Override
     public void onEnable() {
+        long enableStart = System.nanoTime();
+
         // Log initialization message
         getLogger().info(
                 "[SleepManager] Initializing SleepManager plugin version " + getDescription().getVersion() + "...");
 
+        // Per-world state shared by the config and vote managers
+        worldStates = new WorldStateRegistry();
+
+        // Classic main-thread scheduling, or region/entity schedulers on Folia
+        dispatcher = TaskDispatcher.forServer(this);
+
+        // Hot-path instrumentation; stays off until the config says otherwise
+        stats = new StatsRecorder();
+
+        // Parsed config and language files, reused while the files are unchanged
+        binaryCache = new BinaryCache(new File(getDataFolder(), "cache"), getLogger());
+
         // Initialize config
         configManager = new ConfigManager(this);
         configManager.loadConfig();
+        stats.setEnabled(configManager.isStatsEnabled());
+
+        // Watch tick times so messages get lighter while the server is behind
+        tickHealth = new TickHealthMonitor(dispatcher, getLogger(), configManager.getDegradedMspt(),
+                configManager.getCriticalMspt());
+        tickHealth.start();
+
+        // Vote outcomes are appended to segment files under history/
+        if (configManager.isHistoryEnabled()) {
+            voteHistory = new VoteHistoryLog(new File(getDataFolder(), "history"),
+                    configManager.getHistoryRecordsPerSegment(), configManager.getHistoryMaxSegments(), getLogger());
+        }
+
+        // Share vote state with the other servers behind the proxy
+        if (configManager.isSyncEnabled()) {
+            voteSync = new VoteSync(new PluginMessagingTransport(this), dispatcher, getLogger(),
+                    VoteSync.originOf(configManager.getSyncServerId()), configManager.getSyncFlushIntervalTicks());
+        }
 
         // Initialize message utils for localization
         messageUtils = new MessageUtils(this);
 
         // Initialize vote manager
         voteManager = new VoteManager(this);
+        voteManager.indexOnlinePlayers();
+        if (voteSync != null) {
+            voteSync.start(voteManager::applyRemote);
+        }
 
         // Register commands
         CommandManager commandManager = new CommandManager(this);
@@ -36,23 +98,127 @@ public class SleepManager extends JavaPlugin {
 
         // Register event listeners
         getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
+        getServer().getPluginManager().registerEvents(new WorldListener(this), this);
+
+        // Pick up edits to config.yml and lang/ without a command
+        if (configManager.isWatchFiles()) {
+            configWatcher = new ConfigWatcher(getDataFolder(), getLogger(), configManager::isChangedOnDisk,
+                    this::reload);
+            configWatcher.start();
+        }
 
-        getLogger().info("SleepManager has been enabled!");
+        getLogger().info(String.format(Locale.ROOT,
+                "SleepManager has been enabled in %.1f ms (startup cache: %d hit%s, %d miss%s)",
+                (System.nanoTime() - enableStart) / 1_000_000.0, binaryCache.getHits(),
+                binaryCache.getHits() == 1 ? "" : "s", binaryCache.getMisses(),
+                binaryCache.getMisses() == 1 ? "" : "es"));
     }
 
     @Override
     public void onDisable() {
-        // Save config on disable
-        configManager.saveConfig();
+        if (configWatcher != null) {
+            configWatcher.stop();
+        }
+
+        // Write any pending config changes, waiting a bounded time for the writer
+        if (configManager != null) {
+            configManager.flush(5, TimeUnit.SECONDS);
+        }
+
+        // Send changes still waiting for the next batch
+        if (voteSync != null) {
+            voteSync.stop();
+        }
 
-        // Clear any ongoing votes
+        // Clear any ongoing votes and stop their timers
         if (voteManager != null) {
             voteManager.clearAllVotes();
+            voteManager.shutdown();
+        }
+
+        // Write vote outcomes still queued for the history log
+        if (voteHistory != null) {
+            voteHistory.close(5, TimeUnit.SECONDS);
+        }
+
+        if (tickHealth != null) {
+            tickHealth.stop();
+        }
+
+        // Deliver broadcasts that were still spread over upcoming ticks
+        if (messageUtils != null) {
+            messageUtils.flushBroadcasts();
         }
 
         getLogger().info("SleepManager has been disabled!");
     }
 
+    /**
+     * Reads config.yml and the language files again off the main thread and
+     * swaps them in. Votes already running keep going; new settings apply
+     * from the next read.
+     *
+     * @return A future completed with the changed settings that only apply after a restart
+     */
+    public CompletableFuture<List<String>> reload() {
+        ConfigSnapshot previous = configManager.getSnapshot();
+        // The settings are swapped in on the main thread; the language files are read off it again
+        return configManager.reload().thenApplyAsync(snapshot -> {
+            messageUtils.loadLanguage();
+            stats.setEnabled(snapshot.isStatsEnabled());
+
+            List<String> restartOnly = snapshot.getRestartOnlyChanges(previous);
+            if (restartOnly.isEmpty()) {
+                getLogger().info("Reloaded config and language files");
+            } else {
+                getLogger().warning("Reloaded config and language files; restart to apply changes to: "
+                        + String.join(", ", restartOnly));
+            }
+            return restartOnly;
+        }).whenComplete((restartOnly, error) -> {
+            if (error != null) {
+                getLogger().log(Level.SEVERE, "Could not reload config and language files", error);
+            }
+        });
+    }
+
+    /**
+     * @return The cache of parsed config and language files
+     */
+    public BinaryCache getBinaryCache() {
+        return binaryCache;
+    }
+
+    public WorldStateRegistry getWorldStates() {
+        return worldStates;
+    }
+
+    public TaskDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public TickHealthMonitor getTickHealth() {
+        return tickHealth;
+    }
+
+    /**
+     * @return The vote history log, or null if history is turned off
+     */
+    public VoteHistoryLog getVoteHistory() {
+        return voteHistory;
+    }
+
+    /**
+     * @return Vote sync with other servers, or null if sync is turned off
+     */
+    public VoteSync getVoteSync() {
+        return voteSync;
+    }
+
+    public StatsRecorder getStats() {
+        return stats;
+    }
+
     public ConfigManager getConfigManager() {
         return configManager;
     }
@@ -0,0 +1,230 @@
+package com.tatayless.sleepmanager.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the parsed form of YAML files (config, language bundles) in a compact
+ * binary file next to them, so a restart with unchanged files skips parsing.
+ *
+ * Each entry records the size, modification time and SHA-256 of the file it
+ * was built from, plus a schema number the caller bumps whenever the payload
+ * layout changes. An entry is used when the size and time still match, or
+ * when they changed but the contents hash the same (e.g. the file was
+ * touched). Anything else, including a torn or corrupt entry, is a miss and
+ * the caller parses the YAML as before.
+ *
+ * Layout, big-endian: magic (4), schema (4), source size (8), source
+ * modification time (8), source SHA-256 (32), payload length (4), payload
+ * CRC32 (4), payload.
+ */
+public final class BinaryCache {
+    private static final int MAGIC = 0x534D4331; // "SMC1"
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 32 + 4 + 4;
+
+    private final File folder;
+    private final Logger logger;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @param folder Where cache entries are kept
+     * @param logger Where failures to write an entry are logged
+     */
+    public BinaryCache(File folder, Logger logger) {
+        this.folder = folder;
+        this.logger = logger;
+    }
+
+    /**
+     * Reads an entry with a single mapped read of its file
+     *
+     * @param name   The entry's name, e.g. {@code config} or {@code lang-en}
+     * @param source The file the entry was built from
+     * @param schema The payload layout the caller expects
+     * @return The payload, or null if there is no usable entry
+     */
+    public ByteBuffer read(String name, File source, int schema) {
+        File file = entryFile(name);
+        if (!file.isFile() || !source.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel closes
+            ByteBuffer entry = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer payload = validate(entry, source, schema);
+            if (payload == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return payload;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Writes an entry, replacing any older one. A crash mid-write leaves the
+     * old entry or none, never a partial one.
+     *
+     * @param name    The entry's name
+     * @param source  The file the payload was parsed from
+     * @param schema  The payload layout
+     * @param payload The payload
+     */
+    public void write(String name, File source, int schema, byte[] payload) {
+        try {
+            byte[] sourceBytes = Files.readAllBytes(source.toPath());
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            ByteBuffer entry = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+            entry.putInt(MAGIC)
+                    .putInt(schema)
+                    .putLong(sourceBytes.length)
+                    .putLong(source.lastModified())
+                    .put(sha256(sourceBytes))
+                    .putInt(payload.length)
+                    .putInt((int) crc.getValue())
+                    .put(payload);
+
+            Files.createDirectories(folder.toPath());
+            Path target = entryFile(name).toPath();
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.write(temp, entry.array());
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not write startup cache " + name, e);
+        }
+    }
+
+    private static ByteBuffer validate(ByteBuffer entry, File source, int schema) throws IOException {
+        if (entry.getInt() != MAGIC || entry.getInt() != schema) {
+            return null;
+        }
+
+        long size = entry.getLong();
+        long modified = entry.getLong();
+        byte[] hash = new byte[32];
+        entry.get(hash);
+        if (size != source.length() || modified != source.lastModified()) {
+            // Changed on disk, or just touched: only the contents can tell
+            if (!Arrays.equals(hash, sha256(Files.readAllBytes(source.toPath())))) {
+                return null;
+            }
+        }
+
+        int length = entry.getInt();
+        int checksum = entry.getInt();
+        if (length != entry.remaining()) {
+            return null;
+        }
+        ByteBuffer payload = entry.slice();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue() == checksum ? payload : null;
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private File entryFile(String name) {
+        return new File(folder, name + ".bin");
+    }
+
+    /**
+     * @return How many entries were read since startup
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return How many reads found no usable entry since startup
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Writes a string, or null, for {@link #getString}
+     */
+    public static void putString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #putString}
+     *
+     * @return The string, or null
+     */
+    public static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new IllegalArgumentException("String runs past the end of the cache entry");
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds a payload with a data stream
+     */
+    public static byte[] payload(PayloadWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            // Not thrown by an in-memory stream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @FunctionalInterface
+    public interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
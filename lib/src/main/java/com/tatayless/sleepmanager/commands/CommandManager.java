@@ -1,6 +1,16 @@
 package com.tatayless.sleepmanager.commands;
 
 import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.history.VoteHistoryLog;
+import com.tatayless.sleepmanager.history.VoteRecord;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.LatencyHistogram;
+import com.tatayless.sleepmanager.stats.Probe;
+import com.tatayless.sleepmanager.stats.RollingCounter;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import com.tatayless.sleepmanager.sync.VoteSync;
+import com.tatayless.sleepmanager.utils.MessageKey;
+import com.tatayless.sleepmanager.utils.MessageUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.command.Command;
@@ -9,12 +19,22 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class CommandManager implements CommandExecutor, TabCompleter {
+    // Permissions only ops get by default; every other permission is open to all players
+    private static final Set<String> ADMIN_PERMISSIONS = Set.of("sleepmanager.toggle", "sleepmanager.stats",
+            "sleepmanager.history", "sleepmanager.reload");
+    private static final int DEFAULT_HISTORY_LINES = 10;
+    private static final int MAX_HISTORY_LINES = 50;
+
     private final SleepManager plugin;
 
     public CommandManager(SleepManager plugin) {
@@ -48,12 +68,12 @@ public class CommandManager implements CommandExecutor, TabCompleter {
                     String worldName = player.getWorld().getName();
 
                     if (!plugin.getConfigManager().isWorldEnabled(worldName)) {
-                        plugin.getMessageUtils().sendMessage(player, "command.world_disabled");
+                        plugin.getMessageUtils().sendMessage(player, MessageKey.COMMAND_WORLD_DISABLED);
                         return true;
                     }
 
                     if (!plugin.getVoteManager().canStartVote(worldName)) {
-                        plugin.getMessageUtils().sendMessage(player, "command.revote_cooldown");
+                        plugin.getMessageUtils().sendMessage(player, MessageKey.COMMAND_REVOTE_COOLDOWN);
                         return true;
                     }
 
@@ -135,6 +155,54 @@ public class CommandManager implements CommandExecutor, TabCompleter {
                 }
                 break;
 
+            case "stats":
+                if (hasPermission(sender, "sleepmanager.stats")) {
+                    if (args.length > 1 && Bukkit.getWorld(args[1]) == null) {
+                        sender.sendMessage("§cWorld '" + args[1] + "' not found.");
+                        return true;
+                    }
+
+                    sendStats(sender, args.length > 1 ? args[1] : null);
+                }
+                break;
+
+            case "history":
+                if (hasPermission(sender, "sleepmanager.history")) {
+                    sendHistory(sender, args);
+                }
+                break;
+
+            case "reload":
+                if (hasPermission(sender, "sleepmanager.reload")) {
+                    reload(sender);
+                }
+                break;
+
+            case "language":
+                if (!(sender instanceof Player)) {
+                    sender.sendMessage("§cThis command can only be used by players.");
+                    return true;
+                }
+
+                if (hasPermission(sender, "sleepmanager.language")) {
+                    Player player = (Player) sender;
+                    MessageUtils messageUtils = plugin.getMessageUtils();
+
+                    if (args.length == 1) {
+                        String language = messageUtils.getLanguageOverride(player);
+                        sender.sendMessage(language == null ? "§aMessages follow your client's language."
+                                : "§aYour language is set to §f" + language + "§a.");
+                    } else if (args[1].equalsIgnoreCase("reset")) {
+                        messageUtils.setLanguageOverride(player, null);
+                        sender.sendMessage("§aMessages now follow your client's language.");
+                    } else if (messageUtils.setLanguageOverride(player, args[1])) {
+                        sender.sendMessage("§aYour language is now §f" + args[1].toLowerCase() + "§a.");
+                    } else {
+                        sender.sendMessage("§cLanguage '" + args[1] + "' is not available.");
+                    }
+                }
+                break;
+
             default:
                 sendHelpMessage(sender);
                 break;
@@ -143,13 +211,170 @@ public class CommandManager implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    private void sendStats(CommandSender sender, String worldName) {
+        StatsRecorder stats = plugin.getStats();
+
+        if (worldName == null) {
+            sender.sendMessage("§6===== Sleep Manager Stats =====");
+        } else {
+            sender.sendMessage("§6===== Sleep Manager Stats: " + worldName + " =====");
+        }
+
+        long coalesced = worldName == null ? plugin.getVoteManager().getCoalescedNightSkips()
+                : plugin.getVoteManager().getCoalescedNightSkips(worldName);
+        sender.sendMessage("§eNight skips merged into a pending one: §f" + coalesced);
+
+        TickHealthMonitor tickHealth = plugin.getTickHealth();
+        sender.sendMessage("§eServer load: §f" + tickHealth.getLevel().name().toLowerCase(Locale.ROOT)
+                + String.format(Locale.ROOT, " §7(%.1f mspt)", tickHealth.getMspt())
+                + " §7degraded §f" + tickHealth.getTransitions(TickHealthMonitor.LoadLevel.DEGRADED) + "x"
+                + " §7critical §f" + tickHealth.getTransitions(TickHealthMonitor.LoadLevel.CRITICAL) + "x");
+
+        VoteSync sync = plugin.getVoteSync();
+        if (sync != null) {
+            sender.sendMessage("§eVote sync: §fsent " + sync.getSentOps() + " changes in " + sync.getSentBatches()
+                    + " batches§7, §freceived " + sync.getReceivedOps()
+                    + (sync.getRejectedBatches() > 0
+                            ? " §c(" + sync.getRejectedBatches() + " batches unreadable)" : ""));
+        }
+
+        if (!stats.isEnabled()) {
+            sender.sendMessage("§cInstrumentation is disabled. Set stats-enabled: true in config.yml to collect stats.");
+            return;
+        }
+
+        sender.sendMessage("§7Counts over 1m/5m/15m, timings since startup");
+        for (Probe probe : Probe.values()) {
+            long oneMinute;
+            long fiveMinutes;
+            long fifteenMinutes;
+            if (worldName == null) {
+                oneMinute = stats.getCount(probe, RollingCounter.ONE_MINUTE);
+                fiveMinutes = stats.getCount(probe, RollingCounter.FIVE_MINUTES);
+                fifteenMinutes = stats.getCount(probe, RollingCounter.FIFTEEN_MINUTES);
+            } else {
+                oneMinute = stats.getCount(probe, worldName, RollingCounter.ONE_MINUTE);
+                fiveMinutes = stats.getCount(probe, worldName, RollingCounter.FIVE_MINUTES);
+                fifteenMinutes = stats.getCount(probe, worldName, RollingCounter.FIFTEEN_MINUTES);
+            }
+
+            LatencyHistogram timings = stats.getTimings(probe);
+            sender.sendMessage("§e" + probe.getDisplayName() + (probe.isMainThread() ? "" : " §7(async)")
+                    + " §f" + oneMinute + "/" + fiveMinutes + "/" + fifteenMinutes
+                    + " §7p50 §f" + formatNanos(timings.getPercentile(50))
+                    + " §7p99 §f" + formatNanos(timings.getPercentile(99))
+                    + " §7max §f" + formatNanos(timings.getMax()));
+        }
+
+        // Timings aren't kept per world, so say so rather than show server-wide numbers as the world's
+        if (worldName != null) {
+            sender.sendMessage("§7Timings are server-wide.");
+        }
+    }
+
+    // Usage: history [world] [n]; the world may be omitted, and may be one that is no longer loaded
+    private void sendHistory(CommandSender sender, String[] args) {
+        VoteHistoryLog history = plugin.getVoteHistory();
+        if (history == null) {
+            sender.sendMessage("§cVote history is disabled. Set history-enabled: true in config.yml to record votes.");
+            return;
+        }
+
+        String worldName = null;
+        int limit = DEFAULT_HISTORY_LINES;
+        for (int i = 1; i < args.length && i < 3; i++) {
+            Integer count = parseCount(args[i]);
+            if (count != null) {
+                limit = Math.min(count, MAX_HISTORY_LINES);
+            } else if (i == 1) {
+                worldName = args[i];
+            } else {
+                sender.sendMessage("§cUsage: /sleepmanager history [world] [count]");
+                return;
+            }
+        }
+        if (limit <= 0) {
+            sender.sendMessage("§cThe count must be at least 1.");
+            return;
+        }
+
+        String title = worldName == null ? "§6===== Recent Sleep Votes ====="
+                : "§6===== Recent Sleep Votes: " + worldName + " =====";
+        // Read on the history thread; the lines are sent back on the sender's own thread
+        history.recent(worldName, limit).thenAccept(records -> {
+            List<String> lines = new ArrayList<>(records.size() + 1);
+            lines.add(title);
+            if (records.isEmpty()) {
+                lines.add("§7No votes recorded yet.");
+            }
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.ROOT);
+            for (VoteRecord record : records) {
+                lines.add("§e" + dateFormat.format(new Date(record.getEndedAtMillis()))
+                        + " §f" + record.getWorldName()
+                        + (record.isPassed() ? " §apassed" : " §cfailed")
+                        + " §7yes §f" + record.getYesVotes()
+                        + " §7no §f" + record.getNoVotes()
+                        + " §7of §f" + record.getEligible()
+                        + " §7(needed " + record.getThreshold() + "%, "
+                        + (record.getEndTick() - record.getStartTick()) + " ticks)");
+            }
+            sendFromAnyThread(sender, lines);
+        });
+    }
+
+    private void reload(CommandSender sender) {
+        sender.sendMessage("§eReloading config and language files...");
+        // Parsed off the main thread; the result is sent back on the sender's own thread
+        plugin.reload().whenComplete((restartOnly, error) -> {
+            List<String> lines = new ArrayList<>(2);
+            if (error != null) {
+                lines.add("§cReload failed, the previous settings are still in use. See the console for details.");
+            } else {
+                lines.add("§aConfig and language files reloaded.");
+                if (!restartOnly.isEmpty()) {
+                    lines.add("§7Restart the server to apply changes to: " + String.join(", ", restartOnly));
+                }
+            }
+            sendFromAnyThread(sender, lines);
+        });
+    }
+
+    private void sendFromAnyThread(CommandSender sender, List<String> lines) {
+        Runnable send = () -> lines.forEach(sender::sendMessage);
+        if (sender instanceof Player) {
+            plugin.getDispatcher().runForPlayer((Player) sender, send);
+        } else {
+            // The console accepts messages from any thread
+            send.run();
+        }
+    }
+
+    private static Integer parseCount(String arg) {
+        try {
+            return Integer.parseInt(arg);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000L) {
+            return nanos + "ns";
+        }
+        if (nanos < 1_000_000L) {
+            return String.format(Locale.ROOT, "%.1fµs", nanos / 1_000.0);
+        }
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000.0);
+    }
+
     @Override
     public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
         List<String> completions = new ArrayList<>();
 
         if (args.length == 1) {
             String partial = args[0].toLowerCase();
-            List<String> subCommands = Arrays.asList("version", "revote", "yes", "no", "toggle");
+            List<String> subCommands = Arrays.asList("version", "revote", "yes", "no", "toggle", "stats",
+                    "history", "reload", "language");
 
             for (String subCommand : subCommands) {
                 if (subCommand.startsWith(partial)) {
@@ -162,16 +387,33 @@ public class CommandManager implements CommandExecutor, TabCompleter {
                         completions.add(subCommand);
                     } else if (subCommand.equals("toggle") && hasPermission(sender, "sleepmanager.toggle")) {
                         completions.add(subCommand);
+                    } else if (subCommand.equals("stats") && hasPermission(sender, "sleepmanager.stats")) {
+                        completions.add(subCommand);
+                    } else if (subCommand.equals("history") && hasPermission(sender, "sleepmanager.history")) {
+                        completions.add(subCommand);
+                    } else if (subCommand.equals("reload") && hasPermission(sender, "sleepmanager.reload")) {
+                        completions.add(subCommand);
+                    } else if (subCommand.equals("language") && hasPermission(sender, "sleepmanager.language")) {
+                        completions.add(subCommand);
                     }
                 }
             }
-        } else if (args.length == 2 && args[0].equalsIgnoreCase("toggle")
-                && hasPermission(sender, "sleepmanager.toggle")) {
+        } else if (args.length == 2 && (args[0].equalsIgnoreCase("toggle") || args[0].equalsIgnoreCase("stats")
+                || args[0].equalsIgnoreCase("history"))
+                && hasPermission(sender, "sleepmanager." + args[0].toLowerCase())) {
             String partial = args[1].toLowerCase();
             completions = Bukkit.getWorlds().stream()
                     .map(World::getName)
                     .filter(name -> name.toLowerCase().startsWith(partial))
                     .collect(Collectors.toList());
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("language")
+                && hasPermission(sender, "sleepmanager.language")) {
+            String partial = args[1].toLowerCase();
+            List<String> languages = new ArrayList<>(plugin.getMessageUtils().getAvailableLanguages());
+            languages.add("reset");
+            completions = languages.stream()
+                    .filter(language -> language.startsWith(partial))
+                    .collect(Collectors.toList());
         }
 
         return completions;
@@ -196,11 +438,27 @@ public class CommandManager implements CommandExecutor, TabCompleter {
         if (hasPermission(sender, "sleepmanager.toggle")) {
             sender.sendMessage("§e/sleepmanager toggle [world] §7- Toggle sleep voting for a world");
         }
+
+        if (hasPermission(sender, "sleepmanager.stats")) {
+            sender.sendMessage("§e/sleepmanager stats [world] §7- Show vote counts and timings");
+        }
+
+        if (hasPermission(sender, "sleepmanager.history")) {
+            sender.sendMessage("§e/sleepmanager history [world] [count] §7- Show the results of recent votes");
+        }
+
+        if (hasPermission(sender, "sleepmanager.reload")) {
+            sender.sendMessage("§e/sleepmanager reload §7- Reload config.yml and the language files");
+        }
+
+        if (hasPermission(sender, "sleepmanager.language")) {
+            sender.sendMessage("§e/sleepmanager language [code|reset] §7- Choose the language of messages");
+        }
     }
 
     private boolean hasPermission(CommandSender sender, String permission) {
         return sender.hasPermission(permission) ||
-                (sender.isOp() && permission.equals("sleepmanager.toggle")) ||
-                (!permission.equals("sleepmanager.toggle"));
+                (sender.isOp() && ADMIN_PERMISSIONS.contains(permission)) ||
+                (!ADMIN_PERMISSIONS.contains(permission));
     }
 }
@@ -1,29 +1,57 @@
 package com.tatayless.sleepmanager.config;
 
 import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.cache.BinaryCache;
+import com.tatayless.sleepmanager.managers.WorldSettings;
+import com.tatayless.sleepmanager.managers.WorldSleepState;
+import com.tatayless.sleepmanager.managers.WorldStateRegistry;
+import com.tatayless.sleepmanager.stats.Probe;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
 import org.bukkit.World;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 
 public class ConfigManager {
+    // How long a save waits for further changes before writing, so bursts of toggles coalesce
+    private static final long SAVE_DELAY_MILLIS = 1000L;
+
     private final SleepManager plugin;
-    private FileConfiguration config;
     private File configFile;
+    // Whether the last load was served from the startup cache instead of YAML
+    private volatile boolean loadedFromCache;
+    // config.yml's modification time when we last read or wrote it, so the watcher can ignore our own saves
+    private volatile long lastSeenModified;
+
+    // Saves are written behind on a single background thread
+    private ScheduledThreadPoolExecutor saveExecutor;
+    private final AtomicReference<SavedValues> pendingSave = new AtomicReference<>();
+    private volatile boolean dirty;
 
-    private int revoteCooldown;
-    private int voteTimeLimit;
-    private String language;
-    private int votePercentageThreshold;
-    private Map<String, Boolean> worldToggles;
+    // Swapped whole on reload, so readers never see half-applied settings
+    private volatile ConfigSnapshot snapshot;
+    // Live world toggles and rules are held by the registry
+    private final WorldStateRegistry worldStates;
+    private final StatsRecorder stats;
 
     public ConfigManager(SleepManager plugin) {
         this.plugin = plugin;
-        this.worldToggles = new HashMap<>();
+        this.worldStates = plugin.getWorldStates();
+        this.stats = plugin.getStats();
     }
 
     public void loadConfig() {
@@ -35,90 +63,334 @@ public class ConfigManager {
             plugin.saveResource("config.yml", false);
         }
 
-        config = YamlConfiguration.loadConfiguration(configFile);
-
-        // Load settings
-        revoteCooldown = config.getInt("revote-cooldown", 60); // Default 60 seconds
-        voteTimeLimit = config.getInt("vote-time-limit", 30); // Default 30 seconds
-        language = config.getString("language", "en");
-        votePercentageThreshold = config.getInt("vote-percentage-threshold", 50); // Default 50%
+        apply(readSnapshot());
+    }
 
-        // Validate percentage is within 0-100 range
-        if (votePercentageThreshold < 0) {
-            votePercentageThreshold = 0;
-            plugin.getLogger().warning("vote-percentage-threshold was set below 0, defaulting to 0");
-        } else if (votePercentageThreshold > 100) {
-            votePercentageThreshold = 100;
-            plugin.getLogger().warning("vote-percentage-threshold was set above 100, defaulting to 100");
+    /**
+     * Reads config.yml again on the background writer and swaps the new
+     * settings in on the main thread once they are fully parsed. Changes made
+     * in game that haven't been written yet are dropped, since the file is
+     * what was asked for. Safe to call from any thread.
+     *
+     * @return A future completed with the new settings on the main thread
+     */
+    public CompletableFuture<ConfigSnapshot> reload() {
+        pendingSave.set(null);
+        dirty = false;
+        CompletableFuture<ConfigSnapshot> read;
+        synchronized (this) {
+            read = CompletableFuture.supplyAsync(this::readSnapshot, getSaveExecutor());
         }
+        return read.thenApplyAsync(loaded -> {
+            // Anything toggled in game since the reload was asked for goes too
+            pendingSave.set(null);
+            dirty = false;
+            apply(loaded);
+            return loaded;
+        }, task -> plugin.getDispatcher().runGlobal(task));
+    }
 
-        // Load world toggles
-        if (config.contains("worlds")) {
-            for (String worldName : config.getConfigurationSection("worlds").getKeys(false)) {
-                worldToggles.put(worldName, config.getBoolean("worlds." + worldName));
+    // Reuses the settings parsed last time if config.yml hasn't changed since
+    private ConfigSnapshot readSnapshot() {
+        lastSeenModified = configFile.lastModified();
+        BinaryCache cache = plugin.getBinaryCache();
+        ByteBuffer cached = cache != null ? cache.read("config", configFile, ConfigSnapshot.CACHE_SCHEMA) : null;
+        ConfigSnapshot loaded = cached != null ? ConfigSnapshot.readFrom(cached) : null;
+        loadedFromCache = loaded != null;
+        if (loaded == null) {
+            loaded = ConfigSnapshot.fromYaml(YamlConfiguration.loadConfiguration(configFile));
+            if (cache != null) {
+                cache.write("config", configFile, ConfigSnapshot.CACHE_SCHEMA,
+                        BinaryCache.payload(loaded::writeTo));
             }
         }
+        return loaded;
+    }
 
-        // Initialize any missing worlds
-        for (World world : plugin.getServer().getWorlds()) {
-            if (!worldToggles.containsKey(world.getName())) {
-                worldToggles.put(world.getName(), true); // Enabled by default
-            }
+    private void apply(ConfigSnapshot loaded) {
+        // Warnings repeat on every load, cached or not
+        loaded.warnInvalid(plugin.getLogger());
+
+        // The file replaces every toggle, so worlds no longer listed follow the rules
+        // again. Toggles and rules are swapped in together, so a bed entry on another
+        // thread sees either the old settings or the new ones for every world.
+        WorldSettings worldSettings = WorldSettings.of(loaded.getWorldRules()::isEnabled, loaded.getWorldToggles());
+        for (String worldName : loaded.getWorldToggles().keySet()) {
+            worldStates.getOrCreate(worldName);
+        }
+        snapshot = loaded;
+        worldStates.setSettings(worldSettings);
+
+        if (worldSettings.getToggles().size() != loaded.getWorldToggles().size()) {
+            // Toggles that match the rules were dropped; the next save drops them from config.yml
+            markDirty();
         }
     }
 
+    /**
+     * @return The current settings; take this once to read several settings that belong together
+     */
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return Whether config.yml has changed since it was last read or saved, e.g. edited by hand
+     */
+    public boolean isChangedOnDisk() {
+        return configFile != null && configFile.lastModified() != lastSeenModified;
+    }
+
+    /**
+     * @return Whether the last load reused the cached settings instead of parsing config.yml
+     */
+    public boolean isLoadedFromCache() {
+        return loadedFromCache;
+    }
+
+    /**
+     * Marks the config as changed so the next save writes it
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Saves the config if it has changed. Values are snapshotted on the calling
+     * (main) thread; serializing and writing happens on a background thread, and
+     * saves requested while one is pending are merged into it.
+     */
     public void saveConfig() {
-        if (config == null || configFile == null) {
+        if (configFile == null || !dirty) {
             return;
         }
 
-        // Save settings
-        config.set("revote-cooldown", revoteCooldown);
-        config.set("vote-time-limit", voteTimeLimit);
-        config.set("language", language);
-        config.set("vote-percentage-threshold", votePercentageThreshold);
+        // Read-only, and only ever replaced, so the writer can keep it
+        Map<String, Boolean> worldToggles = worldStates.getSettings().getToggles();
+
+        ConfigSnapshot current = snapshot;
+        SavedValues values = new SavedValues(current.getRevoteCooldown(), current.getVoteTimeLimit(),
+                current.getLanguage(), current.getVotePercentageThreshold(), worldToggles);
+        dirty = false;
 
-        // Save world toggles
-        for (Map.Entry<String, Boolean> entry : worldToggles.entrySet()) {
-            config.set("worlds." + entry.getKey(), entry.getValue());
+        // Only schedule a write if none is pending; a pending one picks up these values
+        if (pendingSave.getAndSet(values) == null) {
+            scheduleWrite();
         }
+    }
+
+    // Under the lock, so flush can't shut the writer down between getting and using it
+    private synchronized void scheduleWrite() {
+        getSaveExecutor().schedule(this::writePendingSave, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes any pending changes and stops the background writer, waiting at
+     * most the given time for the write to finish
+     *
+     * @param timeout How long to wait
+     * @param unit    The unit of the timeout
+     */
+    public void flush(long timeout, TimeUnit unit) {
+        saveConfig();
+
+        // Taken and cleared under the lock; a save after this starts a new writer
+        ScheduledThreadPoolExecutor executor;
+        synchronized (this) {
+            executor = saveExecutor;
+            if (executor == null) {
+                return;
+            }
+            // Write now instead of waiting for the delayed task, which is dropped on shutdown
+            executor.execute(this::writePendingSave);
+            executor.shutdown();
+            saveExecutor = null;
+        }
+
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                plugin.getLogger().warning("Timed out waiting for config to be saved");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized ScheduledExecutorService getSaveExecutor() {
+        if (saveExecutor == null) {
+            saveExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "SleepManager-ConfigWriter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            saveExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        }
+        return saveExecutor;
+    }
 
+    // Runs on the writer thread
+    private void writePendingSave() {
+        SavedValues values = pendingSave.getAndSet(null);
+        if (values == null) {
+            return;
+        }
+
+        long start = stats.begin();
         try {
-            config.save(configFile);
+            // Re-read the file so keys and comments we don't manage are kept
+            YamlConfiguration yaml = YamlConfiguration.loadConfiguration(configFile);
+
+            // Save settings
+            yaml.set("revote-cooldown", values.revoteCooldown);
+            yaml.set("vote-time-limit", values.voteTimeLimit);
+            yaml.set("language", values.language);
+            yaml.set("vote-percentage-threshold", values.votePercentageThreshold);
+
+            // Save world toggles; worlds that follow the rules have no entry
+            yaml.set("worlds", null);
+            for (Map.Entry<String, Boolean> entry : values.worldToggles.entrySet()) {
+                yaml.set("worlds." + entry.getKey(), entry.getValue());
+            }
+
+            // Write to a temp file and move it into place so a crash never leaves a partial config
+            Path target = configFile.toPath();
+            Path temp = target.resolveSibling(configFile.getName() + ".tmp");
+            Files.write(temp, yaml.saveToString().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            lastSeenModified = configFile.lastModified();
         } catch (IOException e) {
-            plugin.getLogger().severe("Could not save config to " + configFile);
-            e.printStackTrace();
+            plugin.getLogger().log(Level.SEVERE, "Could not save config to " + configFile, e);
+        } finally {
+            stats.record(Probe.CONFIG_SAVE, start);
         }
     }
 
     public int getRevoteCooldown() {
-        return revoteCooldown;
+        return snapshot.getRevoteCooldown();
     }
 
     public int getVoteTimeLimit() {
-        return voteTimeLimit;
+        return snapshot.getVoteTimeLimit();
     }
 
     public String getLanguage() {
-        return language;
+        return snapshot.getLanguage();
+    }
+
+    public boolean isPerPlayerLanguage() {
+        return snapshot.isPerPlayerLanguage();
+    }
+
+    public int getLanguageCacheSize() {
+        return snapshot.getLanguageCacheSize();
     }
 
     public int getVotePercentageThreshold() {
-        return votePercentageThreshold;
+        return snapshot.getVotePercentageThreshold();
+    }
+
+    public int getBroadcastMaxPerTick() {
+        return snapshot.getBroadcastMaxPerTick();
+    }
+
+    public double getBroadcastMaxMillisPerTick() {
+        return snapshot.getBroadcastMaxMillisPerTick();
+    }
+
+    public double getDegradedMspt() {
+        return snapshot.getDegradedMspt();
+    }
+
+    public double getCriticalMspt() {
+        return snapshot.getCriticalMspt();
+    }
+
+    public boolean isHistoryEnabled() {
+        return snapshot.isHistoryEnabled();
+    }
+
+    public int getHistoryRecordsPerSegment() {
+        return snapshot.getHistoryRecordsPerSegment();
+    }
+
+    public int getHistoryMaxSegments() {
+        return snapshot.getHistoryMaxSegments();
+    }
+
+    public boolean isSyncEnabled() {
+        return snapshot.isSyncEnabled();
+    }
+
+    public String getSyncServerId() {
+        return snapshot.getSyncServerId();
+    }
+
+    public int getSyncFlushIntervalTicks() {
+        return snapshot.getSyncFlushIntervalTicks();
+    }
+
+    public boolean isWatchFiles() {
+        return snapshot.isWatchFiles();
+    }
+
+    public boolean isStatsEnabled() {
+        return snapshot.isStatsEnabled();
     }
 
     public boolean isWorldEnabled(String worldName) {
-        return worldToggles.getOrDefault(worldName, true);
+        return worldStates.getSettings().isEnabled(worldName);
+    }
+
+    public boolean isWorldEnabled(World world) {
+        return worldStates.get(world).isEnabled();
     }
 
     public void toggleWorld(String worldName) {
-        boolean currentValue = isWorldEnabled(worldName);
-        worldToggles.put(worldName, !currentValue);
+        setWorldEnabled(worldStates.getOrCreate(worldName), !isWorldEnabled(worldName));
+        markDirty();
     }
 
     public void toggleAllWorlds(boolean enabled) {
-        for (String worldName : worldToggles.keySet()) {
-            worldToggles.put(worldName, enabled);
+        for (WorldSleepState state : worldStates.all()) {
+            setWorldEnabled(state, enabled);
+        }
+        markDirty();
+    }
+
+    // A world only keeps a toggle of its own while it differs from the rules
+    private static void setWorldEnabled(WorldSleepState state, boolean enabled) {
+        if (enabled == state.isRuleEnabled()) {
+            state.clearToggle();
+        } else {
+            state.setEnabled(enabled);
+        }
+    }
+
+    // Values captured on the main thread for the background writer
+    private static final class SavedValues {
+        private final int revoteCooldown;
+        private final int voteTimeLimit;
+        private final String language;
+        private final int votePercentageThreshold;
+        private final Map<String, Boolean> worldToggles;
+
+        private SavedValues(int revoteCooldown, int voteTimeLimit, String language, int votePercentageThreshold,
+                Map<String, Boolean> worldToggles) {
+            this.revoteCooldown = revoteCooldown;
+            this.voteTimeLimit = voteTimeLimit;
+            this.language = language;
+            this.votePercentageThreshold = votePercentageThreshold;
+            this.worldToggles = worldToggles;
         }
     }
 }
@@ -0,0 +1,375 @@
+package com.tatayless.sleepmanager.config;
+
+import com.tatayless.sleepmanager.cache.BinaryCache;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Every setting in config.yml as read at one moment. Snapshots never change
+ * once built; a reload builds a new one and swaps it in whole, so a reader
+ * that takes the snapshot once sees settings that belong together.
+ */
+public final class ConfigSnapshot {
+    // Layout of the cached settings; bump whenever writeTo changes
+    static final int CACHE_SCHEMA = 4;
+
+    private final int revoteCooldown;
+    private final int voteTimeLimit;
+    private final String language;
+    private final boolean perPlayerLanguage;
+    private final int languageCacheSize;
+    // As configured; the getter clamps it to 0-100
+    private final int votePercentageThreshold;
+    private final boolean statsEnabled;
+    private final int broadcastMaxPerTick;
+    private final double broadcastMaxMillisPerTick;
+    private final double degradedMspt;
+    private final double criticalMspt;
+    private final boolean historyEnabled;
+    private final int historyRecordsPerSegment;
+    private final int historyMaxSegments;
+    private final boolean syncEnabled;
+    private final String syncServerId;
+    private final int syncFlushIntervalTicks;
+    private final boolean watchFiles;
+    // The worlds section of the file; live toggles are held by the world state registry
+    private final Map<String, Boolean> worldToggles;
+    // Decide worlds without a toggle of their own
+    private final WorldRules worldRules;
+    // World rules left out because enabled wasn't true or false, as "pattern (enabled: value)"
+    private final List<String> rejectedWorldRules;
+
+    private ConfigSnapshot(int revoteCooldown, int voteTimeLimit, String language, boolean perPlayerLanguage,
+            int languageCacheSize, int votePercentageThreshold, boolean statsEnabled, int broadcastMaxPerTick,
+            double broadcastMaxMillisPerTick, double degradedMspt, double criticalMspt, boolean historyEnabled,
+            int historyRecordsPerSegment, int historyMaxSegments, boolean syncEnabled, String syncServerId,
+            int syncFlushIntervalTicks, boolean watchFiles, Map<String, Boolean> worldToggles,
+            WorldRules worldRules, List<String> rejectedWorldRules) {
+        this.revoteCooldown = revoteCooldown;
+        this.voteTimeLimit = voteTimeLimit;
+        this.language = language;
+        this.perPlayerLanguage = perPlayerLanguage;
+        this.languageCacheSize = Math.max(1, languageCacheSize);
+        this.votePercentageThreshold = votePercentageThreshold;
+        this.statsEnabled = statsEnabled;
+        this.broadcastMaxPerTick = Math.max(0, broadcastMaxPerTick);
+        this.broadcastMaxMillisPerTick = Math.max(0, broadcastMaxMillisPerTick);
+        this.degradedMspt = Math.max(0, degradedMspt);
+        this.criticalMspt = Math.max(0, criticalMspt);
+        this.historyEnabled = historyEnabled;
+        this.historyRecordsPerSegment = Math.max(1, historyRecordsPerSegment);
+        this.historyMaxSegments = Math.max(0, historyMaxSegments);
+        this.syncEnabled = syncEnabled;
+        this.syncServerId = syncServerId;
+        this.syncFlushIntervalTicks = Math.max(1, syncFlushIntervalTicks);
+        this.watchFiles = watchFiles;
+        this.worldToggles = Collections.unmodifiableMap(worldToggles);
+        this.worldRules = worldRules;
+        this.rejectedWorldRules = Collections.unmodifiableList(rejectedWorldRules);
+    }
+
+    /**
+     * Reads settings from a parsed config.yml, using the defaults for anything missing
+     */
+    static ConfigSnapshot fromYaml(FileConfiguration config) {
+        Map<String, Boolean> worldToggles = new LinkedHashMap<>();
+        ConfigurationSection worlds = config.getConfigurationSection("worlds");
+        if (worlds != null) {
+            for (String worldName : worlds.getKeys(false)) {
+                worldToggles.put(worldName, config.getBoolean("worlds." + worldName));
+            }
+        }
+
+        // Entries without a pattern are skipped; a rule without enabled enables its worlds
+        List<WorldRules.Rule> rules = new ArrayList<>();
+        List<String> rejectedRules = new ArrayList<>();
+        List<Map<?, ?>> ruleList = config.getMapList("world-rules");
+        if (ruleList != null) {
+            for (Map<?, ?> rule : ruleList) {
+                Object pattern = rule.get("pattern");
+                if (pattern == null) {
+                    continue;
+                }
+                Object value = rule.get("enabled");
+                Boolean enabled = value == null ? Boolean.TRUE : toBoolean(value);
+                if (enabled == null) {
+                    rejectedRules.add(pattern + " (enabled: " + value + ")");
+                } else {
+                    rules.add(new WorldRules.Rule(pattern.toString(), enabled));
+                }
+            }
+        }
+
+        return new ConfigSnapshot(
+                config.getInt("revote-cooldown", 60), // Default 60 seconds
+                config.getInt("vote-time-limit", 30), // Default 30 seconds
+                config.getString("language", "en"),
+                config.getBoolean("per-player-language", true),
+                config.getInt("language-cache-size", 8),
+                config.getInt("vote-percentage-threshold", 50), // Default 50%
+                config.getBoolean("stats-enabled", true),
+                config.getInt("broadcast-max-per-tick", 100),
+                config.getDouble("broadcast-max-millis-per-tick", 2.0),
+                config.getDouble("degraded-mspt", 60.0),
+                config.getDouble("critical-mspt", 100.0),
+                config.getBoolean("history-enabled", true),
+                config.getInt("history-records-per-segment", 8192),
+                config.getInt("history-max-segments", 16),
+                config.getBoolean("sync-enabled", false),
+                config.getString("sync-server-id", ""),
+                config.getInt("sync-flush-interval-ticks", 2),
+                config.getBoolean("watch-files", false),
+                worldToggles,
+                new WorldRules(rules, config.getInt("world-rules-cache-size", 1024)),
+                rejectedRules);
+    }
+
+    // Accepts YAML booleans and the strings "true" and "false" in any case; null for anything else
+    private static Boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        String text = value.toString().trim();
+        if (text.equalsIgnoreCase("true")) {
+            return Boolean.TRUE;
+        }
+        if (text.equalsIgnoreCase("false")) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    /**
+     * Reads settings written by {@link #writeTo}
+     *
+     * @return The settings, or null if the payload doesn't hold exactly one snapshot
+     */
+    static ConfigSnapshot readFrom(ByteBuffer in) {
+        try {
+            int revoteCooldown = in.getInt();
+            int voteTimeLimit = in.getInt();
+            String language = BinaryCache.getString(in);
+            boolean perPlayerLanguage = in.get() != 0;
+            int languageCacheSize = in.getInt();
+            int votePercentageThreshold = in.getInt();
+            boolean statsEnabled = in.get() != 0;
+            int broadcastMaxPerTick = in.getInt();
+            double broadcastMaxMillisPerTick = in.getDouble();
+            double degradedMspt = in.getDouble();
+            double criticalMspt = in.getDouble();
+            boolean historyEnabled = in.get() != 0;
+            int historyRecordsPerSegment = in.getInt();
+            int historyMaxSegments = in.getInt();
+            boolean syncEnabled = in.get() != 0;
+            String syncServerId = BinaryCache.getString(in);
+            int syncFlushIntervalTicks = in.getInt();
+            boolean watchFiles = in.get() != 0;
+
+            Map<String, Boolean> worldToggles = new LinkedHashMap<>();
+            int toggles = in.getInt();
+            for (int i = 0; i < toggles; i++) {
+                worldToggles.put(BinaryCache.getString(in), in.get() != 0);
+            }
+            List<WorldRules.Rule> rules = new ArrayList<>();
+            int ruleCount = in.getInt();
+            for (int i = 0; i < ruleCount; i++) {
+                rules.add(new WorldRules.Rule(BinaryCache.getString(in), in.get() != 0));
+            }
+            int worldRulesCacheSize = in.getInt();
+            List<String> rejectedRules = new ArrayList<>();
+            int rejectedCount = in.getInt();
+            for (int i = 0; i < rejectedCount; i++) {
+                rejectedRules.add(BinaryCache.getString(in));
+            }
+            if (in.hasRemaining()) {
+                return null;
+            }
+
+            return new ConfigSnapshot(revoteCooldown, voteTimeLimit, language, perPlayerLanguage,
+                    languageCacheSize, votePercentageThreshold, statsEnabled, broadcastMaxPerTick,
+                    broadcastMaxMillisPerTick, degradedMspt, criticalMspt, historyEnabled, historyRecordsPerSegment,
+                    historyMaxSegments, syncEnabled, syncServerId, syncFlushIntervalTicks, watchFiles,
+                    worldToggles, new WorldRules(rules, worldRulesCacheSize), rejectedRules);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(revoteCooldown);
+        out.writeInt(voteTimeLimit);
+        BinaryCache.putString(out, language);
+        out.writeBoolean(perPlayerLanguage);
+        out.writeInt(languageCacheSize);
+        out.writeInt(votePercentageThreshold);
+        out.writeBoolean(statsEnabled);
+        out.writeInt(broadcastMaxPerTick);
+        out.writeDouble(broadcastMaxMillisPerTick);
+        out.writeDouble(degradedMspt);
+        out.writeDouble(criticalMspt);
+        out.writeBoolean(historyEnabled);
+        out.writeInt(historyRecordsPerSegment);
+        out.writeInt(historyMaxSegments);
+        out.writeBoolean(syncEnabled);
+        BinaryCache.putString(out, syncServerId);
+        out.writeInt(syncFlushIntervalTicks);
+        out.writeBoolean(watchFiles);
+
+        out.writeInt(worldToggles.size());
+        for (Map.Entry<String, Boolean> toggle : worldToggles.entrySet()) {
+            BinaryCache.putString(out, toggle.getKey());
+            out.writeBoolean(toggle.getValue());
+        }
+
+        out.writeInt(worldRules.getRules().size());
+        for (WorldRules.Rule rule : worldRules.getRules()) {
+            BinaryCache.putString(out, rule.getPattern());
+            out.writeBoolean(rule.isEnabled());
+        }
+        out.writeInt(worldRules.getCacheSize());
+
+        out.writeInt(rejectedWorldRules.size());
+        for (String rule : rejectedWorldRules) {
+            BinaryCache.putString(out, rule);
+        }
+    }
+
+    /**
+     * Logs settings that were out of range and have been adjusted
+     */
+    void warnInvalid(Logger logger) {
+        // Validate percentage is within 0-100 range
+        if (votePercentageThreshold < 0) {
+            logger.warning("vote-percentage-threshold was set below 0, defaulting to 0");
+        } else if (votePercentageThreshold > 100) {
+            logger.warning("vote-percentage-threshold was set above 100, defaulting to 100");
+        }
+        for (String pattern : worldRules.getInvalid()) {
+            logger.warning("Ignoring world rule with an invalid pattern: " + pattern);
+        }
+        for (String rule : rejectedWorldRules) {
+            logger.warning("Ignoring world rule whose enabled is not true or false: " + rule);
+        }
+    }
+
+    /**
+     * @return The settings that differ from an earlier snapshot but are only read at startup
+     */
+    public List<String> getRestartOnlyChanges(ConfigSnapshot previous) {
+        List<String> changed = new ArrayList<>();
+        if (broadcastMaxPerTick != previous.broadcastMaxPerTick
+                || broadcastMaxMillisPerTick != previous.broadcastMaxMillisPerTick) {
+            changed.add("broadcast budgets");
+        }
+        if (degradedMspt != previous.degradedMspt || criticalMspt != previous.criticalMspt) {
+            changed.add("load thresholds");
+        }
+        if (historyEnabled != previous.historyEnabled
+                || historyRecordsPerSegment != previous.historyRecordsPerSegment
+                || historyMaxSegments != previous.historyMaxSegments) {
+            changed.add("vote history");
+        }
+        if (syncEnabled != previous.syncEnabled || !syncServerId.equals(previous.syncServerId)
+                || syncFlushIntervalTicks != previous.syncFlushIntervalTicks) {
+            changed.add("vote sync");
+        }
+        if (watchFiles != previous.watchFiles) {
+            changed.add("watch-files");
+        }
+        return changed;
+    }
+
+    public int getRevoteCooldown() {
+        return revoteCooldown;
+    }
+
+    public int getVoteTimeLimit() {
+        return voteTimeLimit;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public boolean isPerPlayerLanguage() {
+        return perPlayerLanguage;
+    }
+
+    public int getLanguageCacheSize() {
+        return languageCacheSize;
+    }
+
+    public int getVotePercentageThreshold() {
+        return Math.min(100, Math.max(0, votePercentageThreshold));
+    }
+
+    public boolean isStatsEnabled() {
+        return statsEnabled;
+    }
+
+    public int getBroadcastMaxPerTick() {
+        return broadcastMaxPerTick;
+    }
+
+    public double getBroadcastMaxMillisPerTick() {
+        return broadcastMaxMillisPerTick;
+    }
+
+    public double getDegradedMspt() {
+        return degradedMspt;
+    }
+
+    public double getCriticalMspt() {
+        return criticalMspt;
+    }
+
+    public boolean isHistoryEnabled() {
+        return historyEnabled;
+    }
+
+    public int getHistoryRecordsPerSegment() {
+        return historyRecordsPerSegment;
+    }
+
+    public int getHistoryMaxSegments() {
+        return historyMaxSegments;
+    }
+
+    public boolean isSyncEnabled() {
+        return syncEnabled;
+    }
+
+    public String getSyncServerId() {
+        return syncServerId;
+    }
+
+    public int getSyncFlushIntervalTicks() {
+        return syncFlushIntervalTicks;
+    }
+
+    public boolean isWatchFiles() {
+        return watchFiles;
+    }
+
+    /**
+     * @return The world toggles in the file, by world name; read-only
+     */
+    public Map<String, Boolean> getWorldToggles() {
+        return worldToggles;
+    }
+
+    public WorldRules getWorldRules() {
+        return worldRules;
+    }
+}
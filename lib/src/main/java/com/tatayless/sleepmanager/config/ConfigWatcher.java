@@ -0,0 +1,126 @@
+package com.tatayless.sleepmanager.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches config.yml and the language files for edits and asks for a reload
+ * once they have been quiet for a moment, so an editor saving in several
+ * steps triggers one reload. Runs on its own daemon thread.
+ */
+public class ConfigWatcher {
+    // How long files must stay unchanged before a reload is triggered
+    static final long DEBOUNCE_MILLIS = 500L;
+
+    private final File dataFolder;
+    private final Logger logger;
+    private final BooleanSupplier configChanged;
+    private final Runnable onChange;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * @param dataFolder    The plugin's data folder
+     * @param logger        Where watch failures are logged
+     * @param configChanged Whether config.yml differs from what was last read or
+     *                      written, so the plugin's own saves don't trigger reloads
+     * @param onChange      Runs on the watcher thread once edits have settled
+     */
+    public ConfigWatcher(File dataFolder, Logger logger, BooleanSupplier configChanged, Runnable onChange) {
+        this.dataFolder = dataFolder;
+        this.logger = logger;
+        this.configChanged = configChanged;
+        this.onChange = onChange;
+    }
+
+    public void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            register(dataFolder.toPath());
+            register(dataFolder.toPath().resolve("lang"));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not watch config files for changes", e);
+            stop();
+            return;
+        }
+
+        thread = new Thread(this::run, "SleepManager-ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        if (watchService != null) {
+            try {
+                // Wakes the watcher thread, which then exits
+                watchService.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not stop watching config files", e);
+            }
+            watchService = null;
+        }
+        if (thread != null) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    private void register(Path folder) throws IOException {
+        if (folder.toFile().isDirectory()) {
+            folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+    }
+
+    private void run() {
+        WatchService watching = watchService;
+        try {
+            while (true) {
+                boolean configTouched = false;
+                boolean langTouched = false;
+
+                // Block for the first edit, then keep collecting until edits stop
+                WatchKey key = watching.take();
+                while (key != null) {
+                    boolean lang = key.watchable().equals(dataFolder.toPath().resolve("lang"));
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        String name = String.valueOf(event.context());
+                        if (lang && name.endsWith(".yml")) {
+                            langTouched = true;
+                        } else if (!lang && name.equals("config.yml")) {
+                            configTouched = true;
+                        }
+                    }
+                    key.reset();
+                    key = watching.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                if (langTouched || (configTouched && configChanged.getAsBoolean())) {
+                    try {
+                        onChange.run();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "Could not reload changed config files", e);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Stopped
+        }
+    }
+}
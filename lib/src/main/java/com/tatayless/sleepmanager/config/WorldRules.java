@@ -0,0 +1,225 @@
+package com.tatayless.sleepmanager.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides whether sleep voting is enabled in worlds that have no toggle of
+ * their own, from name patterns in config.yml. Rules are checked in order and
+ * the first whose pattern matches the whole world name wins; worlds no rule
+ * matches are enabled.
+ *
+ * Patterns are globs, where {@code *} matches any run of characters and
+ * {@code ?} any one character, unless they start with {@code regex:}. All
+ * rules are compiled into a single pattern so a name is matched in one pass,
+ * and recent answers are kept in a bounded LRU for worlds that come and go.
+ * Regexes with backreferences or named groups would change meaning inside
+ * the combined pattern, so with any of those each rule is matched on its own.
+ */
+public final class WorldRules {
+    static final String REGEX_PREFIX = "regex:";
+
+    // As configured, including any that didn't compile
+    private final List<Rule> rules;
+    // The rules that compiled, in the order they are checked
+    private final List<Rule> valid;
+    // Patterns that didn't compile and were left out
+    private final List<String> invalid;
+    // Each valid rule on its own, matched in turn when there is no combined pattern
+    private final Pattern[] patterns;
+    // Null when there are no rules, or they can't be combined
+    private final Pattern combined;
+    // For each rule, the group in the combined pattern that wraps it
+    private final int[] groups;
+    private final int cacheSize;
+    // World name -> enabled, least recently used first
+    private final LinkedHashMap<String, Boolean> memo;
+
+    /**
+     * @param rules     The rules in the order they are checked
+     * @param cacheSize The most world names to remember the answer for
+     */
+    WorldRules(List<Rule> rules, int cacheSize) {
+        List<Rule> valid = new ArrayList<>(rules.size());
+        List<String> invalid = new ArrayList<>();
+        StringBuilder combined = new StringBuilder();
+        int[] groups = new int[rules.size()];
+        List<Pattern> patterns = new ArrayList<>(rules.size());
+        boolean combinable = true;
+        int group = 1;
+        for (Rule rule : rules) {
+            String regex;
+            Pattern pattern;
+            try {
+                regex = toRegex(rule.getPattern());
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                invalid.add(rule.getPattern());
+                continue;
+            }
+            combinable &= !refersToGroups(regex);
+            if (combined.length() > 0) {
+                combined.append('|');
+            }
+            combined.append('(').append(regex).append(')');
+            groups[valid.size()] = group;
+            group += 1 + pattern.matcher("").groupCount();
+            valid.add(rule);
+            patterns.add(pattern);
+        }
+
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.valid = valid;
+        this.invalid = Collections.unmodifiableList(invalid);
+        this.patterns = patterns.toArray(new Pattern[0]);
+        // Alternatives are tried left to right, so the first rule that matches wins
+        this.combined = valid.isEmpty() || !combinable ? null : compileOrNull(combined.toString());
+        this.groups = groups;
+        this.cacheSize = Math.max(1, cacheSize);
+        this.memo = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > WorldRules.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @param worldName The name of the world
+     * @return Whether sleep voting is enabled there unless the world has its own toggle
+     */
+    public boolean isEnabled(String worldName) {
+        if (patterns.length == 0) {
+            return true;
+        }
+
+        synchronized (memo) {
+            Boolean enabled = memo.get(worldName);
+            if (enabled == null) {
+                enabled = match(worldName);
+                memo.put(worldName, enabled);
+            }
+            return enabled;
+        }
+    }
+
+    private boolean match(String worldName) {
+        if (combined == null) {
+            for (int i = 0; i < patterns.length; i++) {
+                if (patterns[i].matcher(worldName).matches()) {
+                    return valid.get(i).isEnabled();
+                }
+            }
+            return true;
+        }
+
+        Matcher matcher = combined.matcher(worldName);
+        if (!matcher.matches()) {
+            return true;
+        }
+        for (int i = 0; i < valid.size(); i++) {
+            if (matcher.start(groups[i]) != -1) {
+                return valid.get(i).isEnabled();
+            }
+        }
+        return true;
+    }
+
+    private static Pattern compileOrNull(String regex) {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            // Rules that compile alone but not together; match them one at a time
+            return null;
+        }
+    }
+
+    // Whether a regex has backreferences (\1, \k<name>) or named groups, whose
+    // meaning depends on the groups around them. Errs towards true, e.g. for
+    // the same text inside a character class or \Q...\E, which only costs speed.
+    private static boolean refersToGroups(String regex) {
+        for (int i = 0; i < regex.length() - 1; i++) {
+            char c = regex.charAt(i);
+            char next = regex.charAt(i + 1);
+            if (c == '\\') {
+                if ((next >= '1' && next <= '9') || next == 'k') {
+                    return true;
+                }
+                // Skip the escaped character
+                i++;
+            } else if (c == '(' && regex.startsWith("?<", i + 1) && i + 3 < regex.length()
+                    && Character.isLetter(regex.charAt(i + 3))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String toRegex(String pattern) {
+        if (pattern.startsWith(REGEX_PREFIX)) {
+            return pattern.substring(REGEX_PREFIX.length());
+        }
+
+        StringBuilder regex = new StringBuilder(pattern.length() + 8);
+        int literalStart = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(pattern.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < pattern.length()) {
+            regex.append(Pattern.quote(pattern.substring(literalStart)));
+        }
+        return regex.toString();
+    }
+
+    /**
+     * @return The rules as configured, in the order they are checked
+     */
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return The patterns that failed to compile and are ignored
+     */
+    public List<String> getInvalid() {
+        return invalid;
+    }
+
+    int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * One entry of the world-rules list
+     */
+    public static final class Rule {
+        private final String pattern;
+        private final boolean enabled;
+
+        public Rule(String pattern, boolean enabled) {
+            this.pattern = pattern;
+            this.enabled = enabled;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+    }
+}
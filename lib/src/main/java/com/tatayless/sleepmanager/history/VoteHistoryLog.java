@@ -0,0 +1,253 @@
+package com.tatayless.sleepmanager.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An append-only log of vote outcomes in the plugin's data folder. Records
+ * are a fixed size and written through a memory-mapped segment file; once a
+ * segment is full the next one is started, and the oldest segments beyond
+ * the configured number are deleted.
+ *
+ * All file work happens on one background thread, in the order it was
+ * requested. Appends return immediately; reads return a future completed on
+ * that thread, and read backwards a record at a time instead of loading
+ * whole segments.
+ */
+public class VoteHistoryLog {
+    private static final Pattern SEGMENT_NAME = Pattern.compile("votes-(\\d{6})\\.log");
+
+    private final File folder;
+    private final int recordsPerSegment;
+    private final int maxSegments;
+    private final Logger logger;
+    private final ExecutorService writer;
+
+    // Only touched on the writer thread
+    private long segmentIndex = -1;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+
+    /**
+     * @param folder            The folder to keep segments in
+     * @param recordsPerSegment How many records each segment holds
+     * @param maxSegments       How many segments to keep, or 0 to keep them all
+     * @param logger            Where write failures are logged
+     */
+    public VoteHistoryLog(File folder, int recordsPerSegment, int maxSegments, Logger logger) {
+        this.folder = folder;
+        this.recordsPerSegment = Math.max(1, recordsPerSegment);
+        this.maxSegments = Math.max(0, maxSegments);
+        this.logger = logger;
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "SleepManager-HistoryWriter");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Appends a vote outcome. Returns right away; the write happens on the
+     * background thread.
+     */
+    public void append(VoteRecord record) {
+        try {
+            writer.execute(() -> write(record));
+        } catch (RejectedExecutionException e) {
+            logger.warning("Vote history is closed; dropped the result of a vote in " + record.getWorldName());
+        }
+    }
+
+    /**
+     * Reads the most recent vote outcomes, newest first
+     *
+     * @param worldName Only return votes in this world, or null for every world
+     * @param limit     The most records to return
+     * @return A future completed on the background thread
+     */
+    public CompletableFuture<List<VoteRecord>> recent(String worldName, int limit) {
+        return CompletableFuture.supplyAsync(() -> read(worldName, limit), writer);
+    }
+
+    /**
+     * Finishes pending writes and closes the log, waiting at most the given time
+     */
+    public void close(long timeout, TimeUnit unit) {
+        writer.execute(this::closeSegment);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(timeout, unit)) {
+                logger.warning("Timed out waiting for vote history to be written");
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(VoteRecord record) {
+        try {
+            if (mapped == null) {
+                openLatestSegment();
+            }
+            if (!mapped.hasRemaining()) {
+                rotate();
+            }
+            record.writeTo(mapped);
+            // Votes are rare; make each one durable as it is written
+            mapped.force();
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.SEVERE, "Could not write vote history to " + folder, e);
+            closeSegment();
+        }
+    }
+
+    private List<VoteRecord> read(String worldName, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        List<VoteRecord> records = new ArrayList<>();
+        long[] segments = listSegments();
+        ByteBuffer slot = ByteBuffer.allocate(VoteRecord.SIZE);
+
+        for (int i = segments.length - 1; i >= 0 && records.size() < limit; i--) {
+            try (FileChannel reader = FileChannel.open(segmentFile(segments[i]).toPath(), StandardOpenOption.READ)) {
+                long position = usedRecords(reader) * (long) VoteRecord.SIZE;
+                while (position > 0 && records.size() < limit) {
+                    position -= VoteRecord.SIZE;
+                    slot.clear();
+                    while (slot.hasRemaining() && reader.read(slot, position + slot.position()) >= 0) {
+                        // Keep reading until the record is complete
+                    }
+                    slot.flip();
+                    VoteRecord record = VoteRecord.readFrom(slot);
+                    if (record != null && (worldName == null || worldName.equals(record.getWorldName()))) {
+                        records.add(record);
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not read vote history segment " + segments[i], e);
+            }
+        }
+        return records;
+    }
+
+    // Continues the newest segment after a restart, or starts the first one
+    private void openLatestSegment() throws IOException {
+        long[] segments = listSegments();
+        if (segments.length == 0) {
+            openSegment(0);
+            return;
+        }
+
+        openSegment(segments[segments.length - 1]);
+        // A segment written with a larger records-per-segment can hold more than the new mapping
+        long used = usedRecords(channel) * (long) VoteRecord.SIZE;
+        if (used >= mapped.capacity()) {
+            rotate();
+        } else {
+            mapped.position((int) used);
+        }
+    }
+
+    private void rotate() throws IOException {
+        long next = segmentIndex + 1;
+        closeSegment();
+        openSegment(next);
+
+        if (maxSegments > 0) {
+            long[] segments = listSegments();
+            for (int i = 0; i < segments.length - maxSegments; i++) {
+                Files.deleteIfExists(segmentFile(segments[i]).toPath());
+            }
+        }
+    }
+
+    private void openSegment(long index) throws IOException {
+        Files.createDirectories(folder.toPath());
+        channel = FileChannel.open(segmentFile(index).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        // Mapping past the end grows the file to its full, zero-filled size
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * VoteRecord.SIZE);
+        segmentIndex = index;
+    }
+
+    private void closeSegment() {
+        if (mapped != null) {
+            mapped.force();
+            mapped = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not close vote history segment", e);
+            }
+            channel = null;
+        }
+    }
+
+    // Written records are contiguous from the start of a segment, so the first
+    // unwritten slot is found with a binary search over one long per probe
+    private static long usedRecords(FileChannel segment) throws IOException {
+        long low = 0;
+        long high = segment.size() / VoteRecord.SIZE;
+        ByteBuffer probe = ByteBuffer.allocate(Long.BYTES);
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            probe.clear();
+            segment.read(probe, middle * VoteRecord.SIZE);
+            if (probe.position() == Long.BYTES && probe.getLong(0) != 0L) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long[] listSegments() {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return new long[0];
+        }
+
+        long[] segments = new long[files.length];
+        int count = 0;
+        for (File file : files) {
+            Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+            if (matcher.matches()) {
+                segments[count++] = Long.parseLong(matcher.group(1));
+            }
+        }
+        segments = Arrays.copyOf(segments, count);
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(long index) {
+        return new File(folder, String.format("votes-%06d.log", index));
+    }
+}
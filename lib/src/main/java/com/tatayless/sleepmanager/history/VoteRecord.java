@@ -0,0 +1,161 @@
+package com.tatayless.sleepmanager.history;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The outcome of one vote, as stored in the history log. Every record takes
+ * exactly {@link #SIZE} bytes, so the log can be read backwards a record at a
+ * time.
+ *
+ * Layout, big-endian: ended-at millis (8), start tick (8), end tick (8), yes
+ * (4), no (4), eligible (4), threshold (4), flags (1), world name length (1),
+ * world name as UTF-8 (64, zero padded), padding, then a CRC32 of everything
+ * before it (4). A record that is all zeros has not been written yet.
+ */
+public final class VoteRecord {
+    public static final int SIZE = 128;
+    static final int MAX_WORLD_BYTES = 64;
+    private static final int CHECKSUM_OFFSET = SIZE - 4;
+    private static final byte PASSED = 1;
+
+    private final String worldName;
+    private final long endedAtMillis;
+    private final long startTick;
+    private final long endTick;
+    private final int yesVotes;
+    private final int noVotes;
+    private final int eligible;
+    private final boolean passed;
+    private final int threshold;
+
+    /**
+     * @param worldName     The world the vote was in
+     * @param endedAtMillis When the vote ended, in epoch milliseconds
+     * @param startTick     The world's full time when the vote started
+     * @param endTick       The world's full time when the vote ended
+     * @param yesVotes      Yes votes cast
+     * @param noVotes       No votes cast
+     * @param eligible      Players who could vote when it started
+     * @param passed        Whether the vote passed
+     * @param threshold     The yes percentage it needed
+     */
+    public VoteRecord(String worldName, long endedAtMillis, long startTick, long endTick, int yesVotes, int noVotes,
+            int eligible, boolean passed, int threshold) {
+        this.worldName = worldName;
+        this.endedAtMillis = endedAtMillis;
+        this.startTick = startTick;
+        this.endTick = endTick;
+        this.yesVotes = yesVotes;
+        this.noVotes = noVotes;
+        this.eligible = eligible;
+        this.passed = passed;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Writes this record at the buffer's position and advances it by {@link #SIZE}
+     */
+    void writeTo(ByteBuffer buffer) {
+        byte[] record = new byte[SIZE];
+        ByteBuffer out = ByteBuffer.wrap(record);
+        out.putLong(endedAtMillis)
+                .putLong(startTick)
+                .putLong(endTick)
+                .putInt(yesVotes)
+                .putInt(noVotes)
+                .putInt(eligible)
+                .putInt(threshold)
+                .put(passed ? PASSED : 0);
+
+        byte[] name = truncate(worldName.getBytes(StandardCharsets.UTF_8));
+        out.put((byte) name.length).put(name);
+
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, CHECKSUM_OFFSET);
+        out.putInt(CHECKSUM_OFFSET, (int) crc.getValue());
+
+        buffer.put(record);
+    }
+
+    /**
+     * Reads a record from the start of a buffer holding {@link #SIZE} bytes
+     *
+     * @return The record, or null if the slot is unwritten or was torn by a crash
+     */
+    static VoteRecord readFrom(ByteBuffer buffer) {
+        byte[] record = new byte[SIZE];
+        buffer.get(record);
+
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, CHECKSUM_OFFSET);
+        ByteBuffer in = ByteBuffer.wrap(record);
+        if (in.getLong(0) == 0L || in.getInt(CHECKSUM_OFFSET) != (int) crc.getValue()) {
+            return null;
+        }
+
+        long endedAtMillis = in.getLong();
+        long startTick = in.getLong();
+        long endTick = in.getLong();
+        int yesVotes = in.getInt();
+        int noVotes = in.getInt();
+        int eligible = in.getInt();
+        int threshold = in.getInt();
+        boolean passed = (in.get() & PASSED) != 0;
+        int nameLength = Math.min(in.get() & 0xFF, MAX_WORLD_BYTES);
+        String worldName = new String(record, in.position(), nameLength, StandardCharsets.UTF_8);
+
+        return new VoteRecord(worldName, endedAtMillis, startTick, endTick, yesVotes, noVotes, eligible, passed,
+                threshold);
+    }
+
+    // Cuts a name to the field size without splitting a UTF-8 sequence
+    private static byte[] truncate(byte[] name) {
+        if (name.length <= MAX_WORLD_BYTES) {
+            return name;
+        }
+        int length = MAX_WORLD_BYTES;
+        while (length > 0 && (name[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return Arrays.copyOf(name, length);
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public long getEndedAtMillis() {
+        return endedAtMillis;
+    }
+
+    public long getStartTick() {
+        return startTick;
+    }
+
+    public long getEndTick() {
+        return endTick;
+    }
+
+    public int getYesVotes() {
+        return yesVotes;
+    }
+
+    public int getNoVotes() {
+        return noVotes;
+    }
+
+    public int getEligible() {
+        return eligible;
+    }
+
+    public boolean isPassed() {
+        return passed;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+}
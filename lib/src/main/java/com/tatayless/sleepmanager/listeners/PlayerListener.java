@@ -1,56 +1,87 @@
 package com.tatayless.sleepmanager.listeners;
 
 import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.managers.WorldSleepState;
+import com.tatayless.sleepmanager.managers.WorldStateRegistry;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.Probe;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerBedEnterEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerGameModeChangeEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLocaleChangeEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 
-import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PlayerListener implements Listener {
     private final SleepManager plugin;
+    private final WorldStateRegistry worldStates;
+    private final StatsRecorder stats;
+    private final TickHealthMonitor tickHealth;
+    // Players who arrived mid-vote while the server was behind; prompted once it recovers
+    private final Set<Player> deferredPrompts = ConcurrentHashMap.newKeySet();
 
     public PlayerListener(SleepManager plugin) {
         this.plugin = plugin;
+        this.worldStates = plugin.getWorldStates();
+        this.stats = plugin.getStats();
+        this.tickHealth = plugin.getTickHealth();
+        tickHealth.addListener(level -> {
+            if (level == TickHealthMonitor.LoadLevel.NORMAL) {
+                sendDeferredPrompts();
+            }
+        });
     }
 
-    @EventHandler
+    // Monitor: we only react to the bed entry, so act once every other plugin has
+    // had its say. Cancelled entries (including every daytime one) never get here.
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onPlayerBedEnter(PlayerBedEnterEvent event) {
-        if (event.isCancelled()) {
-            return;
-        }
-
         Player player = event.getPlayer();
         World world = player.getWorld();
-        String worldName = world.getName();
 
-        // Check if the world is eligible (not nether or end)
-        if (world.getEnvironment() != World.Environment.NORMAL) {
+        // Resolve everything we track about this world with one lookup, and
+        // drop beds outside overworlds with voting enabled on one cached flag
+        WorldSleepState state = worldStates.get(world);
+        if (!state.isEligible()) {
             return;
         }
 
-        // Check if voting is enabled for this world
-        if (!plugin.getConfigManager().isWorldEnabled(worldName)) {
-            return;
+        long start = stats.begin();
+        try {
+            handleBedEnter(player, world, state);
+        } finally {
+            stats.record(Probe.BED_ENTER, world, start);
         }
+    }
 
+    private void handleBedEnter(Player player, World world, WorldSleepState state) {
         // Check if it's actually night time
         long time = world.getTime();
         if (time < 12541 || time > 23458) {
             return; // Not night time
         }
 
+        // The night is already being skipped; this sleeper joins that skip
+        if (state.isNightSkipPending()) {
+            plugin.getVoteManager().handlePlayerSleep(player);
+            return;
+        }
+
         // If no active vote and sleep not already enabled, start a vote
-        if (!plugin.getVoteManager().hasActiveVote(worldName) && !plugin.getVoteManager().isSleepEnabled(worldName)) {
+        if (!state.hasActiveVote() && !state.isSleepEnabled()) {
             // Check if there are multiple players in the world
-            List<Player> eligiblePlayers = plugin.getVoteManager().getEligiblePlayers(worldName);
-
-            if (eligiblePlayers.size() > 1) {
+            if (state.getEligibleCount() > 1) {
                 // Start a vote since there are multiple players
-                plugin.getVoteManager().startVote(worldName);
+                plugin.getVoteManager().startVote(state.getWorldName());
 
                 // We want the player to be able to get in bed, but we don't want to skip night
                 // yet
@@ -59,7 +90,7 @@ public class PlayerListener implements Listener {
                 // Only one player, automatically enable sleep
                 plugin.getVoteManager().handlePlayerSleep(player);
             }
-        } else if (plugin.getVoteManager().isSleepEnabled(worldName)) {
+        } else if (state.isSleepEnabled()) {
             // Sleep is already enabled, let the player sleep and skip the night
             plugin.getVoteManager().handlePlayerSleep(player);
         }
@@ -68,12 +99,70 @@ public class PlayerListener implements Listener {
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
+        plugin.getVoteManager().updatePlayer(player, player.getWorld(), player.getGameMode());
+        plugin.getMessageUtils().updatePlayerLocale(player, player.getLocale());
 
         // Check if there's an active vote in this world
-        String worldName = player.getWorld().getName();
-        if (plugin.getVoteManager().hasActiveVote(worldName)) {
+        WorldSleepState state = worldStates.get(player.getWorld());
+        if (state.hasActiveVote()) {
             // Send the vote message to the player
-            plugin.getMessageUtils().sendVoteMessage(player, worldName);
+            promptArrivingPlayer(player, state);
+        }
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getVoteManager().removePlayer(event.getPlayer());
+        plugin.getMessageUtils().removePlayerLocale(event.getPlayer());
+        deferredPrompts.remove(event.getPlayer());
+    }
+
+    // Clients send their locale shortly after joining, and again whenever it's changed
+    @EventHandler
+    public void onPlayerLocaleChange(PlayerLocaleChangeEvent event) {
+        plugin.getMessageUtils().updatePlayerLocale(event.getPlayer(), event.getLocale());
+    }
+
+    @EventHandler
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        Player player = event.getPlayer();
+        World world = player.getWorld();
+        plugin.getVoteManager().updatePlayer(player, world, player.getGameMode());
+
+        // Players arriving in a world with an open vote get the prompt too
+        WorldSleepState state = worldStates.get(world);
+        if (state.hasActiveVote()) {
+            promptArrivingPlayer(player, state);
         }
     }
+
+    // Players arriving while the server is behind wait for the prompt until it recovers
+    private void promptArrivingPlayer(Player player, WorldSleepState state) {
+        if (tickHealth.isDegraded()) {
+            deferredPrompts.add(player);
+        } else {
+            plugin.getMessageUtils().sendVoteMessage(player, state.getWorldName());
+        }
+    }
+
+    // Runs on the global tick; each prompt goes out on the player's own thread
+    private void sendDeferredPrompts() {
+        for (Player player : deferredPrompts) {
+            deferredPrompts.remove(player);
+            plugin.getDispatcher().runForPlayer(player, () -> {
+                // The vote may be over, or the player elsewhere, by now
+                WorldSleepState state = worldStates.get(player.getWorld());
+                if (state.hasActiveVote()) {
+                    plugin.getMessageUtils().sendVoteMessage(player, state.getWorldName());
+                }
+            });
+        }
+    }
+
+    // The event fires before the mode is applied, so only act once no one cancelled it
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerGameModeChange(PlayerGameModeChangeEvent event) {
+        Player player = event.getPlayer();
+        plugin.getVoteManager().updatePlayer(player, player.getWorld(), event.getNewGameMode());
+    }
 }
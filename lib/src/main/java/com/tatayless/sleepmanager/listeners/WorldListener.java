@@ -0,0 +1,31 @@
+package com.tatayless.sleepmanager.listeners;
+
+import com.tatayless.sleepmanager.SleepManager;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+/**
+ * Keeps each world's cached vote eligibility in step with worlds loading and
+ * unloading, and lets go of what was kept for worlds that unload
+ */
+public class WorldListener implements Listener {
+    private final SleepManager plugin;
+
+    public WorldListener(SleepManager plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler
+    public void onWorldLoad(WorldLoadEvent event) {
+        plugin.getWorldStates().load(event.getWorld());
+    }
+
+    // Another plugin may stop the unload, so only act once it's certain
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        plugin.getVoteManager().unloadWorld(event.getWorld());
+    }
+}
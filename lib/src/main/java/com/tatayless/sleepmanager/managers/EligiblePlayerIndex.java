@@ -0,0 +1,61 @@
+package com.tatayless.sleepmanager.managers;
+
+import org.bukkit.entity.Player;
+
+import java.util.*;
+
+// The players of one world who can vote and sleep. Kept up to date from
+// join, quit, world change and game mode change events so counts and the
+// read-only view are O(1) and never allocate. Removal swaps the last player
+// into the freed position.
+final class EligiblePlayerIndex {
+    private final List<Player> players = new ArrayList<>();
+    private final List<Player> view = Collections.unmodifiableList(players);
+    private final Map<UUID, Integer> positions = new HashMap<>();
+
+    boolean add(Player player) {
+        UUID playerId = player.getUniqueId();
+        Integer position = positions.get(playerId);
+        if (position != null) {
+            // Refresh the instance in case the player reconnected
+            players.set(position, player);
+            return false;
+        }
+
+        positions.put(playerId, players.size());
+        players.add(player);
+        return true;
+    }
+
+    boolean remove(UUID playerId) {
+        Integer position = positions.remove(playerId);
+        if (position == null) {
+            return false;
+        }
+
+        int last = players.size() - 1;
+        Player moved = players.remove(last);
+        if (position != last) {
+            players.set(position, moved);
+            positions.put(moved.getUniqueId(), position);
+        }
+        return true;
+    }
+
+    boolean contains(UUID playerId) {
+        return positions.containsKey(playerId);
+    }
+
+    int size() {
+        return players.size();
+    }
+
+    List<Player> view() {
+        return view;
+    }
+
+    void clear() {
+        players.clear();
+        positions.clear();
+    }
+}
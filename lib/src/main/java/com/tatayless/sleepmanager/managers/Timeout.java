@@ -0,0 +1,41 @@
+package com.tatayless.sleepmanager.managers;
+
+/**
+ * Something to run after a number of ticks on a {@link TimerWheel}. A timeout
+ * is created once and rescheduled as often as needed; while pending it is
+ * linked into one of the wheel's slots, so cancelling it is an unlink.
+ */
+final class Timeout {
+    private final Runnable action;
+
+    // Wheel bookkeeping, only changed by the wheel; pending state may be read from any thread
+    volatile TimerWheel wheel;
+    long deadline;
+    Timeout previous;
+    Timeout next;
+
+    Timeout(Runnable action) {
+        this.action = action;
+    }
+
+    boolean isPending() {
+        return wheel != null;
+    }
+
+    /**
+     * @return Ticks until this runs, or 0 if it isn't pending
+     */
+    long getRemainingTicks() {
+        return wheel != null ? Math.max(0, deadline - wheel.getTick()) : 0;
+    }
+
+    void cancel() {
+        if (wheel != null) {
+            wheel.unlink(this);
+        }
+    }
+
+    void run() {
+        action.run();
+    }
+}
@@ -0,0 +1,121 @@
+package com.tatayless.sleepmanager.managers;
+
+/**
+ * A hashed timer wheel advanced once per server tick. Timeouts hash into one
+ * of a fixed number of slots by their deadline; each tick only the current
+ * slot is visited, and timeouts further out than one turn of the wheel stay
+ * put until their turn comes round. Scheduling and cancelling are O(1) and
+ * never allocate.
+ */
+final class TimerWheel {
+    // 512 ticks (about 25 seconds) per turn covers vote durations in one or two turns
+    private static final int SLOTS = 512;
+    private static final int MASK = SLOTS - 1;
+
+    // Sentinel heads of the circular doubly linked list in each slot
+    private final Timeout[] slots = new Timeout[SLOTS];
+    private long tick;
+    private int pending;
+
+    // Expired timeouts are moved here before running, so their actions can
+    // freely schedule or cancel other timeouts, including ones due this tick
+    private final Timeout due = new Timeout(null);
+
+    TimerWheel() {
+        for (int i = 0; i < SLOTS; i++) {
+            Timeout head = new Timeout(null);
+            head.previous = head;
+            head.next = head;
+            slots[i] = head;
+        }
+        due.previous = due;
+        due.next = due;
+    }
+
+    long getTick() {
+        return tick;
+    }
+
+    int getPending() {
+        return pending;
+    }
+
+    boolean isEmpty() {
+        return pending == 0;
+    }
+
+    /**
+     * Schedules a timeout, replacing its previous deadline if it was pending
+     *
+     * @param timeout The timeout
+     * @param ticks   How many ticks from now it should run; at least 1
+     */
+    void schedule(Timeout timeout, long ticks) {
+        if (timeout.wheel != null) {
+            unlink(timeout);
+        }
+
+        timeout.deadline = tick + Math.max(1, ticks);
+        timeout.wheel = this;
+        link(slots[(int) (timeout.deadline & MASK)], timeout);
+        pending++;
+    }
+
+    /**
+     * Moves the wheel on by one tick and runs every timeout that is now due
+     */
+    void advance() {
+        tick++;
+
+        Timeout head = slots[(int) (tick & MASK)];
+        Timeout timeout = head.next;
+        while (timeout != head) {
+            Timeout next = timeout.next;
+            if (timeout.deadline <= tick) {
+                // Still pending, so cancelling it from an earlier action works as usual
+                remove(timeout);
+                link(due, timeout);
+            }
+            timeout = next;
+        }
+
+        while (due.next != due) {
+            Timeout expired = due.next;
+            remove(expired);
+            expired.wheel = null;
+            pending--;
+            expired.run();
+        }
+    }
+
+    /**
+     * Drops every pending timeout without running it
+     */
+    void clear() {
+        for (Timeout head : slots) {
+            while (head.next != head) {
+                unlink(head.next);
+            }
+        }
+    }
+
+    void unlink(Timeout timeout) {
+        remove(timeout);
+        timeout.wheel = null;
+        pending--;
+    }
+
+    private static void link(Timeout head, Timeout timeout) {
+        timeout.previous = head.previous;
+        timeout.next = head;
+        head.previous.next = timeout;
+        head.previous = timeout;
+    }
+
+    private static void remove(Timeout timeout) {
+        timeout.previous.next = timeout.next;
+        timeout.next.previous = timeout.previous;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+}
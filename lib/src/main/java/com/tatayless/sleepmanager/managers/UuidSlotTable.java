@@ -0,0 +1,102 @@
+package com.tatayless.sleepmanager.managers;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+// Assigns dense int slots to UUIDs. Keys are stored as their two longs in
+// slot order, and an open-addressing index (linear probing) maps a key's
+// hash to slot + 1, with 0 marking an empty bucket. Lookups never allocate.
+final class UuidSlotTable {
+    private long[] mostSigBits;
+    private long[] leastSigBits;
+    private int[] index;
+    private int mask;
+    private int size;
+
+    UuidSlotTable(int expectedSize) {
+        int capacity = Math.max(expectedSize, 1);
+        mostSigBits = new long[capacity];
+        leastSigBits = new long[capacity];
+        allocateIndex(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The slot of the UUID, or -1 if it has none
+     */
+    int slotOf(long msb, long lsb) {
+        int bucket = bucket(msb, lsb);
+        while (true) {
+            int entry = index[bucket];
+            if (entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            if (mostSigBits[slot] == msb && leastSigBits[slot] == lsb) {
+                return slot;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    int slotOf(UUID uuid) {
+        return slotOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Gets the slot of the UUID, assigning the next free slot if it has none
+     *
+     * @return The slot of the UUID
+     */
+    int add(long msb, long lsb) {
+        int existing = slotOf(msb, lsb);
+        if (existing >= 0) {
+            return existing;
+        }
+
+        if (size == mostSigBits.length) {
+            int capacity = size * 2;
+            mostSigBits = Arrays.copyOf(mostSigBits, capacity);
+            leastSigBits = Arrays.copyOf(leastSigBits, capacity);
+        }
+        // Keep the index at most half full
+        if ((size + 1) * 2 > index.length) {
+            allocateIndex(index.length);
+            for (int slot = 0; slot < size; slot++) {
+                insert(slot);
+            }
+        }
+
+        int slot = size++;
+        mostSigBits[slot] = msb;
+        leastSigBits[slot] = lsb;
+        insert(slot);
+        return slot;
+    }
+
+    int add(UUID uuid) {
+        return add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    private void insert(int slot) {
+        int bucket = bucket(mostSigBits[slot], leastSigBits[slot]);
+        while (index[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        index[bucket] = slot + 1;
+    }
+
+    private void allocateIndex(int entries) {
+        int buckets = Integer.highestOneBit(Math.max(entries, 2) * 2 - 1) << 1;
+        index = new int[buckets];
+        mask = buckets - 1;
+    }
+
+    private int bucket(long msb, long lsb) {
+        long hash = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+}
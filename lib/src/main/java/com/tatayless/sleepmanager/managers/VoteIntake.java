@@ -0,0 +1,56 @@
+package com.tatayless.sleepmanager.managers;
+
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Votes waiting to be applied on the next tick. Any thread can submit without
+ * locking: a vote is pushed onto a linked stack with a single compare-and-set.
+ * The tick takes every waiting vote at once by swapping the head out, so the
+ * drained votes come newest first.
+ */
+final class VoteIntake {
+    private final AtomicReference<PendingVote> head = new AtomicReference<>();
+
+    void submit(PendingVote vote) {
+        PendingVote current;
+        do {
+            current = head.get();
+            vote.next = current;
+        } while (!head.compareAndSet(current, vote));
+    }
+
+    /**
+     * Takes every waiting vote
+     *
+     * @return The newest vote, linked to older ones through {@link PendingVote#next}, or null
+     */
+    PendingVote drain() {
+        return head.get() == null ? null : head.getAndSet(null);
+    }
+
+    boolean isEmpty() {
+        return head.get() == null;
+    }
+
+    // One submitted vote, tied to the session that was open when it was cast
+    static final class PendingVote {
+        final WorldSleepState state;
+        final VoteSession session;
+        final UUID playerId;
+        // Null for votes relayed from outside the server, e.g. a proxy or chat bridge
+        final Player player;
+        final boolean yes;
+        PendingVote next;
+
+        PendingVote(WorldSleepState state, VoteSession session, UUID playerId, Player player, boolean yes) {
+            this.state = state;
+            this.session = session;
+            this.playerId = playerId;
+            this.player = player;
+            this.yes = yes;
+        }
+    }
+}
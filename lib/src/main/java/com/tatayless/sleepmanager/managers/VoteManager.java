@@ -1,126 +1,255 @@
 package com.tatayless.sleepmanager.managers;
 
 import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.history.VoteHistoryLog;
+import com.tatayless.sleepmanager.history.VoteRecord;
+import com.tatayless.sleepmanager.scheduling.TaskDispatcher;
+import com.tatayless.sleepmanager.stats.Probe;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import com.tatayless.sleepmanager.sync.Stamp;
+import com.tatayless.sleepmanager.sync.SyncOp;
+import com.tatayless.sleepmanager.sync.VoteSync;
+import com.tatayless.sleepmanager.utils.MessageKey;
 import org.bukkit.Bukkit;
 import org.bukkit.GameMode;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
-import org.bukkit.scheduler.BukkitTask;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Runs sleep votes for every world. Changes to vote state are synchronized on
+ * the manager, so bed entries and timers may arrive from different region
+ * threads; the state getters on {@link WorldSleepState} can be read from any
+ * thread without locking. Votes don't take the lock at all: they are queued
+ * from any thread and applied together at the start of the next tick.
+ *
+ * With vote sync on, starts, votes, ends and sleep changes are shared with
+ * the other servers running the same worlds. Concurrent starts merge into
+ * one vote identified by the earliest start, a player's latest vote counts,
+ * and the latest change to whether sleeping skips the night wins.
+ */
 public class VoteManager {
     private final SleepManager plugin;
-
-    // Store ongoing votes by world
-    private final Map<String, VoteSession> activeVotes;
-
-    // Store revote cooldowns by world
-    private final Map<String, Long> revoteCooldowns;
-
-    // Store the sleep enabled status for each world after voting
-    private final Map<String, Boolean> sleepEnabledMap;
-
-    // Store the last vote percentage for each world
-    private final Map<String, Double> lastVotePercentages = new ConcurrentHashMap<>();
+    private final TaskDispatcher dispatcher;
+    private final StatsRecorder stats;
+    // Null when vote history is turned off
+    private final VoteHistoryLog voteHistory;
+    // Null when vote sync is turned off
+    private final VoteSync sync;
+
+    // Votes, cooldowns, sleep status and last results for each world
+    private final WorldStateRegistry worldStates;
+
+    // The world whose eligible index each online player is in
+    private final Map<UUID, WorldSleepState> indexedPlayers = new HashMap<>();
+
+    // Vote deadlines, revote cooldowns and night skips for every world run off
+    // one wheel, advanced by a single repeating task started on first use
+    private final TimerWheel timers = new TimerWheel();
+    private TaskDispatcher.ScheduledTask timerTask;
+
+    // Votes cast since the last tick, and scratch space for applying them
+    private final VoteIntake votes = new VoteIntake();
+    private final Map<UUID, VoteSession> batchVoters = new HashMap<>();
+    private final Set<Map.Entry<UUID, VoteSession>> batchVotersElsewhere = new HashSet<>();
+    private final Set<WorldSleepState> batchWorlds = new HashSet<>();
+    // Confirmations, sent as two broadcasts per batch
+    private final List<Player> batchYesVoters = new ArrayList<>();
+    private final List<Player> batchNoVoters = new ArrayList<>();
+
+    // Night skip requests merged into a pending one, across all worlds
+    private long coalescedNightSkips;
 
     public VoteManager(SleepManager plugin) {
         this.plugin = plugin;
-        this.activeVotes = new ConcurrentHashMap<>();
-        this.revoteCooldowns = new ConcurrentHashMap<>();
-        this.sleepEnabledMap = new ConcurrentHashMap<>();
+        this.stats = plugin.getStats();
+        this.dispatcher = plugin.getDispatcher();
+        this.voteHistory = plugin.getVoteHistory();
+        this.sync = plugin.getVoteSync();
+        this.worldStates = plugin.getWorldStates();
     }
 
     public boolean hasActiveVote(String worldName) {
-        return activeVotes.containsKey(worldName);
+        WorldSleepState state = worldStates.find(worldName);
+        return state != null && state.hasActiveVote();
     }
 
     public boolean isSleepEnabled(String worldName) {
-        return sleepEnabledMap.getOrDefault(worldName, false);
+        WorldSleepState state = worldStates.find(worldName);
+        return state != null && state.isSleepEnabled();
     }
 
     public boolean canStartVote(String worldName) {
-        if (hasActiveVote(worldName)) {
-            return false;
-        }
-
-        Long lastVoteTime = revoteCooldowns.get(worldName);
-        if (lastVoteTime == null) {
-            return true;
-        }
+        WorldSleepState state = worldStates.find(worldName);
+        return state == null || canStartVote(state);
+    }
 
-        long cooldownMillis = plugin.getConfigManager().getRevoteCooldown() * 1000L;
-        return (System.currentTimeMillis() - lastVoteTime) > cooldownMillis;
+    private boolean canStartVote(WorldSleepState state) {
+        return !state.hasActiveVote() && !state.isOnCooldown();
     }
 
-    public boolean startVote(String worldName) {
+    public synchronized boolean startVote(String worldName) {
         if (!canStartVote(worldName)) {
             return false;
         }
 
+        long start = stats.begin();
         World world = Bukkit.getWorld(worldName);
         if (world == null) {
             return false;
         }
 
         // Get all eligible players at the start of voting
-        List<Player> eligiblePlayers = getEligiblePlayers(worldName);
+        WorldSleepState state = worldStates.get(world);
+        List<Player> eligiblePlayers = state.getEligiblePlayers();
         if (eligiblePlayers.isEmpty()) {
             return false;
         }
 
+        VoteSession session = openSession(world, state, eligiblePlayers);
+        if (sync != null) {
+            session.setStamp(sync.nextStamp());
+            sync.publish(SyncOp.start(worldName, session.getStamp()));
+        }
+
+        stats.record(Probe.VOTE_START, worldName, start);
+        return true;
+    }
+
+    private VoteSession openSession(World world, WorldSleepState state, List<Player> eligiblePlayers) {
+        String worldName = state.getWorldName();
         VoteSession session = new VoteSession(worldName, eligiblePlayers);
-        activeVotes.put(worldName, session);
+        session.setStartTick(world.getFullTime());
+        state.setSession(session);
 
         // Schedule vote end
         int voteDuration = plugin.getConfigManager().getVoteTimeLimit();
-        session.setTask(Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            endVote(worldName);
-        }, voteDuration * 20L));
+        schedule(voteDeadline(state), voteDuration * 20L);
 
         // Send vote message to all players in the world
-        for (Player player : world.getPlayers()) {
-            plugin.getMessageUtils().sendVoteMessage(player, worldName);
-        }
+        plugin.getMessageUtils().broadcastVotePrompt(worldName, world.getPlayers());
+        return session;
+    }
 
+    /**
+     * Casts a player's vote in the world they are in. Can be called from any
+     * thread; the vote is counted, and confirmed to the player, on the next tick.
+     *
+     * @param player  The player voting
+     * @param voteYes Whether they voted yes
+     * @return False if there is no vote in the player's world
+     */
+    public boolean vote(Player player, boolean voteYes) {
+        WorldSleepState state = worldStates.get(player.getWorld());
+
+        if (!submitVote(state, player.getUniqueId(), player, voteYes)) {
+            plugin.getMessageUtils().sendMessage(player, MessageKey.VOTE_NO_ACTIVE_VOTE);
+            return false;
+        }
         return true;
     }
 
-    public boolean vote(Player player, boolean voteYes) {
-        String worldName = player.getWorld().getName();
+    /**
+     * Casts a vote on behalf of a player, e.g. one relayed by a proxy or chat
+     * bridge. Can be called from any thread; the vote is counted on the next tick.
+     *
+     * @param worldName The world the vote is for
+     * @param playerId  The voting player
+     * @param voteYes   Whether they voted yes
+     * @return False if there is no vote in the world
+     */
+    public boolean submitVote(String worldName, UUID playerId, boolean voteYes) {
+        WorldSleepState state = worldStates.find(worldName);
+        return state != null && submitVote(state, playerId, null, voteYes);
+    }
 
-        if (!hasActiveVote(worldName)) {
-            plugin.getMessageUtils().sendMessage(player, "vote.no_active_vote");
+    private boolean submitVote(WorldSleepState state, UUID playerId, Player player, boolean voteYes) {
+        VoteSession session = state.getSession();
+        if (session == null) {
             return false;
         }
 
-        VoteSession session = activeVotes.get(worldName);
-        session.vote(player.getUniqueId(), voteYes);
+        votes.submit(new VoteIntake.PendingVote(state, session, playerId, player, voteYes));
+        return true;
+    }
 
-        plugin.getMessageUtils().sendMessage(player, voteYes ? "vote.voted_yes" : "vote.voted_no");
+    // Applies every vote cast since the last tick. Only a player's latest vote
+    // counts, votes for a session that has since ended are dropped, and each
+    // world is checked for early completion once for the whole batch.
+    synchronized void applyVotes() {
+        // Newest first, so the first vote seen from a player is the one that counts
+        for (VoteIntake.PendingVote vote = votes.drain(); vote != null; vote = vote.next) {
+            if (vote.state.getSession() != vote.session) {
+                continue;
+            }
+            VoteSession seen = batchVoters.putIfAbsent(vote.playerId, vote.session);
+            if (seen == vote.session) {
+                continue;
+            }
+            // Rare: the same player voted in another world within this tick
+            if (seen != null && !batchVotersElsewhere.add(Map.entry(vote.playerId, vote.session))) {
+                continue;
+            }
 
-        // Check if all players have voted and end vote early if they have
-        if (session.haveAllPlayersVoted()) {
-            // Cancel the scheduled task
-            if (session.getTask() != null && !session.getTask().isCancelled()) {
-                session.getTask().cancel();
+            vote.session.vote(vote.playerId, vote.yes);
+            batchWorlds.add(vote.state);
+            if (sync != null) {
+                Stamp stamp = sync.nextStamp();
+                vote.session.acceptVoteStamp(vote.playerId, stamp);
+                sync.publish(SyncOp.vote(vote.state.getWorldName(), stamp, vote.playerId, vote.yes));
             }
 
-            // End the vote immediately
-            Bukkit.getScheduler().runTask(plugin, () -> endVote(worldName));
+            Player player = vote.player != null ? vote.player : Bukkit.getPlayer(vote.playerId);
+            if (player == null) {
+                continue;
+            }
+            (vote.yes ? batchYesVoters : batchNoVoters).add(player);
+        }
+        batchVoters.clear();
+        batchVotersElsewhere.clear();
+
+        // Confirmations queue behind any prompt still being sent, and reach each
+        // player on their own thread; they render once per language
+        if (!batchYesVoters.isEmpty()) {
+            plugin.getMessageUtils().broadcastMessage(MessageKey.VOTE_VOTED_YES, batchYesVoters);
+            batchYesVoters.clear();
+        }
+        if (!batchNoVoters.isEmpty()) {
+            plugin.getMessageUtils().broadcastMessage(MessageKey.VOTE_VOTED_NO, batchNoVoters);
+            batchNoVoters.clear();
         }
 
-        return true;
+        // End the vote early once everyone has voted
+        for (WorldSleepState state : batchWorlds) {
+            VoteSession session = state.getSession();
+            if (session != null && session.haveAllPlayersVoted()) {
+                endVote(state.getWorldName());
+            }
+        }
+        batchWorlds.clear();
     }
 
-    public void endVote(String worldName) {
-        if (!hasActiveVote(worldName)) {
+    public synchronized void endVote(String worldName) {
+        WorldSleepState state = worldStates.find(worldName);
+        if (state == null || !state.hasActiveVote()) {
             return;
         }
+        endVote(state, null);
+    }
 
-        VoteSession session = activeVotes.remove(worldName);
-        revoteCooldowns.put(worldName, System.currentTimeMillis());
+    // Ends the active vote; a vote ended by another server takes its result from there
+    private void endVote(WorldSleepState state, SyncOp remoteEnd) {
+        String worldName = state.getWorldName();
+        long start = stats.begin();
+        VoteSession session = state.getSession();
+        state.setSession(null);
+        voteDeadline(state).cancel();
+
+        int cooldown = plugin.getConfigManager().getRevoteCooldown();
+        if (cooldown > 0) {
+            schedule(cooldownExpiry(state), cooldown * 20L);
+        }
 
         // Calculate results
         int yesVotes = session.countYesVotes();
@@ -128,42 +257,90 @@ public class VoteManager {
 
         // Calculate the percentage of yes votes
         double yesPercentage = totalVotes > 0 ? (yesVotes * 100.0 / totalVotes) : 0;
-        lastVotePercentages.put(worldName, yesPercentage);
+        state.setLastVotePercentage(yesPercentage);
 
         // Get the configured threshold percentage
         int thresholdPercentage = plugin.getConfigManager().getVotePercentageThreshold();
 
         // If threshold is 0, always pass the vote
         boolean passed;
-        if (thresholdPercentage == 0) {
+        if (remoteEnd != null) {
+            passed = remoteEnd.getFlag();
+        } else if (thresholdPercentage == 0) {
             passed = totalVotes > 0; // Only require that someone voted
         } else {
             passed = totalVotes > 0 && yesPercentage >= thresholdPercentage;
         }
 
-        sleepEnabledMap.put(worldName, passed);
+        if (sync == null) {
+            state.setSleepEnabled(passed);
+        } else {
+            Stamp end = remoteEnd != null ? remoteEnd.getStamp() : sync.nextStamp();
+            state.setLastSession(session.getStamp());
+            if (isNewerSleepChange(state, end)) {
+                state.setSleepEnabled(passed);
+                state.setSleepStamp(end);
+            }
+            if (remoteEnd == null) {
+                sync.publish(SyncOp.end(worldName, end, session.getStamp(), passed));
+            }
+        }
 
         // Announce results to all players in the world
         World world = Bukkit.getWorld(worldName);
         if (world != null) {
-            for (Player player : world.getPlayers()) {
-                plugin.getMessageUtils().sendVoteResult(player, passed, worldName);
-            }
+            plugin.getMessageUtils().broadcastVoteResult(worldName, passed, world.getPlayers());
         }
 
-        // Cancel the scheduled task if it's still running
-        if (session.getTask() != null && !session.getTask().isCancelled()) {
-            session.getTask().cancel();
+        // Written behind on the history thread
+        if (voteHistory != null) {
+            long endTick = world != null ? world.getFullTime() : session.getStartTick();
+            voteHistory.append(new VoteRecord(worldName, System.currentTimeMillis(), session.getStartTick(), endTick,
+                    yesVotes, session.countNoVotes(), session.getEligibleCount(), passed, thresholdPercentage));
         }
+        plugin.getMessageUtils().invalidateVotePrompt(worldName);
+
+        stats.record(Probe.VOTE_END, worldName, start);
     }
 
-    public void clearVote(String worldName) {
-        if (hasActiveVote(worldName)) {
-            VoteSession session = activeVotes.remove(worldName);
-            if (session.getTask() != null && !session.getTask().isCancelled()) {
-                session.getTask().cancel();
+    public synchronized void clearVote(String worldName) {
+        WorldSleepState state = worldStates.find(worldName);
+        if (state != null && state.hasActiveVote()) {
+            clearVote(state);
+        }
+    }
+
+    private void clearVote(WorldSleepState state) {
+        state.setSession(null);
+        voteDeadline(state).cancel();
+        plugin.getMessageUtils().invalidateVotePrompt(state.getWorldName());
+    }
+
+    /**
+     * Stops everything running for a world that is being unloaded and lets go
+     * of its state. An open vote is dropped without a result; a revote
+     * cooldown keeps running and applies if the world is loaded again.
+     *
+     * @param world The world being unloaded
+     */
+    public synchronized void unloadWorld(World world) {
+        WorldSleepState state = worldStates.find(world.getName());
+        if (state != null) {
+            if (state.hasActiveVote()) {
+                clearVote(state);
+            }
+            if (state.getNightSkip() != null) {
+                state.getNightSkip().cancel();
+            }
+            // The next bed after the world is back, maybe nights later, gets a vote of its own
+            state.setSleepEnabled(false);
+            // Players leave before a world unloads, but a stale entry mustn't keep the state alive
+            for (Player player : new ArrayList<>(state.getEligiblePlayers())) {
+                removePlayer(player);
             }
         }
+        worldStates.unload(world);
+        stats.removeWorld(world.getName());
     }
 
     /**
@@ -173,110 +350,300 @@ public class VoteManager {
      * @return The percentage (0-100) of 'yes' votes, or 0 if no votes occurred
      */
     public double getLastVoteYesPercentage(String worldName) {
-        return lastVotePercentages.getOrDefault(worldName, 0.0);
+        WorldSleepState state = worldStates.find(worldName);
+        return state != null ? state.getLastVotePercentage() : 0.0;
     }
 
-    public void clearAllVotes() {
-        for (String worldName : new ArrayList<>(activeVotes.keySet())) {
-            clearVote(worldName);
+    public synchronized void clearAllVotes() {
+        for (WorldSleepState state : worldStates.all()) {
+            if (state.hasActiveVote()) {
+                clearVote(state);
+            }
+            state.setSleepEnabled(false);
         }
-        activeVotes.clear();
-        sleepEnabledMap.clear();
     }
 
+    /**
+     * Gets the players in a world who can vote
+     *
+     * @param worldName The name of the world
+     * @return A live, read-only view of the eligible players
+     */
     public List<Player> getEligiblePlayers(String worldName) {
-        World world = Bukkit.getWorld(worldName);
-        if (world == null) {
-            return Collections.emptyList();
+        WorldSleepState state = worldStates.find(worldName);
+        return state != null ? state.getEligiblePlayers() : Collections.emptyList();
+    }
+
+    public int getEligibleCount(String worldName) {
+        WorldSleepState state = worldStates.find(worldName);
+        return state != null ? state.getEligibleCount() : 0;
+    }
+
+    /**
+     * Adds every online player to the eligible index, e.g. after a reload
+     */
+    public synchronized void indexOnlinePlayers() {
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            updatePlayer(player, player.getWorld(), player.getGameMode());
         }
+    }
 
-        List<Player> eligiblePlayers = new ArrayList<>();
-        for (Player player : world.getPlayers()) {
-            // Only include players in survival or adventure mode
-            if (player.getGameMode() == GameMode.SURVIVAL || player.getGameMode() == GameMode.ADVENTURE) {
-                eligiblePlayers.add(player);
-            }
+    /**
+     * Moves a player into the eligible index of the world they are in, or out of
+     * every index if their game mode can't vote
+     *
+     * @param player   The player
+     * @param world    The world the player is now in
+     * @param gameMode The player's current (or about to be applied) game mode
+     */
+    public synchronized void updatePlayer(Player player, World world, GameMode gameMode) {
+        UUID playerId = player.getUniqueId();
+        WorldSleepState previous = indexedPlayers.get(playerId);
+        WorldSleepState current = isEligible(gameMode) ? worldStates.get(world) : null;
+
+        if (previous != null && previous != current) {
+            previous.getEligibleIndex().remove(playerId);
+        }
+
+        if (current != null) {
+            current.getEligibleIndex().add(player);
+            indexedPlayers.put(playerId, current);
+        } else if (previous != null) {
+            indexedPlayers.remove(playerId);
+        }
+    }
+
+    public synchronized void removePlayer(Player player) {
+        WorldSleepState previous = indexedPlayers.remove(player.getUniqueId());
+        if (previous != null) {
+            previous.getEligibleIndex().remove(player.getUniqueId());
         }
+    }
 
-        return eligiblePlayers;
+    private static boolean isEligible(GameMode gameMode) {
+        // Only players in survival or adventure mode can vote
+        return gameMode == GameMode.SURVIVAL || gameMode == GameMode.ADVENTURE;
     }
 
-    public void handlePlayerSleep(Player player) {
-        String worldName = player.getWorld().getName();
+    public synchronized void handlePlayerSleep(Player player) {
+        WorldSleepState state = worldStates.get(player.getWorld());
 
         // Check if sleep is enabled for this world after a vote
-        if (isSleepEnabled(worldName)) {
+        if (state.isSleepEnabled()) {
             // Reset the sleep enabled flag for this world
-            sleepEnabledMap.put(worldName, false);
-
-            // Set the time to day
-            World world = player.getWorld();
-            Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                world.setTime(0); // Set to morning
-                world.setStorm(false); // Clear weather
-                world.setThundering(false);
-
-                // Notify players
-                for (Player p : world.getPlayers()) {
-                    plugin.getMessageUtils().sendMessage(p, "sleep.night_skipped");
-                }
-            }, 20L); // Slight delay to let the player actually get in bed
-        }
-    }
-
-    // Internal class to track voting information
-    private class VoteSession {
-        @SuppressWarnings("unused")
-        private final String worldName;
-        private final Map<UUID, Boolean> votes;
-        private BukkitTask task;
-        private final Set<UUID> eligiblePlayers;
-
-        public VoteSession(String worldName, List<Player> players) {
-            this.worldName = worldName;
-            this.votes = new HashMap<>();
-            this.eligiblePlayers = new HashSet<>();
-
-            // Store UUIDs of all eligible players
-            for (Player player : players) {
-                eligiblePlayers.add(player.getUniqueId());
+            state.setSleepEnabled(false);
+            requestNightSkip(state);
+            if (sync != null) {
+                // The other servers skip their night too
+                state.setSleepStamp(sync.nextStamp());
+                sync.publish(SyncOp.sleep(state.getWorldName(), state.getSleepStamp(), false, true));
             }
+        } else if (state.isNightSkipPending()) {
+            // Someone else's bed already triggered the skip; join it
+            requestNightSkip(state);
         }
+    }
 
-        public void vote(UUID playerUuid, boolean voteYes) {
-            votes.put(playerUuid, voteYes);
+    /**
+     * Skips the night in a world after a short delay. Requests made while a
+     * skip is already pending are merged into it, so the time is set and the
+     * message broadcast once no matter how many players sleep at once.
+     *
+     * @param worldName The name of the world
+     */
+    public synchronized void requestNightSkip(String worldName) {
+        requestNightSkip(worldStates.getOrCreate(worldName));
+    }
+
+    private void requestNightSkip(WorldSleepState state) {
+        Timeout skip = nightSkip(state);
+        if (skip.isPending()) {
+            state.countCoalescedNightSkip();
+            coalescedNightSkips++;
+            return;
         }
 
-        public boolean haveAllPlayersVoted() {
-            // Check if all eligible players have cast their vote
-            for (UUID playerId : eligiblePlayers) {
-                if (!votes.containsKey(playerId)) {
-                    return false;
-                }
+        // Slight delay to let the player actually get in bed
+        schedule(skip, 20L);
+    }
+
+    /**
+     * @return How many night skip requests were merged into a pending one
+     */
+    public synchronized long getCoalescedNightSkips() {
+        return coalescedNightSkips;
+    }
+
+    public long getCoalescedNightSkips(String worldName) {
+        WorldSleepState state = worldStates.find(worldName);
+        return state != null ? state.getCoalescedNightSkips() : 0;
+    }
+
+    private void skipNight(String worldName) {
+        World world = Bukkit.getWorld(worldName);
+        if (world == null) {
+            return;
+        }
+
+        // Time and weather have to change on the thread that owns the world
+        dispatcher.runForWorld(world, () -> {
+            world.setTime(0); // Set to morning
+            world.setStorm(false); // Clear weather
+            world.setThundering(false);
+
+            // Notify players
+            plugin.getMessageUtils().broadcastMessage(MessageKey.SLEEP_NIGHT_SKIPPED, world.getPlayers());
+        });
+    }
+
+    /**
+     * Applies changes made on other servers. Called by vote sync on the global
+     * tick thread, in the order the changes were received.
+     */
+    public synchronized void applyRemote(List<SyncOp> ops) {
+        for (SyncOp op : ops) {
+            WorldSleepState state = worldStates.getOrCreate(op.getWorldName());
+            switch (op.getType()) {
+                case START:
+                    applyRemoteStart(state, op.getStamp());
+                    break;
+                case VOTE:
+                    VoteSession session = state.getSession();
+                    if (session != null && session.acceptVoteStamp(op.getPlayerId(), op.getStamp())) {
+                        session.vote(op.getPlayerId(), op.getFlag());
+                        batchWorlds.add(state);
+                    }
+                    break;
+                case END:
+                    applyRemoteEnd(state, op);
+                    break;
+                case SLEEP:
+                    if (isNewerSleepChange(state, op.getStamp())) {
+                        state.setSleepEnabled(op.getFlag());
+                        state.setSleepStamp(op.getStamp());
+                        if (op.isSkipNight()) {
+                            requestNightSkip(state);
+                        }
+                    }
+                    break;
             }
-            return !eligiblePlayers.isEmpty();
         }
 
-        public int countYesVotes() {
-            int count = 0;
-            for (Boolean vote : votes.values()) {
-                if (vote) {
-                    count++;
-                }
+        // End votes that every local player has now voted in
+        for (WorldSleepState state : batchWorlds) {
+            VoteSession session = state.getSession();
+            if (session != null && session.haveAllPlayersVoted()) {
+                endVote(state.getWorldName());
             }
-            return count;
         }
+        batchWorlds.clear();
+    }
 
-        public int getTotalVotes() {
-            return votes.size();
+    private void applyRemoteStart(WorldSleepState state, Stamp start) {
+        VoteSession session = state.getSession();
+        if (session != null) {
+            // Started on two servers at once: both keep the earlier start as the vote's id
+            if (session.getStamp() == null || start.isBefore(session.getStamp())) {
+                session.setStamp(start);
+            }
+            return;
         }
 
-        public void setTask(BukkitTask task) {
-            this.task = task;
+        // Late news of a vote that already ended here
+        Stamp lastSession = state.getLastSession();
+        if (lastSession != null && !lastSession.isBefore(start)) {
+            return;
+        }
+
+        World world = Bukkit.getWorld(state.getWorldName());
+        if (world == null) {
+            return;
+        }
+        // A vote on another server opens here even during the local cooldown
+        openSession(world, state, state.getEligiblePlayers()).setStamp(start);
+    }
+
+    private void applyRemoteEnd(WorldSleepState state, SyncOp op) {
+        VoteSession session = state.getSession();
+        Stamp ended = op.getSession();
+        if (session != null && session.getStamp() != null && (ended.equals(session.getStamp())
+                || (ended.isBefore(session.getStamp()) && isAfterLastSession(state, ended)))) {
+            // The same vote, or one that started first but whose start hasn't arrived
+            endVote(state, op);
+            return;
+        }
+
+        // Both servers ended the vote: the later end decides
+        if (isNewerSleepChange(state, op.getStamp())) {
+            state.setSleepEnabled(op.getFlag());
+            state.setSleepStamp(op.getStamp());
+        }
+    }
+
+    private static boolean isAfterLastSession(WorldSleepState state, Stamp start) {
+        return state.getLastSession() == null || state.getLastSession().isBefore(start);
+    }
+
+    private static boolean isNewerSleepChange(WorldSleepState state, Stamp stamp) {
+        return state.getSleepStamp() == null || state.getSleepStamp().isBefore(stamp);
+    }
+
+    /**
+     * Stops the timer task and drops every pending deadline, cooldown, night
+     * skip and uncounted vote
+     */
+    public synchronized void shutdown() {
+        votes.drain();
+        timers.clear();
+        if (timerTask != null) {
+            timerTask.cancel();
+            timerTask = null;
+        }
+    }
+
+    // Runs once a tick: votes first, so a vote ended early doesn't also time out
+    synchronized void tick() {
+        if (!votes.isEmpty()) {
+            applyVotes();
+        }
+        timers.advance();
+    }
+
+    TimerWheel getTimers() {
+        return timers;
+    }
+
+    private void schedule(Timeout timeout, long ticks) {
+        timers.schedule(timeout, ticks);
+        if (timerTask == null) {
+            timerTask = dispatcher.runRepeating(this::tick, 1L, 1L);
+        }
+    }
+
+    // Each world's timeouts are created once and rescheduled for every vote
+
+    private Timeout voteDeadline(WorldSleepState state) {
+        if (state.getVoteDeadline() == null) {
+            String worldName = state.getWorldName();
+            state.setVoteDeadline(new Timeout(() -> endVote(worldName)));
         }
+        return state.getVoteDeadline();
+    }
+
+    private Timeout cooldownExpiry(WorldSleepState state) {
+        if (state.getCooldownExpiry() == null) {
+            // Nothing to do on expiry; the cooldown lasts while this is pending
+            state.setCooldownExpiry(new Timeout(() -> {
+            }));
+        }
+        return state.getCooldownExpiry();
+    }
 
-        public BukkitTask getTask() {
-            return task;
+    private Timeout nightSkip(WorldSleepState state) {
+        if (state.getNightSkip() == null) {
+            String worldName = state.getWorldName();
+            state.setNightSkip(new Timeout(() -> skipNight(worldName)));
         }
+        return state.getNightSkip();
     }
 }
@@ -0,0 +1,161 @@
+package com.tatayless.sleepmanager.managers;
+
+import com.tatayless.sleepmanager.sync.Stamp;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+
+// Tracks voting information for one world. Eligible players get dense slots
+// when the session starts and votes live in two bitsets (voted, yes), so
+// casting a vote doesn't allocate. Tallies are kept up to date as votes are
+// cast, so completion checks and results are constant time.
+class VoteSession {
+    @SuppressWarnings("unused")
+    private final String worldName;
+
+    // Slots below eligibleCount belong to eligible players; anyone else who
+    // votes (e.g. a late joiner) is given a slot after them
+    private final UuidSlotTable slots;
+    private final int eligibleCount;
+    private long[] voted;
+    private long[] yes;
+
+    private int yesVotes;
+    private int noVotes;
+    // Eligible players who have not voted yet
+    private int remainingVotes;
+    // The world's full time when the vote started, for the history log
+    private long startTick;
+
+    // Only set while vote sync is on: the earliest start of this vote on any
+    // server, and the stamp of each player's latest vote
+    private Stamp stamp;
+    private Map<UUID, Stamp> voteStamps;
+
+    public VoteSession(String worldName, List<Player> players) {
+        this.worldName = worldName;
+        this.slots = new UuidSlotTable(players.size());
+        for (Player player : players) {
+            slots.add(player.getUniqueId());
+        }
+        this.eligibleCount = slots.size();
+        this.remainingVotes = eligibleCount;
+        allocateBitsets();
+    }
+
+    VoteSession(String worldName, Collection<UUID> eligiblePlayerIds) {
+        this.worldName = worldName;
+        this.slots = new UuidSlotTable(eligiblePlayerIds.size());
+        for (UUID playerId : eligiblePlayerIds) {
+            slots.add(playerId);
+        }
+        this.eligibleCount = slots.size();
+        this.remainingVotes = eligibleCount;
+        allocateBitsets();
+    }
+
+    private void allocateBitsets() {
+        int words = Math.max((eligibleCount + 63) >>> 6, 1);
+        voted = new long[words];
+        yes = new long[words];
+    }
+
+    public void vote(UUID playerUuid, boolean voteYes) {
+        long msb = playerUuid.getMostSignificantBits();
+        long lsb = playerUuid.getLeastSignificantBits();
+
+        int slot = slots.slotOf(msb, lsb);
+        if (slot < 0) {
+            slot = slots.add(msb, lsb);
+            if ((slot >>> 6) >= voted.length) {
+                voted = Arrays.copyOf(voted, voted.length * 2);
+                yes = Arrays.copyOf(yes, yes.length * 2);
+            }
+        }
+
+        int word = slot >>> 6;
+        long bit = 1L << slot;
+
+        if ((voted[word] & bit) == 0) {
+            // First vote from this player
+            voted[word] |= bit;
+            if (voteYes) {
+                yes[word] |= bit;
+                yesVotes++;
+            } else {
+                noVotes++;
+            }
+            if (slot < eligibleCount) {
+                remainingVotes--;
+            }
+        } else if (((yes[word] & bit) != 0) != voteYes) {
+            // Player changed their vote
+            yes[word] ^= bit;
+            if (voteYes) {
+                yesVotes++;
+                noVotes--;
+            } else {
+                noVotes++;
+                yesVotes--;
+            }
+        }
+    }
+
+    public boolean haveAllPlayersVoted() {
+        // Check if all eligible players have cast their vote
+        return remainingVotes == 0 && eligibleCount > 0;
+    }
+
+    public int countYesVotes() {
+        return yesVotes;
+    }
+
+    public int countNoVotes() {
+        return noVotes;
+    }
+
+    public int getRemainingVotes() {
+        return remainingVotes;
+    }
+
+    public int getEligibleCount() {
+        return eligibleCount;
+    }
+
+    public int getTotalVotes() {
+        return yesVotes + noVotes;
+    }
+
+    public long getStartTick() {
+        return startTick;
+    }
+
+    public void setStartTick(long startTick) {
+        this.startTick = startTick;
+    }
+
+    public Stamp getStamp() {
+        return stamp;
+    }
+
+    public void setStamp(Stamp stamp) {
+        this.stamp = stamp;
+    }
+
+    /**
+     * Records a synced vote's stamp, unless the player has a later vote already
+     *
+     * @return Whether the vote is the player's latest and should be counted
+     */
+    public boolean acceptVoteStamp(UUID playerUuid, Stamp voteStamp) {
+        if (voteStamps == null) {
+            voteStamps = new HashMap<>();
+        }
+        Stamp previous = voteStamps.get(playerUuid);
+        if (previous != null && !previous.isBefore(voteStamp)) {
+            return false;
+        }
+        voteStamps.put(playerUuid, voteStamp);
+        return true;
+    }
+}
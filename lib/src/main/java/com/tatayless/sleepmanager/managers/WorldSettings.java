@@ -0,0 +1,96 @@
+package com.tatayless.sleepmanager.managers;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Whether sleep voting is enabled in each world: the toggles worlds have of
+ * their own and the rules for every other world. Never changes once built;
+ * a reload or toggle builds a new one and the registry swaps it in whole, so
+ * a world is never seen with new rules but old toggles, or with no toggle
+ * between two.
+ */
+public final class WorldSettings {
+    static final WorldSettings DEFAULT = new WorldSettings(worldName -> true, Collections.emptyMap());
+
+    private final Predicate<String> rules;
+    // World name -> toggle, for worlds that don't follow the rules
+    private final Map<String, Boolean> toggles;
+
+    private WorldSettings(Predicate<String> rules, Map<String, Boolean> toggles) {
+        this.rules = rules;
+        this.toggles = toggles;
+    }
+
+    /**
+     * Builds settings, leaving out toggles that only repeat what the rules say
+     *
+     * @param rules   Whether a world without a toggle is enabled, by name
+     * @param toggles The worlds' own toggles, by world name
+     */
+    public static WorldSettings of(Predicate<String> rules, Map<String, Boolean> toggles) {
+        Map<String, Boolean> kept = new LinkedHashMap<>();
+        for (Map.Entry<String, Boolean> toggle : toggles.entrySet()) {
+            if (toggle.getValue() != rules.test(toggle.getKey())) {
+                kept.put(toggle.getKey(), toggle.getValue());
+            }
+        }
+        return new WorldSettings(rules, Collections.unmodifiableMap(kept));
+    }
+
+    /**
+     * @return Whether sleep voting is enabled in the world
+     */
+    public boolean isEnabled(String worldName) {
+        Boolean toggle = toggles.get(worldName);
+        return toggle != null ? toggle : rules.test(worldName);
+    }
+
+    /**
+     * @return Whether the world rules enable sleep voting in the world
+     */
+    public boolean isRuleEnabled(String worldName) {
+        return rules.test(worldName);
+    }
+
+    public boolean hasToggle(String worldName) {
+        return toggles.containsKey(worldName);
+    }
+
+    /**
+     * @return The worlds' own toggles, by world name; read-only
+     */
+    public Map<String, Boolean> getToggles() {
+        return toggles;
+    }
+
+    /**
+     * @return These settings with the world's toggle set
+     */
+    WorldSettings withToggle(String worldName, boolean enabled) {
+        Map<String, Boolean> changed = new LinkedHashMap<>(toggles);
+        changed.put(worldName, enabled);
+        return new WorldSettings(rules, Collections.unmodifiableMap(changed));
+    }
+
+    /**
+     * @return These settings with the world following the rules
+     */
+    WorldSettings withoutToggle(String worldName) {
+        if (!toggles.containsKey(worldName)) {
+            return this;
+        }
+        Map<String, Boolean> changed = new LinkedHashMap<>(toggles);
+        changed.remove(worldName);
+        return new WorldSettings(rules, Collections.unmodifiableMap(changed));
+    }
+
+    /**
+     * @return These settings with new rules and the same toggles
+     */
+    WorldSettings withRules(Predicate<String> rules) {
+        return new WorldSettings(rules, toggles);
+    }
+}
@@ -0,0 +1,246 @@
+package com.tatayless.sleepmanager.managers;
+
+import com.tatayless.sleepmanager.sync.Stamp;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Everything SleepManager tracks about one world: the active vote, the revote
+ * cooldown, whether sleeping skips the night, the last result and the players
+ * who can vote. Whether voting is enabled here is read from the registry's
+ * {@link WorldSettings}. Changed only by the managers, under
+ * the vote manager's lock; the public getters may be read from any thread.
+ */
+public class WorldSleepState {
+    private final String worldName;
+    // Holds the toggles and rules this world is enabled by
+    private final WorldStateRegistry registry;
+    private UUID worldUid;
+
+    private volatile VoteSession session;
+    private volatile boolean sleepEnabled;
+    private volatile double lastVotePercentage;
+    // Null while the world isn't loaded
+    private volatile World.Environment environment;
+    // Cached from the environment and settings so bed entries are rejected
+    // without matching rules; stale once either of those is replaced
+    private volatile Eligibility eligibility;
+
+    private final EligiblePlayerIndex eligiblePlayers = new EligiblePlayerIndex();
+
+    // Reusable timer wheel entries, created by the vote manager on first use
+    private Timeout voteDeadline;
+    private Timeout cooldownExpiry;
+    private Timeout nightSkip;
+    // Night skip requests merged into one that was already pending
+    private long coalescedNightSkips;
+
+    // Only kept while vote sync is on: the last vote that ended here, and the
+    // change that last set sleepEnabled, so older changes from other servers lose
+    private Stamp lastSession;
+    private Stamp sleepStamp;
+
+    WorldSleepState(String worldName, WorldStateRegistry registry) {
+        this.worldName = worldName;
+        this.registry = registry;
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    /**
+     * @return The UID of the loaded world, or null if it has not been seen loaded yet
+     */
+    public UUID getWorldUid() {
+        return worldUid;
+    }
+
+    void setWorldUid(UUID worldUid) {
+        this.worldUid = worldUid;
+    }
+
+    VoteSession getSession() {
+        return session;
+    }
+
+    void setSession(VoteSession session) {
+        this.session = session;
+    }
+
+    public boolean hasActiveVote() {
+        return session != null;
+    }
+
+    /**
+     * @return Whether the revote cooldown after the last vote is still running
+     */
+    public boolean isOnCooldown() {
+        return cooldownExpiry != null && cooldownExpiry.isPending();
+    }
+
+    /**
+     * @return Ticks until a new vote can start, or 0 if there is no cooldown
+     */
+    public long getCooldownTicks() {
+        return cooldownExpiry != null ? cooldownExpiry.getRemainingTicks() : 0;
+    }
+
+    /**
+     * @return Whether a night skip is scheduled and hasn't run yet
+     */
+    public boolean isNightSkipPending() {
+        return nightSkip != null && nightSkip.isPending();
+    }
+
+    public long getCoalescedNightSkips() {
+        return coalescedNightSkips;
+    }
+
+    void countCoalescedNightSkip() {
+        coalescedNightSkips++;
+    }
+
+    Timeout getVoteDeadline() {
+        return voteDeadline;
+    }
+
+    void setVoteDeadline(Timeout voteDeadline) {
+        this.voteDeadline = voteDeadline;
+    }
+
+    Timeout getCooldownExpiry() {
+        return cooldownExpiry;
+    }
+
+    void setCooldownExpiry(Timeout cooldownExpiry) {
+        this.cooldownExpiry = cooldownExpiry;
+    }
+
+    Timeout getNightSkip() {
+        return nightSkip;
+    }
+
+    void setNightSkip(Timeout nightSkip) {
+        this.nightSkip = nightSkip;
+    }
+
+    public boolean isSleepEnabled() {
+        return sleepEnabled;
+    }
+
+    void setSleepEnabled(boolean sleepEnabled) {
+        this.sleepEnabled = sleepEnabled;
+    }
+
+    Stamp getLastSession() {
+        return lastSession;
+    }
+
+    void setLastSession(Stamp lastSession) {
+        this.lastSession = lastSession;
+    }
+
+    Stamp getSleepStamp() {
+        return sleepStamp;
+    }
+
+    void setSleepStamp(Stamp sleepStamp) {
+        this.sleepStamp = sleepStamp;
+    }
+
+    public double getLastVotePercentage() {
+        return lastVotePercentage;
+    }
+
+    void setLastVotePercentage(double lastVotePercentage) {
+        this.lastVotePercentage = lastVotePercentage;
+    }
+
+    EligiblePlayerIndex getEligibleIndex() {
+        return eligiblePlayers;
+    }
+
+    /**
+     * @return A live, read-only view of the players in survival or adventure mode
+     */
+    public List<Player> getEligiblePlayers() {
+        return eligiblePlayers.view();
+    }
+
+    public int getEligibleCount() {
+        return eligiblePlayers.size();
+    }
+
+    public boolean hasToggle() {
+        return registry.getSettings().hasToggle(worldName);
+    }
+
+    /**
+     * @return Whether sleep voting is enabled; worlds without a toggle follow the world rules
+     */
+    public boolean isEnabled() {
+        return registry.getSettings().isEnabled(worldName);
+    }
+
+    public void setEnabled(boolean enabled) {
+        registry.setToggle(worldName, enabled);
+    }
+
+    /**
+     * Drops the world's own toggle so it follows the world rules again
+     */
+    public void clearToggle() {
+        registry.clearToggle(worldName);
+    }
+
+    /**
+     * @return Whether the world rules enable sleep voting here
+     */
+    public boolean isRuleEnabled() {
+        return registry.getSettings().isRuleEnabled(worldName);
+    }
+
+    /**
+     * @return Whether beds here can start or join a vote: the world is a loaded
+     *         overworld with sleep voting enabled
+     */
+    public boolean isEligible() {
+        WorldSettings settings = registry.getSettings();
+        World.Environment environment = this.environment;
+        Eligibility cached = eligibility;
+        if (cached == null || cached.settings != settings || cached.environment != environment) {
+            cached = new Eligibility(settings, environment,
+                    environment == World.Environment.NORMAL && settings.isEnabled(worldName));
+            eligibility = cached;
+        }
+        return cached.eligible;
+    }
+
+    /**
+     * @return The environment of the loaded world, or null if it isn't loaded
+     */
+    public World.Environment getEnvironment() {
+        return environment;
+    }
+
+    void setEnvironment(World.Environment environment) {
+        this.environment = environment;
+    }
+
+    // Whether the world was eligible under one settings and environment
+    private static final class Eligibility {
+        private final WorldSettings settings;
+        private final World.Environment environment;
+        private final boolean eligible;
+
+        private Eligibility(WorldSettings settings, World.Environment environment, boolean eligible) {
+            this.settings = settings;
+            this.environment = environment;
+            this.eligible = eligible;
+        }
+    }
+}
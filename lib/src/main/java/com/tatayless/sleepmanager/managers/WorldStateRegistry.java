@@ -0,0 +1,187 @@
+package com.tatayless.sleepmanager.managers;
+
+import org.bukkit.World;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Holds one {@link WorldSleepState} per world. Loaded worlds resolve their
+ * state with a single lookup on {@link World#getUID()}; the name index serves
+ * commands and worlds that are only known from config.yml.
+ *
+ * Unloaded worlds are let go unless config.yml needs their toggle. Those with
+ * a cooldown, result or pending sleep worth keeping are parked in a bounded
+ * archive and picked up again the next time the world is used.
+ */
+public class WorldStateRegistry {
+    // Most unloaded worlds to keep state for; the longest unloaded is dropped first
+    static final int DEFAULT_ARCHIVE_SIZE = 1024;
+
+    private final Map<UUID, WorldSleepState> byUid = new ConcurrentHashMap<>();
+    private final Map<String, WorldSleepState> byName = new ConcurrentHashMap<>();
+    private final Collection<WorldSleepState> states = Collections.unmodifiableCollection(byName.values());
+    // Toggles and rules, replaced whole so every world changes at once
+    private volatile WorldSettings settings = WorldSettings.DEFAULT;
+    // World name -> state of an unloaded world, oldest unload first
+    private final LinkedHashMap<String, WorldSleepState> archive;
+
+    public WorldStateRegistry() {
+        this(DEFAULT_ARCHIVE_SIZE);
+    }
+
+    /**
+     * @param archiveSize The most unloaded worlds to keep state for
+     */
+    public WorldStateRegistry(int archiveSize) {
+        int capacity = Math.max(0, archiveSize);
+        this.archive = new LinkedHashMap<String, WorldSleepState>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, WorldSleepState> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Gets the state of a loaded world, creating it on first use
+     *
+     * @param world The world
+     * @return The world's state
+     */
+    public WorldSleepState get(World world) {
+        UUID worldUid = world.getUID();
+        WorldSleepState state = byUid.get(worldUid);
+        if (state == null) {
+            state = load(world);
+        }
+        return state;
+    }
+
+    /**
+     * Records that a world is loaded, indexing it by UID and caching whether
+     * beds in it are eligible for votes
+     *
+     * @param world The world that was loaded
+     * @return The world's state
+     */
+    public WorldSleepState load(World world) {
+        WorldSleepState state = getOrCreate(world.getName());
+        state.setWorldUid(world.getUID());
+        state.setEnvironment(world.getEnvironment());
+        byUid.put(world.getUID(), state);
+        return state;
+    }
+
+    /**
+     * Records that a world was unloaded. A world with a toggle keeps its state
+     * by name; any other is archived if it has something worth keeping and
+     * dropped if not. Either way it is no longer eligible for votes until the
+     * world is loaded again.
+     *
+     * @param world The world being unloaded
+     */
+    public void unload(World world) {
+        WorldSleepState state = byUid.remove(world.getUID());
+        if (state == null) {
+            state = byName.get(world.getName());
+        }
+        if (state == null) {
+            return;
+        }
+
+        state.setEnvironment(null);
+        if (state.hasToggle()) {
+            // Saved to config.yml, so it stays
+            return;
+        }
+
+        byName.remove(state.getWorldName(), state);
+        // A passed vote isn't kept: it was for a night that is over by the time the world is back
+        if (state.isOnCooldown() || state.getLastVotePercentage() != 0) {
+            synchronized (archive) {
+                archive.put(state.getWorldName(), state);
+            }
+        }
+    }
+
+    /**
+     * @param worldName The name of the world
+     * @return The world's state, or null if nothing is tracked for it
+     */
+    public WorldSleepState find(String worldName) {
+        return byName.get(worldName);
+    }
+
+    public WorldSleepState getOrCreate(String worldName) {
+        return byName.computeIfAbsent(worldName, this::create);
+    }
+
+    private WorldSleepState create(String worldName) {
+        WorldSleepState state;
+        synchronized (archive) {
+            state = archive.remove(worldName);
+        }
+        if (state == null) {
+            state = new WorldSleepState(worldName, this);
+        }
+        return state;
+    }
+
+    /**
+     * @return Whether sleep voting is enabled in each world
+     */
+    public WorldSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Replaces every toggle and rule at once
+     *
+     * @param settings The new settings
+     */
+    public synchronized void setSettings(WorldSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Sets the rules for worlds without a toggle of their own, keeping the toggles
+     *
+     * @param worldRules Whether a world is enabled, by name
+     */
+    public synchronized void setWorldRules(Predicate<String> worldRules) {
+        settings = settings.withRules(worldRules);
+    }
+
+    /**
+     * Sets a world's own toggle, which it keeps over the rules
+     */
+    synchronized void setToggle(String worldName, boolean enabled) {
+        settings = settings.withToggle(worldName, enabled);
+    }
+
+    synchronized void clearToggle(String worldName) {
+        settings = settings.withoutToggle(worldName);
+    }
+
+    /**
+     * @return How many unloaded worlds have state archived
+     */
+    public int getArchivedCount() {
+        synchronized (archive) {
+            return archive.size();
+        }
+    }
+
+    /**
+     * @return A live, read-only view of every tracked world
+     */
+    public Collection<WorldSleepState> all() {
+        return states;
+    }
+}
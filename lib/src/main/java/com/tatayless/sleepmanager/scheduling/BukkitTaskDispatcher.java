@@ -0,0 +1,55 @@
+package com.tatayless.sleepmanager.scheduling;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Dispatches everything to the one main thread of a classic Bukkit server
+ */
+public class BukkitTaskDispatcher implements TaskDispatcher {
+    private final Plugin plugin;
+    // The thread this was created on, which is the main thread when created from onEnable
+    private final Thread mainThread;
+
+    public BukkitTaskDispatcher(Plugin plugin) {
+        this.plugin = plugin;
+        this.mainThread = Thread.currentThread();
+    }
+
+    @Override
+    public ScheduledTask runRepeating(Runnable task, long delayTicks, long periodTicks) {
+        BukkitTask bukkitTask = Bukkit.getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
+        return bukkitTask::cancel;
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        runOnMainThread(task);
+    }
+
+    @Override
+    public void runForWorld(World world, Runnable task) {
+        runOnMainThread(task);
+    }
+
+    @Override
+    public void runForPlayer(Player player, Runnable task) {
+        runOnMainThread(task);
+    }
+
+    @Override
+    public boolean isRegionThreaded() {
+        return false;
+    }
+
+    private void runOnMainThread(Runnable task) {
+        if (Thread.currentThread() == mainThread) {
+            task.run();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.tatayless.sleepmanager.scheduling;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.Consumer;
+
+/**
+ * Dispatches to the schedulers of a region-threaded server (Folia): global
+ * work and world time go to the global region scheduler, player work goes to
+ * the player's entity scheduler. We compile against the Spigot API, so the
+ * Folia scheduler methods are looked up reflectively once, up front.
+ */
+public class RegionTaskDispatcher implements TaskDispatcher {
+    private static final String REGIONIZED_SERVER = "io.papermc.paper.threadedregions.RegionizedServer";
+
+    private final Plugin plugin;
+    private final Object globalScheduler;
+    private final Method globalRunAtFixedRate;
+    private final Method globalExecute;
+    private final Method isGlobalTickThread;
+    private final Method isOwnedByCurrentRegion;
+    private final Method entityGetScheduler;
+    private final Method entityRun;
+    private final Method taskCancel;
+
+    public RegionTaskDispatcher(Plugin plugin) {
+        this.plugin = plugin;
+        try {
+            Method getGlobalRegionScheduler = Bukkit.class.getMethod("getGlobalRegionScheduler");
+            globalScheduler = getGlobalRegionScheduler.invoke(null);
+            Class<?> globalType = getGlobalRegionScheduler.getReturnType();
+            globalRunAtFixedRate = globalType.getMethod("runAtFixedRate", Plugin.class, Consumer.class, long.class,
+                    long.class);
+            globalExecute = globalType.getMethod("execute", Plugin.class, Runnable.class);
+            isGlobalTickThread = Bukkit.class.getMethod("isGlobalTickThread");
+            isOwnedByCurrentRegion = Bukkit.class.getMethod("isOwnedByCurrentRegion", Entity.class);
+
+            entityGetScheduler = Entity.class.getMethod("getScheduler");
+            entityRun = entityGetScheduler.getReturnType().getMethod("run", Plugin.class, Consumer.class,
+                    Runnable.class);
+            taskCancel = globalRunAtFixedRate.getReturnType().getMethod("cancel");
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Region scheduler API not available", e);
+        }
+    }
+
+    /**
+     * @return Whether this server is region-threaded
+     */
+    public static boolean isSupported() {
+        try {
+            Class.forName(REGIONIZED_SERVER);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public ScheduledTask runRepeating(Runnable task, long delayTicks, long periodTicks) {
+        Consumer<Object> body = scheduled -> task.run();
+        Object handle = invoke(globalRunAtFixedRate, globalScheduler, plugin, body, Math.max(1, delayTicks),
+                periodTicks);
+        return () -> invoke(taskCancel, handle);
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        if ((Boolean) invoke(isGlobalTickThread, null)) {
+            task.run();
+        } else {
+            invoke(globalExecute, globalScheduler, plugin, task);
+        }
+    }
+
+    @Override
+    public void runForWorld(World world, Runnable task) {
+        // World time and weather belong to the global region
+        if ((Boolean) invoke(isGlobalTickThread, null)) {
+            task.run();
+        } else {
+            invoke(globalExecute, globalScheduler, plugin, task);
+        }
+    }
+
+    @Override
+    public void runForPlayer(Player player, Runnable task) {
+        if ((Boolean) invoke(isOwnedByCurrentRegion, null, player)) {
+            task.run();
+            return;
+        }
+
+        Consumer<Object> body = scheduled -> task.run();
+        Object scheduler = invoke(entityGetScheduler, player);
+        // Null retired callback: the task is dropped if the player has left
+        invoke(entityRun, scheduler, plugin, body, null);
+    }
+
+    @Override
+    public boolean isRegionThreaded() {
+        return true;
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.tatayless.sleepmanager.scheduling;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Runs tasks on the thread that owns what they touch. On a classic server
+ * that is always the main thread; on a region-threaded server (Folia) global
+ * state such as world time belongs to the global region, and each player
+ * belongs to the region they stand in.
+ */
+public interface TaskDispatcher {
+
+    /**
+     * Runs a task repeatedly on the thread that owns global state
+     *
+     * @param task        The task
+     * @param delayTicks  Ticks before the first run; at least 1
+     * @param periodTicks Ticks between runs
+     * @return A handle to stop the task with
+     */
+    ScheduledTask runRepeating(Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * Runs a task once on the thread that owns global state, such as swapping
+     * in reloaded settings. Runs inline when the calling thread already owns it.
+     */
+    void runGlobal(Runnable task);
+
+    /**
+     * Runs a task that changes a world, such as its time or weather. Runs
+     * inline when the calling thread already owns the world.
+     */
+    void runForWorld(World world, Runnable task);
+
+    /**
+     * Runs a task for a player, such as sending them a message. Runs inline
+     * when the calling thread already owns the player. Tasks for players who
+     * have left are dropped.
+     */
+    void runForPlayer(Player player, Runnable task);
+
+    /**
+     * @return Whether players can be owned by threads other than the caller's,
+     *         i.e. whether sends have to go through {@link #runForPlayer}
+     */
+    boolean isRegionThreaded();
+
+    interface ScheduledTask {
+        void cancel();
+    }
+
+    /**
+     * Picks the dispatcher for the running server. Must be called on the main
+     * (or global region) thread, e.g. from onEnable.
+     */
+    static TaskDispatcher forServer(Plugin plugin) {
+        if (RegionTaskDispatcher.isSupported()) {
+            return new RegionTaskDispatcher(plugin);
+        }
+        return new BukkitTaskDispatcher(plugin);
+    }
+}
@@ -0,0 +1,160 @@
+package com.tatayless.sleepmanager.scheduling;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Estimates how long server ticks take from the time between runs of a task
+ * that repeats every tick, smoothed with an exponentially weighted moving
+ * average, and maps it to a {@link LoadLevel}. A healthy server ticks every
+ * 50ms, so the estimate never reads below that: it is the tick time only
+ * once the server falls behind, which is when it matters.
+ *
+ * Levels drop back only once the estimate is clearly below the threshold
+ * again, so a server hovering around one doesn't flap between levels.
+ */
+public class TickHealthMonitor {
+    // Weight of the newest sample; with one sample a tick, a spike fades over about a second
+    static final double SMOOTHING = 0.05;
+    // How far below a threshold the estimate has to fall to leave its level
+    static final double RECOVERY_MARGIN = 0.9;
+    private static final double HEALTHY_MSPT = 50.0;
+
+    public enum LoadLevel {
+        NORMAL,
+        // Prompts go out as plain chat and prompts for joining players wait
+        DEGRADED,
+        // As degraded, and broadcasts are spread over twice as many ticks
+        CRITICAL
+    }
+
+    private final TaskDispatcher dispatcher;
+    private final Logger logger;
+    private final double degradedMspt;
+    private final double criticalMspt;
+
+    private final List<Consumer<LoadLevel>> listeners = new CopyOnWriteArrayList<>();
+    // Times each level was entered
+    private final AtomicLongArray transitions = new AtomicLongArray(LoadLevel.values().length);
+
+    // Written by the sampling task only; read from any thread
+    private volatile double mspt = HEALTHY_MSPT;
+    private volatile LoadLevel level = LoadLevel.NORMAL;
+    private long lastSample;
+    private TaskDispatcher.ScheduledTask task;
+
+    /**
+     * @param dispatcher   Runs the sampling task on the global tick
+     * @param logger       Where level changes are logged
+     * @param degradedMspt The tick time at which to degrade, or 0 to never
+     * @param criticalMspt The tick time at which load is critical, or 0 to never
+     */
+    public TickHealthMonitor(TaskDispatcher dispatcher, Logger logger, double degradedMspt, double criticalMspt) {
+        this.dispatcher = dispatcher;
+        this.logger = logger;
+        this.degradedMspt = Math.max(0, degradedMspt);
+        this.criticalMspt = Math.max(0, criticalMspt);
+    }
+
+    /**
+     * Starts sampling, unless both thresholds are off
+     */
+    public synchronized void start() {
+        if (task != null || (degradedMspt <= 0 && criticalMspt <= 0)) {
+            return;
+        }
+        lastSample = 0L;
+        task = dispatcher.runRepeating(() -> sample(System.nanoTime()), 1L, 1L);
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    // Called once a tick by the sampling task
+    void sample(long nowNanos) {
+        if (lastSample != 0L) {
+            double interval = (nowNanos - lastSample) / 1_000_000.0;
+            mspt += (interval - mspt) * SMOOTHING;
+            updateLevel();
+        }
+        lastSample = nowNanos;
+    }
+
+    private void updateLevel() {
+        LoadLevel current = level;
+        LoadLevel next;
+        if (exceeds(criticalMspt, current == LoadLevel.CRITICAL)) {
+            next = LoadLevel.CRITICAL;
+        } else if (exceeds(degradedMspt, current != LoadLevel.NORMAL)) {
+            next = LoadLevel.DEGRADED;
+        } else {
+            next = LoadLevel.NORMAL;
+        }
+
+        if (next == current) {
+            return;
+        }
+
+        level = next;
+        transitions.incrementAndGet(next.ordinal());
+        String message = String.format(Locale.ROOT, "Server load is %s (%.1f mspt)",
+                next.name().toLowerCase(Locale.ROOT), mspt);
+        if (next == LoadLevel.NORMAL) {
+            logger.info(message + "; back to full messages");
+        } else {
+            logger.warning(message + "; sending lighter messages");
+        }
+
+        for (Consumer<LoadLevel> listener : listeners) {
+            listener.accept(next);
+        }
+    }
+
+    // Whether the estimate is at a threshold; a level already held is kept until it clearly drops
+    private boolean exceeds(double threshold, boolean holding) {
+        if (threshold <= 0) {
+            return false;
+        }
+        return mspt >= (holding ? threshold * RECOVERY_MARGIN : threshold);
+    }
+
+    /**
+     * Registers a callback run on the sampling thread whenever the level changes
+     */
+    public void addListener(Consumer<LoadLevel> listener) {
+        listeners.add(listener);
+    }
+
+    public LoadLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * @return Whether the server is behind enough that messages should be lighter
+     */
+    public boolean isDegraded() {
+        return level != LoadLevel.NORMAL;
+    }
+
+    /**
+     * @return The smoothed time between ticks, in milliseconds
+     */
+    public double getMspt() {
+        return mspt;
+    }
+
+    /**
+     * @return How many times the server entered the given load level
+     */
+    public long getTransitions(LoadLevel level) {
+        return transitions.get(level.ordinal());
+    }
+}
@@ -0,0 +1,103 @@
+package com.tatayless.sleepmanager.stats;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-bucket histogram of durations in nanoseconds. Buckets are
+ * log-linear: each power of two is split into eight, so a percentile is
+ * never more than 12.5% above the real value. Recording updates four
+ * striped counters (the value's bucket, the count, the total and the max),
+ * so threads recording at once rarely contend. The counters allocate only
+ * the first few times threads do contend on them.
+ */
+public final class LatencyHistogram {
+    // Values below this get one bucket each; above it, each power of two gets SUB_BUCKETS
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKET_COUNT = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[bucketOf(nanos)].increment();
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long n = count.sum();
+        return n > 0 ? total.sum() / n : 0;
+    }
+
+    /**
+     * Gets an upper bound for the given percentile
+     *
+     * @param percentile The percentile, from 0 to 100
+     * @return The upper edge of the bucket holding that percentile, capped at
+     *         the largest recorded value, or 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        // Sum the buckets first so the target and the walk see the same counts
+        long[] counts = new long[BUCKET_COUNT];
+        long n = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+            n += counts[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) | sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+        int sub = bucket & (SUB_BUCKETS - 1);
+        long width = 1L << (exponent - SUB_BITS);
+        long lower = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + width - 1;
+    }
+}
@@ -0,0 +1,29 @@
+package com.tatayless.sleepmanager.stats;
+
+/**
+ * The hot paths SleepManager times
+ */
+public enum Probe {
+    BED_ENTER("bed-enter", true),
+    VOTE_START("vote-start", true),
+    VOTE_END("vote-end", true),
+    BROADCAST("broadcast", true),
+    // Config writes happen on the background writer, not during a tick
+    CONFIG_SAVE("config-save", false);
+
+    private final String displayName;
+    private final boolean mainThread;
+
+    Probe(String displayName, boolean mainThread) {
+        this.displayName = displayName;
+        this.mainThread = mainThread;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public boolean isMainThread() {
+        return mainThread;
+    }
+}
@@ -0,0 +1,60 @@
+package com.tatayless.sleepmanager.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events over the last 15 minutes in 10-second slots. Each slot
+ * remembers which 10-second period it belongs to, so stale slots are reset
+ * on the next write and skipped on read; there's no background sweeper.
+ */
+public final class RollingCounter {
+    static final long SLOT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // 15 minutes of history plus the slot being filled
+    private static final int SLOTS = 91;
+
+    public static final int ONE_MINUTE = 6;
+    public static final int FIVE_MINUTES = 30;
+    public static final int FIFTEEN_MINUTES = 90;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SLOTS);
+    private final AtomicLongArray periods = new AtomicLongArray(SLOTS);
+
+    public RollingCounter() {
+        // No slot may look current before it has been written
+        for (int i = 0; i < SLOTS; i++) {
+            periods.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    public void increment(long nowNanos) {
+        long period = Math.floorDiv(nowNanos, SLOT_NANOS);
+        int slot = (int) Math.floorMod(period, (long) SLOTS);
+
+        long seen = periods.get(slot);
+        if (seen != period && periods.compareAndSet(slot, seen, period)) {
+            // An increment racing with the reset may be lost; fine for stats
+            counts.set(slot, 0);
+        }
+        counts.incrementAndGet(slot);
+    }
+
+    /**
+     * Sums the events in the most recent slots, including the one being filled
+     *
+     * @param slots    How many 10-second slots to cover, e.g. {@link #ONE_MINUTE}
+     * @param nowNanos The current {@link System#nanoTime()}
+     * @return The number of events in that window
+     */
+    public long sum(int slots, long nowNanos) {
+        long current = Math.floorDiv(nowNanos, SLOT_NANOS);
+        long sum = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            long age = current - periods.get(i);
+            if (age >= 0 && age < slots) {
+                sum += counts.get(i);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,117 @@
+package com.tatayless.sleepmanager.stats;
+
+import org.bukkit.World;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects timings and rolling counts for each {@link Probe}. Callers take a
+ * start stamp with {@link #begin()} and hand it back to {@code record}; while
+ * instrumentation is off {@code begin()} returns 0 and recording returns
+ * straight away, so a disabled probe is one field read and one branch.
+ *
+ * <pre>
+ * long start = stats.begin();
+ * ...
+ * stats.record(Probe.VOTE_START, worldName, start);
+ * </pre>
+ */
+public final class StatsRecorder {
+    private volatile boolean enabled;
+
+    private final Map<Probe, LatencyHistogram> timings = new EnumMap<>(Probe.class);
+    private final Map<Probe, RollingCounter> counts = new EnumMap<>(Probe.class);
+
+    // Counts per world, created the first time a world records anything
+    private final Map<String, Map<Probe, RollingCounter>> worldCounts = new ConcurrentHashMap<>();
+
+    public StatsRecorder() {
+        for (Probe probe : Probe.values()) {
+            timings.put(probe, new LatencyHistogram());
+            counts.put(probe, new RollingCounter());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a probe
+     *
+     * @return The start stamp, or 0 if instrumentation is off
+     */
+    public long begin() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void record(Probe probe, long start) {
+        if (start == 0L) {
+            return;
+        }
+        long now = System.nanoTime();
+        timings.get(probe).record(now - start);
+        counts.get(probe).increment(now);
+    }
+
+    public void record(Probe probe, String worldName, long start) {
+        if (start == 0L) {
+            return;
+        }
+        long now = System.nanoTime();
+        timings.get(probe).record(now - start);
+        counts.get(probe).increment(now);
+        worldCounts.computeIfAbsent(worldName, name -> newCounters()).get(probe).increment(now);
+    }
+
+    public void record(Probe probe, World world, long start) {
+        if (start == 0L) {
+            return;
+        }
+        record(probe, world.getName(), start);
+    }
+
+    public LatencyHistogram getTimings(Probe probe) {
+        return timings.get(probe);
+    }
+
+    public long getCount(Probe probe, int slots) {
+        return counts.get(probe).sum(slots, System.nanoTime());
+    }
+
+    /**
+     * Gets how often a probe fired in one world
+     *
+     * @param probe     The probe
+     * @param worldName The name of the world
+     * @param slots     The window in 10-second slots, e.g. {@link RollingCounter#ONE_MINUTE}
+     * @return The count, or 0 if the world never recorded anything
+     */
+    public long getCount(Probe probe, String worldName, int slots) {
+        Map<Probe, RollingCounter> world = worldCounts.get(worldName);
+        return world != null ? world.get(probe).sum(slots, System.nanoTime()) : 0;
+    }
+
+    /**
+     * Drops the counts kept for a world, e.g. once it is unloaded
+     *
+     * @param worldName The name of the world
+     */
+    public void removeWorld(String worldName) {
+        worldCounts.remove(worldName);
+    }
+
+    private static Map<Probe, RollingCounter> newCounters() {
+        Map<Probe, RollingCounter> counters = new EnumMap<>(Probe.class);
+        for (Probe probe : Probe.values()) {
+            counters.put(probe, new RollingCounter());
+        }
+        return counters;
+    }
+}
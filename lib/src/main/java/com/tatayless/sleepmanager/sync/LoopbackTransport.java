@@ -0,0 +1,58 @@
+package com.tatayless.sleepmanager.sync;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Connects servers running in one process, e.g. several vote managers in a
+ * test. Batches are handed to the other members' receivers on the sending
+ * thread.
+ */
+public final class LoopbackTransport implements SyncTransport {
+    private final Network network;
+    private volatile Consumer<byte[]> receiver;
+
+    private LoopbackTransport(Network network) {
+        this.network = network;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void send(byte[] batch) {
+        for (LoopbackTransport member : network.members) {
+            Consumer<byte[]> memberReceiver = member.receiver;
+            if (member != this && memberReceiver != null) {
+                memberReceiver.accept(batch.clone());
+            }
+        }
+    }
+
+    @Override
+    public int getMaxBatchBytes() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void close() {
+        receiver = null;
+        network.members.remove(this);
+    }
+
+    /**
+     * The servers that can hear each other
+     */
+    public static final class Network {
+        private final List<LoopbackTransport> members = new CopyOnWriteArrayList<>();
+
+        public LoopbackTransport connect() {
+            LoopbackTransport transport = new LoopbackTransport(this);
+            members.add(transport);
+            return transport;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.tatayless.sleepmanager.sync;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * Sends batches through the proxy with the BungeeCord "Forward" plugin
+ * message, which BungeeCord and Velocity relay to every other backend
+ * server. Plugin messages travel over a player's connection, so batches sent
+ * while nobody is online are dropped; other servers catch up with the next
+ * vote.
+ */
+public final class PluginMessagingTransport implements SyncTransport, PluginMessageListener {
+    static final String CHANNEL = "BungeeCord";
+    static final String SUBCHANNEL = "SleepManagerSync";
+    // Forwarded data has a two-byte length, and the proxy caps a plugin message at 32 KiB
+    private static final int MAX_BATCH_BYTES = 30_000;
+
+    private final Plugin plugin;
+    private volatile Consumer<byte[]> receiver;
+
+    public PluginMessagingTransport(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+        plugin.getServer().getMessenger().registerOutgoingPluginChannel(plugin, CHANNEL);
+        plugin.getServer().getMessenger().registerIncomingPluginChannel(plugin, CHANNEL, this);
+    }
+
+    @Override
+    public void send(byte[] batch) {
+        Iterator<? extends Player> players = plugin.getServer().getOnlinePlayers().iterator();
+        if (!players.hasNext()) {
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch.length + 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF("Forward");
+            out.writeUTF("ALL");
+            out.writeUTF(SUBCHANNEL);
+            out.writeShort(batch.length);
+            out.write(batch);
+        } catch (IOException e) {
+            // Not thrown by an in-memory stream
+            throw new UncheckedIOException(e);
+        }
+        players.next().sendPluginMessage(plugin, CHANNEL, bytes.toByteArray());
+    }
+
+    @Override
+    public int getMaxBatchBytes() {
+        return MAX_BATCH_BYTES;
+    }
+
+    @Override
+    public void onPluginMessageReceived(String channel, Player player, byte[] message) {
+        Consumer<byte[]> current = receiver;
+        if (current == null || !CHANNEL.equals(channel)) {
+            return;
+        }
+
+        // Forwarded messages arrive as: subchannel, data length, data
+        ByteBuffer in = ByteBuffer.wrap(message);
+        try {
+            byte[] subchannel = new byte[in.getShort() & 0xFFFF];
+            in.get(subchannel);
+            if (!SUBCHANNEL.equals(new String(subchannel, StandardCharsets.UTF_8))) {
+                return;
+            }
+            byte[] batch = new byte[in.getShort() & 0xFFFF];
+            in.get(batch);
+            current.accept(batch);
+        } catch (BufferUnderflowException e) {
+            plugin.getLogger().warning("Ignored a truncated vote sync message");
+        }
+    }
+
+    @Override
+    public void close() {
+        receiver = null;
+        plugin.getServer().getMessenger().unregisterIncomingPluginChannel(plugin, CHANNEL);
+        plugin.getServer().getMessenger().unregisterOutgoingPluginChannel(plugin, CHANNEL);
+    }
+}
@@ -0,0 +1,53 @@
+package com.tatayless.sleepmanager.sync;
+
+/**
+ * A Lamport clock reading paired with the server that made it. Stamps from
+ * different servers are totally ordered, clock first and server id second,
+ * so every server settles a conflict the same way without coordinating.
+ */
+public final class Stamp implements Comparable<Stamp> {
+    private final long clock;
+    private final long origin;
+
+    public Stamp(long clock, long origin) {
+        this.clock = clock;
+        this.origin = origin;
+    }
+
+    public long getClock() {
+        return clock;
+    }
+
+    public long getOrigin() {
+        return origin;
+    }
+
+    public boolean isBefore(Stamp other) {
+        return compareTo(other) < 0;
+    }
+
+    @Override
+    public int compareTo(Stamp other) {
+        int byClock = Long.compare(clock, other.clock);
+        return byClock != 0 ? byClock : Long.compare(origin, other.origin);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Stamp)) {
+            return false;
+        }
+        Stamp stamp = (Stamp) other;
+        return clock == stamp.clock && origin == stamp.origin;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(clock) * 31 + Long.hashCode(origin);
+    }
+
+    @Override
+    public String toString() {
+        return clock + "@" + Long.toHexString(origin);
+    }
+}
@@ -0,0 +1,192 @@
+package com.tatayless.sleepmanager.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Packs a batch of one server's ops into bytes. Ops are grouped by world so
+ * each name is written once, and clocks are written as variable-length
+ * deltas from the previous op, so a typical vote costs one header byte, one
+ * or two clock bytes and the player's UUID.
+ *
+ * Layout: version (1), origin (8), base clock (varint), world count
+ * (varint), then per world its name (varint length, UTF-8) and op count
+ * (varint), then per op a header byte (type, flag, skip night, foreign
+ * session), the clock delta (varint) and, for votes, the player's UUID (16),
+ * or for ends, the ended vote's clock delta (zigzag varint) and, if it was
+ * started by another server, that server's id (8).
+ */
+final class SyncCodec {
+    static final byte VERSION = 1;
+
+    private static final int TYPE_MASK = 0x03;
+    private static final int FLAG = 0x04;
+    private static final int SKIP_NIGHT = 0x08;
+    private static final int FOREIGN_SESSION = 0x10;
+    private static final SyncOp.Type[] TYPES = SyncOp.Type.values();
+
+    private SyncCodec() {
+    }
+
+    /**
+     * @param origin The id of the server the ops come from
+     * @param ops    Ops stamped by that server; not modified
+     */
+    static byte[] encode(long origin, List<SyncOp> ops) {
+        Map<String, List<SyncOp>> byWorld = new LinkedHashMap<>();
+        long baseClock = Long.MAX_VALUE;
+        for (SyncOp op : ops) {
+            byWorld.computeIfAbsent(op.getWorldName(), name -> new ArrayList<>()).add(op);
+            baseClock = Math.min(baseClock, op.getStamp().getClock());
+        }
+        if (ops.isEmpty()) {
+            baseClock = 0;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + ops.size() * 20);
+        out.write(VERSION);
+        writeLong(out, origin);
+        writeVarLong(out, baseClock);
+        writeVarLong(out, byWorld.size());
+
+        for (Map.Entry<String, List<SyncOp>> world : byWorld.entrySet()) {
+            byte[] name = world.getKey().getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, name.length);
+            out.write(name, 0, name.length);
+
+            List<SyncOp> worldOps = world.getValue();
+            // Ops can be queued slightly out of clock order by concurrent callers
+            worldOps.sort(Comparator.comparingLong(op -> op.getStamp().getClock()));
+            writeVarLong(out, worldOps.size());
+
+            long previous = baseClock;
+            for (SyncOp op : worldOps) {
+                Stamp session = op.getSession();
+                boolean foreignSession = session != null && session.getOrigin() != origin;
+                out.write(op.getType().ordinal()
+                        | (op.getFlag() ? FLAG : 0)
+                        | (op.isSkipNight() ? SKIP_NIGHT : 0)
+                        | (foreignSession ? FOREIGN_SESSION : 0));
+
+                long clock = op.getStamp().getClock();
+                writeVarLong(out, clock - previous);
+                previous = clock;
+
+                if (op.getType() == SyncOp.Type.VOTE) {
+                    writeLong(out, op.getPlayerId().getMostSignificantBits());
+                    writeLong(out, op.getPlayerId().getLeastSignificantBits());
+                } else if (op.getType() == SyncOp.Type.END) {
+                    long delta = clock - session.getClock();
+                    writeVarLong(out, (delta << 1) ^ (delta >> 63));
+                    if (foreignSession) {
+                        writeLong(out, session.getOrigin());
+                    }
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the batch is truncated, corrupt or from an unknown version
+     */
+    static List<SyncOp> decode(byte[] batch) {
+        ByteBuffer in = ByteBuffer.wrap(batch);
+        try {
+            byte version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unknown sync batch version " + version);
+            }
+
+            long origin = in.getLong();
+            long baseClock = readVarLong(in);
+            int worlds = readCount(in);
+            List<SyncOp> ops = new ArrayList<>();
+
+            for (int w = 0; w < worlds; w++) {
+                byte[] name = new byte[readCount(in)];
+                in.get(name);
+                String worldName = new String(name, StandardCharsets.UTF_8);
+
+                int count = readCount(in);
+                long previous = baseClock;
+                for (int i = 0; i < count; i++) {
+                    int header = in.get() & 0xFF;
+                    if ((header & TYPE_MASK) >= TYPES.length) {
+                        throw new IllegalArgumentException("Unknown sync op type " + (header & TYPE_MASK));
+                    }
+                    SyncOp.Type type = TYPES[header & TYPE_MASK];
+                    boolean flag = (header & FLAG) != 0;
+
+                    long clock = previous + readVarLong(in);
+                    previous = clock;
+                    Stamp stamp = new Stamp(clock, origin);
+
+                    switch (type) {
+                        case START:
+                            ops.add(SyncOp.start(worldName, stamp));
+                            break;
+                        case VOTE:
+                            ops.add(SyncOp.vote(worldName, stamp, new UUID(in.getLong(), in.getLong()), flag));
+                            break;
+                        case END:
+                            long zigzag = readVarLong(in);
+                            long sessionClock = clock - ((zigzag >>> 1) ^ -(zigzag & 1));
+                            long sessionOrigin = (header & FOREIGN_SESSION) != 0 ? in.getLong() : origin;
+                            ops.add(SyncOp.end(worldName, stamp, new Stamp(sessionClock, sessionOrigin), flag));
+                            break;
+                        default:
+                            ops.add(SyncOp.sleep(worldName, stamp, flag, (header & SKIP_NIGHT) != 0));
+                            break;
+                    }
+                }
+            }
+            return ops;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated sync batch", e);
+        }
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in sync batch");
+    }
+
+    // A length or count, which can't be more than the bytes left
+    private static int readCount(ByteBuffer in) {
+        long count = readVarLong(in);
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Bad count " + count + " in sync batch");
+        }
+        return (int) count;
+    }
+}
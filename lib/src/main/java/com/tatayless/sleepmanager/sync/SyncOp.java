@@ -0,0 +1,85 @@
+package com.tatayless.sleepmanager.sync;
+
+import java.util.UUID;
+
+/**
+ * One change to a world's vote state, replicated to the other servers
+ */
+public final class SyncOp {
+    public enum Type {
+        // A vote started; its stamp identifies the vote
+        START,
+        // A player voted in the world's current vote
+        VOTE,
+        // A vote ended with the given result
+        END,
+        // Sleeping was turned off by a player using it, or its state changed otherwise
+        SLEEP
+    }
+
+    private final Type type;
+    private final String worldName;
+    private final Stamp stamp;
+    // END: the vote that ended
+    private final Stamp session;
+    // VOTE: the player who voted
+    private final UUID playerId;
+    // VOTE: voted yes; END: passed; SLEEP: sleep enabled
+    private final boolean flag;
+    // SLEEP: a player slept, so the night should be skipped
+    private final boolean skipNight;
+
+    SyncOp(Type type, String worldName, Stamp stamp, Stamp session, UUID playerId, boolean flag, boolean skipNight) {
+        this.type = type;
+        this.worldName = worldName;
+        this.stamp = stamp;
+        this.session = session;
+        this.playerId = playerId;
+        this.flag = flag;
+        this.skipNight = skipNight;
+    }
+
+    public static SyncOp start(String worldName, Stamp stamp) {
+        return new SyncOp(Type.START, worldName, stamp, null, null, false, false);
+    }
+
+    public static SyncOp vote(String worldName, Stamp stamp, UUID playerId, boolean yes) {
+        return new SyncOp(Type.VOTE, worldName, stamp, null, playerId, yes, false);
+    }
+
+    public static SyncOp end(String worldName, Stamp stamp, Stamp session, boolean passed) {
+        return new SyncOp(Type.END, worldName, stamp, session, null, passed, false);
+    }
+
+    public static SyncOp sleep(String worldName, Stamp stamp, boolean enabled, boolean skipNight) {
+        return new SyncOp(Type.SLEEP, worldName, stamp, null, null, enabled, skipNight);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public Stamp getStamp() {
+        return stamp;
+    }
+
+    public Stamp getSession() {
+        return session;
+    }
+
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    public boolean getFlag() {
+        return flag;
+    }
+
+    public boolean isSkipNight() {
+        return skipNight;
+    }
+}
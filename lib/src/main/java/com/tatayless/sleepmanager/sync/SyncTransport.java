@@ -0,0 +1,30 @@
+package com.tatayless.sleepmanager.sync;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries encoded batches of vote state changes between servers. Sends must
+ * not block on the network; batches may be lost, but those from one server
+ * should arrive in the order they were sent.
+ */
+public interface SyncTransport {
+
+    /**
+     * Starts delivering batches from other servers
+     *
+     * @param receiver Called with each batch, on any thread; must not block
+     */
+    void start(Consumer<byte[]> receiver);
+
+    /**
+     * Sends a batch to every other server. Called on the global tick thread.
+     */
+    void send(byte[] batch);
+
+    /**
+     * @return The largest batch this transport can carry, in bytes
+     */
+    int getMaxBatchBytes();
+
+    void close();
+}
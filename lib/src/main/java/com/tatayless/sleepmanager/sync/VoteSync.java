@@ -0,0 +1,227 @@
+package com.tatayless.sleepmanager.sync;
+
+import com.tatayless.sleepmanager.scheduling.TaskDispatcher;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replicates vote state changes between servers that share a world. Local
+ * changes are stamped with a Lamport clock and queued without blocking; every
+ * few ticks the queue is coalesced, encoded into one batch and handed to the
+ * transport, and the changes received from other servers since the last
+ * flush are passed to the handler on the global tick thread.
+ */
+public class VoteSync {
+    private final SyncTransport transport;
+    private final TaskDispatcher dispatcher;
+    private final Logger logger;
+    private final long originId;
+    private final long flushIntervalTicks;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final Queue<SyncOp> outbound = new ConcurrentLinkedQueue<>();
+    private final Queue<SyncOp> inbound = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong sentBatches = new AtomicLong();
+    private final AtomicLong sentOps = new AtomicLong();
+    private final AtomicLong receivedOps = new AtomicLong();
+    private final AtomicLong rejectedBatches = new AtomicLong();
+
+    private Consumer<List<SyncOp>> handler;
+    private TaskDispatcher.ScheduledTask task;
+
+    /**
+     * @param transport          Carries batches to the other servers
+     * @param dispatcher         Runs the flush task on the global tick
+     * @param logger             Where rejected batches are logged
+     * @param originId           This server's id; must differ between servers
+     * @param flushIntervalTicks Ticks between batches
+     */
+    public VoteSync(SyncTransport transport, TaskDispatcher dispatcher, Logger logger, long originId,
+            int flushIntervalTicks) {
+        this.transport = transport;
+        this.dispatcher = dispatcher;
+        this.logger = logger;
+        this.originId = originId;
+        this.flushIntervalTicks = Math.max(1, flushIntervalTicks);
+    }
+
+    /**
+     * Turns a configured server id into an origin id, or picks a random one
+     * when none is configured
+     */
+    public static long originOf(String serverId) {
+        if (serverId == null || serverId.isBlank()) {
+            return UUID.randomUUID().getMostSignificantBits();
+        }
+        return UUID.nameUUIDFromBytes(serverId.getBytes(StandardCharsets.UTF_8)).getMostSignificantBits();
+    }
+
+    /**
+     * Starts sending and receiving
+     *
+     * @param handler Applies changes from other servers, on the global tick thread
+     */
+    public synchronized void start(Consumer<List<SyncOp>> handler) {
+        if (task != null) {
+            return;
+        }
+        this.handler = handler;
+        transport.start(this::receive);
+        task = dispatcher.runRepeating(this::flush, flushIntervalTicks, flushIntervalTicks);
+    }
+
+    /**
+     * Sends what is still queued and disconnects
+     */
+    public synchronized void stop() {
+        if (task == null) {
+            return;
+        }
+        task.cancel();
+        task = null;
+        sendOutbound();
+        transport.close();
+    }
+
+    /**
+     * @return A stamp for a local change, later than every change seen so far
+     */
+    public Stamp nextStamp() {
+        return new Stamp(clock.incrementAndGet(), originId);
+    }
+
+    /**
+     * Queues a local change for the next batch. Never blocks.
+     */
+    public void publish(SyncOp op) {
+        outbound.add(op);
+    }
+
+    // Runs every flush interval on the global tick thread
+    synchronized void flush() {
+        sendOutbound();
+
+        if (inbound.isEmpty() || handler == null) {
+            return;
+        }
+        List<SyncOp> received = new ArrayList<>();
+        for (SyncOp op = inbound.poll(); op != null; op = inbound.poll()) {
+            received.add(op);
+        }
+        handler.accept(received);
+    }
+
+    private void sendOutbound() {
+        if (outbound.isEmpty()) {
+            return;
+        }
+        List<SyncOp> pending = new ArrayList<>();
+        for (SyncOp op = outbound.poll(); op != null; op = outbound.poll()) {
+            pending.add(op);
+        }
+        send(coalesce(pending));
+    }
+
+    // Splits batches the transport can't carry in one piece
+    private void send(List<SyncOp> ops) {
+        byte[] batch = SyncCodec.encode(originId, ops);
+        if (batch.length > transport.getMaxBatchBytes() && ops.size() > 1) {
+            int half = ops.size() / 2;
+            send(ops.subList(0, half));
+            send(ops.subList(half, ops.size()));
+            return;
+        }
+
+        transport.send(batch);
+        sentBatches.incrementAndGet();
+        sentOps.addAndGet(ops.size());
+    }
+
+    // Keeps only a player's latest vote and a world's latest sleep change within
+    // each vote, so a burst of changes costs one op each
+    static List<SyncOp> coalesce(List<SyncOp> ops) {
+        Set<Map.Entry<String, UUID>> votes = new HashSet<>();
+        Set<String> sleeps = new HashSet<>();
+        List<SyncOp> kept = new ArrayList<>(ops.size());
+
+        for (int i = ops.size() - 1; i >= 0; i--) {
+            SyncOp op = ops.get(i);
+            switch (op.getType()) {
+                case VOTE:
+                    if (votes.add(Map.entry(op.getWorldName(), op.getPlayerId()))) {
+                        kept.add(op);
+                    }
+                    break;
+                case SLEEP:
+                    if (sleeps.add(op.getWorldName())) {
+                        kept.add(op);
+                    }
+                    break;
+                default:
+                    // Changes from before a vote started or ended are kept
+                    votes.removeIf(vote -> vote.getKey().equals(op.getWorldName()));
+                    sleeps.remove(op.getWorldName());
+                    kept.add(op);
+                    break;
+            }
+        }
+        Collections.reverse(kept);
+        return kept;
+    }
+
+    // Called by the transport on any thread
+    private void receive(byte[] batch) {
+        List<SyncOp> ops;
+        try {
+            ops = SyncCodec.decode(batch);
+        } catch (IllegalArgumentException e) {
+            rejectedBatches.incrementAndGet();
+            logger.log(Level.WARNING, "Ignored a vote sync batch that could not be read", e);
+            return;
+        }
+
+        for (SyncOp op : ops) {
+            // Our own batches can come back through some proxies
+            if (op.getStamp().getOrigin() == originId) {
+                continue;
+            }
+            clock.accumulateAndGet(op.getStamp().getClock(), Math::max);
+            inbound.add(op);
+            receivedOps.incrementAndGet();
+        }
+    }
+
+    public long getOriginId() {
+        return originId;
+    }
+
+    public long getSentBatches() {
+        return sentBatches.get();
+    }
+
+    public long getSentOps() {
+        return sentOps.get();
+    }
+
+    public long getReceivedOps() {
+        return receivedOps.get();
+    }
+
+    public long getRejectedBatches() {
+        return rejectedBatches.get();
+    }
+}
@@ -0,0 +1,191 @@
+package com.tatayless.sleepmanager.utils;
+
+import com.tatayless.sleepmanager.scheduling.TaskDispatcher;
+import net.md_5.bungee.api.chat.BaseComponent;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+/**
+ * Spreads large broadcasts over several ticks. Each tick sends at most a
+ * configured number of messages, or stops once a configured time has been
+ * spent, and the rest wait for the next tick.
+ *
+ * Broadcasts are delivered strictly in the order they were submitted: a
+ * broadcast starts sending inline only when nothing is queued, and otherwise
+ * waits behind the ones already queued. So a vote result can never reach a
+ * player before that vote's prompt.
+ *
+ * On a region-threaded server each send is handed to the player's own
+ * thread, which runs them in the order they were handed over. Broadcasts can
+ * be submitted from any thread.
+ */
+final class BroadcastScheduler {
+    private final TaskDispatcher dispatcher;
+    private final int maxPerTick;
+    private final long maxNanosPerTick;
+    // Halves the budget while the server is far behind
+    private volatile boolean throttled;
+
+    private final ArrayDeque<Delivery> queue = new ArrayDeque<>();
+    // Runs every tick while anything is queued
+    private TaskDispatcher.ScheduledTask drainTask;
+
+    /**
+     * @param dispatcher      Runs the drain task and, on region-threaded servers, the sends
+     * @param maxPerTick      The most messages to send in one tick, or 0 for no limit
+     * @param maxNanosPerTick The most time to spend sending in one tick, or 0 for no limit
+     */
+    BroadcastScheduler(TaskDispatcher dispatcher, int maxPerTick, long maxNanosPerTick) {
+        this.dispatcher = dispatcher;
+        this.maxPerTick = Math.max(0, maxPerTick);
+        this.maxNanosPerTick = Math.max(0, maxNanosPerTick);
+    }
+
+    void submit(BaseComponent[] components, Collection<? extends Player> players) {
+        submit(new Delivery(dispatcher, components, null, players));
+    }
+
+    void submit(String message, Collection<? extends Player> players) {
+        submit(new Delivery(dispatcher, null, message, players));
+    }
+
+    private synchronized void submit(Delivery delivery) {
+        if (delivery.recipients.length == 0) {
+            return;
+        }
+
+        queue.add(delivery);
+
+        // While the drain task runs, this goes out after everything ahead of it
+        if (drainTask != null) {
+            return;
+        }
+
+        // Otherwise start sending now; whatever doesn't fit this tick is drained later
+        drain(false);
+        if (!queue.isEmpty()) {
+            startDrainTask();
+        }
+    }
+
+    /**
+     * Sends everything still queued right away, e.g. when the plugin is disabled
+     */
+    synchronized void flush() {
+        for (Delivery delivery : queue) {
+            while (delivery.hasNext()) {
+                delivery.sendNext(true);
+            }
+        }
+        queue.clear();
+        stopDrainTask();
+    }
+
+    synchronized int getQueuedDeliveries() {
+        return queue.size();
+    }
+
+    /**
+     * Spreads broadcasts over twice as many ticks while set
+     */
+    void setThrottled(boolean throttled) {
+        this.throttled = throttled;
+    }
+
+    // Sends queued messages in order until this tick's budget runs out. Messages
+    // sent in a later tick than they were submitted in skip players who left.
+    private synchronized void drain(boolean later) {
+        boolean halved = throttled;
+        int maxMessages = halved && maxPerTick > 1 ? maxPerTick / 2 : maxPerTick;
+        // At least 1ns, since 0 would mean no limit at all
+        long maxNanos = halved && maxNanosPerTick > 0 ? Math.max(1L, maxNanosPerTick / 2) : maxNanosPerTick;
+        long deadline = maxNanos > 0 ? System.nanoTime() + maxNanos : 0L;
+        int sent = 0;
+
+        while (!queue.isEmpty()) {
+            Delivery delivery = queue.peek();
+            while (delivery.hasNext()) {
+                delivery.sendNext(later);
+                sent++;
+                // Checked after sending, so every drain makes progress however small the budget
+                if ((maxMessages > 0 && sent >= maxMessages)
+                        || (deadline != 0L && System.nanoTime() - deadline >= 0)) {
+                    if (!delivery.hasNext()) {
+                        queue.poll();
+                    }
+                    return;
+                }
+            }
+            queue.poll();
+        }
+    }
+
+    private void startDrainTask() {
+        if (drainTask != null) {
+            return;
+        }
+        drainTask = dispatcher.runRepeating(() -> {
+            synchronized (this) {
+                drain(true);
+                if (queue.isEmpty()) {
+                    stopDrainTask();
+                }
+            }
+        }, 1L, 1L);
+    }
+
+    private void stopDrainTask() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+    }
+
+    // One message and the players still waiting for it
+    private static final class Delivery {
+        private final TaskDispatcher dispatcher;
+        private final BaseComponent[] components;
+        private final String message;
+        // Snapshotted when submitted, so later joins and quits don't shift the cursor
+        private final Player[] recipients;
+        private int next;
+
+        private Delivery(TaskDispatcher dispatcher, BaseComponent[] components, String message,
+                Collection<? extends Player> players) {
+            this.dispatcher = dispatcher;
+            this.components = components;
+            this.message = message;
+            this.recipients = players.toArray(new Player[0]);
+        }
+
+        private boolean hasNext() {
+            return next < recipients.length;
+        }
+
+        private void sendNext(boolean skipOffline) {
+            Player player = recipients[next];
+            recipients[next++] = null;
+
+            if (dispatcher.isRegionThreaded()) {
+                // The player's scheduler drops the send if they have left
+                dispatcher.runForPlayer(player, () -> send(player));
+                return;
+            }
+
+            if (skipOffline && !player.isOnline()) {
+                return;
+            }
+            send(player);
+        }
+
+        private void send(Player player) {
+            if (components != null) {
+                player.spigot().sendMessage(components);
+            } else {
+                player.sendMessage(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.tatayless.sleepmanager.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message with its color codes already translated and its placeholders
+ * split out, so rendering only has to concatenate segments.
+ */
+public final class CompiledMessage {
+
+    public enum Placeholder {
+        WORLD("{world}"),
+        YES_PERCENT("{yes_percent}");
+
+        private final String token;
+
+        Placeholder(String token) {
+            this.token = token;
+        }
+
+        public String getToken() {
+            return token;
+        }
+    }
+
+    private static final Placeholder[] PLACEHOLDERS = Placeholder.values();
+
+    // literals.length is always placeholders.length + 1
+    private final String[] literals;
+    private final Placeholder[] placeholders;
+    private final String text;
+    private final int literalLength;
+
+    private CompiledMessage(String text, String[] literals, Placeholder[] placeholders) {
+        this.text = text;
+        this.literals = literals;
+        this.placeholders = placeholders;
+
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Splits an already color-translated template on its placeholders
+     *
+     * @param text The translated message text
+     * @return The compiled message
+     */
+    public static CompiledMessage compile(String text) {
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+
+        int start = 0;
+        while (true) {
+            int nextIndex = -1;
+            Placeholder next = null;
+            for (Placeholder placeholder : PLACEHOLDERS) {
+                int index = text.indexOf(placeholder.token, start);
+                if (index >= 0 && (nextIndex < 0 || index < nextIndex)) {
+                    nextIndex = index;
+                    next = placeholder;
+                }
+            }
+
+            if (next == null) {
+                literals.add(text.substring(start));
+                break;
+            }
+
+            literals.add(text.substring(start, nextIndex));
+            placeholders.add(next);
+            start = nextIndex + next.token.length();
+        }
+
+        return new CompiledMessage(text, literals.toArray(new String[0]),
+                placeholders.toArray(new Placeholder[0]));
+    }
+
+    /**
+     * @return The translated text with placeholders left in place
+     */
+    public String text() {
+        return text;
+    }
+
+    public boolean hasPlaceholders() {
+        return placeholders.length > 0;
+    }
+
+    /**
+     * Renders the message by concatenating its segments with the given values
+     *
+     * @param worldName  Value for {world}
+     * @param yesPercent Value for {yes_percent}
+     * @return The rendered message
+     */
+    public String render(String worldName, String yesPercent) {
+        if (placeholders.length == 0) {
+            return text;
+        }
+
+        int length = literalLength;
+        for (Placeholder placeholder : placeholders) {
+            length += value(placeholder, worldName, yesPercent).length();
+        }
+
+        StringBuilder builder = new StringBuilder(length);
+        builder.append(literals[0]);
+        for (int i = 0; i < placeholders.length; i++) {
+            builder.append(value(placeholders[i], worldName, yesPercent));
+            builder.append(literals[i + 1]);
+        }
+        return builder.toString();
+    }
+
+    public String render(String worldName) {
+        return render(worldName, "");
+    }
+
+    private static String value(Placeholder placeholder, String worldName, String yesPercent) {
+        String value = placeholder == Placeholder.WORLD ? worldName : yesPercent;
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,225 @@
+package com.tatayless.sleepmanager.utils;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.cache.BinaryCache;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * The language bundles other than the default one, loaded from {@code lang/}
+ * the first time a player needs them and kept in a bounded LRU. The default
+ * bundle is loaded at startup by {@link MessageUtils} and never evicted.
+ *
+ * A client locale such as {@code pt_br} resolves to {@code lang/pt_br.yml},
+ * then {@code lang/pt.yml}, then the default bundle. Keys missing from a
+ * bundle fall back to the default bundle's message.
+ */
+final class LanguageBundles {
+    // Layout of cached bundles; changes whenever a message key is added, removed or renamed
+    private static final int CACHE_SCHEMA = 31 + Arrays.hashCode(
+            Arrays.stream(MessageKey.values()).map(MessageKey::getPath).toArray());
+
+    private final SleepManager plugin;
+    private final String defaultLanguage;
+    private final int capacity;
+
+    // Client locale -> bundle name; only a few hundred locales exist, so this stays small
+    private final Map<String, String> resolved = new ConcurrentHashMap<>();
+    // Bundle name -> catalog, least recently used first
+    private final LinkedHashMap<String, MessageCatalog> loaded;
+
+    /**
+     * @param plugin          The plugin, for the data folder and bundled resources
+     * @param defaultLanguage The name of the default bundle
+     * @param capacity        The most non-default bundles to keep loaded
+     */
+    LanguageBundles(SleepManager plugin, String defaultLanguage, int capacity) {
+        this.plugin = plugin;
+        this.defaultLanguage = normalize(defaultLanguage);
+        this.capacity = Math.max(1, capacity);
+        this.loaded = new LinkedHashMap<String, MessageCatalog>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MessageCatalog> eldest) {
+                return size() > LanguageBundles.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Normalizes a client locale or language code, e.g. {@code en-US} to {@code en_us}
+     *
+     * @param locale The locale, or null
+     * @return The normalized locale, or null if none was given
+     */
+    static String normalize(String locale) {
+        if (locale == null || locale.isEmpty()) {
+            return null;
+        }
+        return locale.toLowerCase(Locale.ROOT).replace('-', '_');
+    }
+
+    /**
+     * Gets the catalog for a locale, loading its bundle on first use
+     *
+     * @param locale          The normalized locale, or null for the default
+     * @param defaultCatalog  The default bundle's catalog
+     * @return The catalog for the locale
+     */
+    MessageCatalog get(String locale, MessageCatalog defaultCatalog) {
+        if (locale == null) {
+            return defaultCatalog;
+        }
+
+        String bundle = resolved.computeIfAbsent(locale, this::resolve);
+        if (bundle.equals(defaultLanguage)) {
+            return defaultCatalog;
+        }
+
+        synchronized (loaded) {
+            MessageCatalog catalog = loaded.get(bundle);
+            if (catalog == null) {
+                catalog = MessageCatalog.compile(load(bundle), defaultCatalog);
+                loaded.put(bundle, catalog);
+            }
+            return catalog;
+        }
+    }
+
+    /**
+     * @param language The normalized language code
+     * @return Whether a bundle exists for exactly this language
+     */
+    boolean exists(String language) {
+        if (language == null || !language.matches("[a-z0-9_]+")) {
+            return false;
+        }
+        if (language.equals(defaultLanguage) || new File(plugin.getDataFolder(), path(language)).isFile()) {
+            return true;
+        }
+        try (InputStream stream = plugin.getResource(path(language))) {
+            return stream != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The languages with a bundle in the data folder, plus the default
+     */
+    List<String> getAvailable() {
+        TreeSet<String> languages = new TreeSet<>();
+        languages.add(defaultLanguage);
+        File[] files = new File(plugin.getDataFolder(), "lang").listFiles((dir, name) -> name.endsWith(".yml"));
+        if (files != null) {
+            for (File file : files) {
+                languages.add(normalize(file.getName().substring(0, file.getName().length() - 4)));
+            }
+        }
+        return new ArrayList<>(languages);
+    }
+
+    /**
+     * Runs an action for every bundle currently loaded, not counting the default
+     */
+    void forEachLoaded(Consumer<MessageCatalog> action) {
+        synchronized (loaded) {
+            loaded.values().forEach(action);
+        }
+    }
+
+    int getLoadedCount() {
+        synchronized (loaded) {
+            return loaded.size();
+        }
+    }
+
+    // Picks the most specific bundle for a locale: pt_br, then pt, then the default
+    private String resolve(String locale) {
+        if (exists(locale)) {
+            return locale;
+        }
+        int separator = locale.indexOf('_');
+        if (separator > 0 && exists(locale.substring(0, separator))) {
+            return locale.substring(0, separator);
+        }
+        return defaultLanguage;
+    }
+
+    private String[] load(String language) {
+        File file = new File(plugin.getDataFolder(), path(language));
+        if (file.isFile()) {
+            return read(file, language, plugin.getBinaryCache());
+        }
+
+        try (InputStream stream = plugin.getResource(path(language))) {
+            if (stream != null) {
+                return MessageCatalog.readMessages(
+                        YamlConfiguration.loadConfiguration(new InputStreamReader(stream, StandardCharsets.UTF_8)));
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to read language " + language);
+        }
+        return null;
+    }
+
+    /**
+     * Reads a bundle's messages from the startup cache, or parses the file and
+     * caches it when the cache is missing or stale
+     *
+     * @param file     The bundle file in the data folder
+     * @param language The bundle's language code
+     * @param cache    The startup cache, or null to always parse
+     * @return Each key's raw message in {@link MessageKey} order
+     */
+    static String[] read(File file, String language, BinaryCache cache) {
+        String name = "lang-" + language;
+        ByteBuffer cached = cache != null ? cache.read(name, file, CACHE_SCHEMA) : null;
+        if (cached != null) {
+            try {
+                // The schema pins the key count, but a corrupt entry shouldn't size an array
+                String[] messages = new String[MessageKey.values().length];
+                if (cached.getInt() == messages.length) {
+                    for (int i = 0; i < messages.length; i++) {
+                        messages[i] = BinaryCache.getString(cached);
+                    }
+                    if (!cached.hasRemaining()) {
+                        return messages;
+                    }
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                // Fall through and parse the file
+            }
+        }
+
+        String[] messages = MessageCatalog.readMessages(YamlConfiguration.loadConfiguration(file));
+        if (cache != null) {
+            cache.write(name, file, CACHE_SCHEMA, BinaryCache.payload(out -> {
+                out.writeInt(messages.length);
+                for (String message : messages) {
+                    BinaryCache.putString(out, message);
+                }
+            }));
+        }
+        return messages;
+    }
+
+    private static String path(String language) {
+        return "lang/" + language + ".yml";
+    }
+}
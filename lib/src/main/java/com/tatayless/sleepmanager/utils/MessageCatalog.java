@@ -0,0 +1,158 @@
+package com.tatayless.sleepmanager.utils;
+
+import net.md_5.bungee.api.ChatColor;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.ClickEvent;
+import net.md_5.bungee.api.chat.ComponentBuilder;
+import net.md_5.bungee.api.chat.HoverEvent;
+import net.md_5.bungee.api.chat.TextComponent;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * All messages of one language file, compiled once when the language is
+ * loaded.
+ */
+public final class MessageCatalog {
+    private final Map<MessageKey, CompiledMessage> messages;
+
+    // Clickable vote prompts, built once per world and shared by every recipient
+    private final Map<String, BaseComponent[]> votePrompts = new ConcurrentHashMap<>();
+    // The same prompts as plain chat, for when the server is behind
+    private final Map<String, String> plainVotePrompts = new ConcurrentHashMap<>();
+
+    private MessageCatalog(Map<MessageKey, CompiledMessage> messages) {
+        this.messages = messages;
+    }
+
+    /**
+     * Compiles every known message from a loaded language file
+     *
+     * @param langConfig The parsed language file
+     * @return The compiled catalog
+     */
+    public static MessageCatalog compile(ConfigurationSection langConfig) {
+        return compile(langConfig, null);
+    }
+
+    /**
+     * Compiles every known message from a loaded language file, taking any
+     * message the file lacks from another catalog
+     *
+     * @param langConfig The parsed language file
+     * @param fallback   The catalog to take missing messages from, or null
+     * @return The compiled catalog
+     */
+    public static MessageCatalog compile(ConfigurationSection langConfig, MessageCatalog fallback) {
+        return compile(readMessages(langConfig), fallback);
+    }
+
+    /**
+     * Compiles messages already read from a language file, e.g. from the
+     * startup cache
+     *
+     * @param messages Each key's raw message in {@link MessageKey} order, null where missing,
+     *                 or null if there is no file at all
+     * @param fallback The catalog to take missing messages from, or null
+     * @return The compiled catalog
+     */
+    public static MessageCatalog compile(String[] messages, MessageCatalog fallback) {
+        Map<MessageKey, CompiledMessage> compiled = new EnumMap<>(MessageKey.class);
+        for (MessageKey key : MessageKey.values()) {
+            String message = messages != null ? messages[key.ordinal()] : null;
+            if (message == null && fallback != null) {
+                compiled.put(key, fallback.get(key));
+            } else if (message == null) {
+                compiled.put(key, CompiledMessage.compile("Missing translation for: " + key.getPath()));
+            } else {
+                compiled.put(key, CompiledMessage.compile(ChatColor.translateAlternateColorCodes('&', message)));
+            }
+        }
+        return new MessageCatalog(compiled);
+    }
+
+    /**
+     * Reads every known message from a loaded language file
+     *
+     * @param langConfig The parsed language file, or null
+     * @return Each key's raw message in {@link MessageKey} order, null where missing
+     */
+    static String[] readMessages(ConfigurationSection langConfig) {
+        MessageKey[] keys = MessageKey.values();
+        String[] messages = new String[keys.length];
+        if (langConfig != null) {
+            for (MessageKey key : keys) {
+                messages[key.ordinal()] = langConfig.getString(key.getPath());
+            }
+        }
+        return messages;
+    }
+
+    public CompiledMessage get(MessageKey key) {
+        return messages.get(key);
+    }
+
+    /**
+     * Gets the clickable vote prompt for a world, building it on first use.
+     * The returned components are shared and must not be modified.
+     *
+     * @param worldName The name of the world
+     * @return The prompt components
+     */
+    public BaseComponent[] getVotePrompt(String worldName) {
+        // Look up first: the method reference below is a new object on every call
+        BaseComponent[] prompt = votePrompts.get(worldName);
+        return prompt != null ? prompt : votePrompts.computeIfAbsent(worldName, this::buildVotePrompt);
+    }
+
+    /**
+     * Drops the cached prompt for a world once its vote is over
+     *
+     * @param worldName The name of the world
+     */
+    public void invalidateVotePrompt(String worldName) {
+        votePrompts.remove(worldName);
+        plainVotePrompts.remove(worldName);
+    }
+
+    /**
+     * Gets the vote prompt for a world as plain chat, with the commands spelled
+     * out instead of clickable buttons, building it on first use
+     *
+     * @param worldName The name of the world
+     * @return The prompt text
+     */
+    public String getPlainVotePrompt(String worldName) {
+        String prompt = plainVotePrompts.get(worldName);
+        return prompt != null ? prompt : plainVotePrompts.computeIfAbsent(worldName, this::buildPlainVotePrompt);
+    }
+
+    private String buildPlainVotePrompt(String worldName) {
+        return get(MessageKey.VOTE_PROMPT).render(worldName)
+                + " " + get(MessageKey.VOTE_YES_BUTTON).text() + ChatColor.GRAY + " /sleepmanager yes"
+                + ChatColor.RESET + " | " + get(MessageKey.VOTE_NO_BUTTON).text() + ChatColor.GRAY
+                + " /sleepmanager no";
+    }
+
+    @SuppressWarnings("deprecation")
+    private BaseComponent[] buildVotePrompt(String worldName) {
+        TextComponent message = new TextComponent(get(MessageKey.VOTE_PROMPT).render(worldName));
+
+        TextComponent yesButton = new TextComponent(get(MessageKey.VOTE_YES_BUTTON).text());
+        yesButton.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/sleepmanager yes"));
+        yesButton.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
+                new ComponentBuilder(get(MessageKey.VOTE_YES_HOVER).text()).create()));
+
+        TextComponent separator = new TextComponent(" | ");
+
+        TextComponent noButton = new TextComponent(get(MessageKey.VOTE_NO_BUTTON).text());
+        noButton.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/sleepmanager no"));
+        noButton.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
+                new ComponentBuilder(get(MessageKey.VOTE_NO_HOVER).text()).create()));
+
+        return new BaseComponent[] { message, yesButton, separator, noButton };
+    }
+}
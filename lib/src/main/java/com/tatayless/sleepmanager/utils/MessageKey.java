@@ -0,0 +1,58 @@
+package com.tatayless.sleepmanager.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typed keys for every message in the language files. Each key maps to the
+ * YAML path it is read from, so string-based lookups can still be resolved.
+ */
+public enum MessageKey {
+    // Command messages
+    COMMAND_WORLD_DISABLED("command.world_disabled"),
+    COMMAND_REVOTE_COOLDOWN("command.revote_cooldown"),
+    COMMAND_NO_PERMISSION("command.no_permission"),
+
+    // Vote messages
+    VOTE_PROMPT("vote.prompt"),
+    VOTE_YES_BUTTON("vote.yes_button"),
+    VOTE_NO_BUTTON("vote.no_button"),
+    VOTE_YES_HOVER("vote.yes_hover"),
+    VOTE_NO_HOVER("vote.no_hover"),
+    VOTE_VOTED_YES("vote.voted_yes"),
+    VOTE_VOTED_NO("vote.voted_no"),
+    VOTE_NO_ACTIVE_VOTE("vote.no_active_vote"),
+    VOTE_PASSED("vote.passed"),
+    VOTE_FAILED("vote.failed"),
+
+    // Sleep messages
+    SLEEP_NIGHT_SKIPPED("sleep.night_skipped");
+
+    private static final Map<String, MessageKey> BY_PATH = new HashMap<>();
+
+    static {
+        for (MessageKey key : values()) {
+            BY_PATH.put(key.path, key);
+        }
+    }
+
+    private final String path;
+
+    MessageKey(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Resolves a YAML path to its typed key
+     *
+     * @param path The path in the language file, e.g. "vote.prompt"
+     * @return The matching key, or null if the path is not a known message
+     */
+    public static MessageKey fromPath(String path) {
+        return BY_PATH.get(path);
+    }
+}
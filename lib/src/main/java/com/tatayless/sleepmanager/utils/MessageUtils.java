@@ -1,68 +1,243 @@
 package com.tatayless.sleepmanager.utils;
 
 import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.Probe;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
 import net.md_5.bungee.api.ChatColor;
-import net.md_5.bungee.api.chat.ClickEvent;
-import net.md_5.bungee.api.chat.ComponentBuilder;
-import net.md_5.bungee.api.chat.HoverEvent;
-import net.md_5.bungee.api.chat.TextComponent;
+import org.bukkit.NamespacedKey;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MessageUtils {
     private final SleepManager plugin;
-    private YamlConfiguration langConfig;
+    private final StatsRecorder stats;
+    private final TickHealthMonitor tickHealth;
+    // Swapped whole when the language files are reloaded
+    private volatile Language language;
+    // Each online player's language: their override if they set one, else their client locale
+    private final Map<UUID, String> playerLocales = new ConcurrentHashMap<>();
+    private NamespacedKey languageKey;
+    // Large broadcasts are spread over several ticks
+    private final BroadcastScheduler broadcasts;
 
     public MessageUtils(SleepManager plugin) {
         this.plugin = plugin;
+        this.stats = plugin.getStats();
+        this.tickHealth = plugin.getTickHealth();
+        this.broadcasts = new BroadcastScheduler(plugin.getDispatcher(),
+                plugin.getConfigManager().getBroadcastMaxPerTick(),
+                (long) (plugin.getConfigManager().getBroadcastMaxMillisPerTick() * 1_000_000L));
+        tickHealth.addListener(
+                level -> broadcasts.setThrottled(level == TickHealthMonitor.LoadLevel.CRITICAL));
         loadLanguage();
     }
 
+    /**
+     * Reads the language files and swaps them in once they are compiled.
+     * Messages sent meanwhile use the previous files; safe to call from any
+     * thread.
+     */
     public void loadLanguage() {
         String lang = plugin.getConfigManager().getLanguage();
 
-        // Check if the language file exists in the plugin data folder
-        File langFile = new File(plugin.getDataFolder(), "lang/" + lang + ".yml");
+        // Copy the bundled file out on first use; if the language isn't bundled, default to English
+        File langFile = languageFile(lang);
+        boolean bundled = langFile.exists() || saveBundledLanguage(lang);
+        if (!bundled) {
+            plugin.getLogger().warning("Language " + lang + " not found, defaulting to English");
+            lang = "en";
+            langFile = languageFile(lang);
+            bundled = langFile.exists() || saveBundledLanguage(lang);
+        }
 
-        if (langFile.exists()) {
-            langConfig = YamlConfiguration.loadConfiguration(langFile);
+        // Compile every message once so sends don't walk the YAML tree; an
+        // unchanged file is read from the startup cache instead of parsed
+        YamlConfiguration langConfig = null;
+        MessageCatalog catalog;
+        if (langFile.isFile()) {
+            catalog = MessageCatalog.compile(LanguageBundles.read(langFile, lang, plugin.getBinaryCache()), null);
+        } else if (bundled) {
+            // The copy couldn't be saved, so read the bundled file directly
+            langConfig = parseLanguage(langFile);
+            catalog = MessageCatalog.compile(langConfig);
         } else {
-            // If not, use the default one from resources
-            InputStream defaultLangStream = plugin.getResource("lang/" + lang + ".yml");
+            // Create an empty config if no language file is found
+            langConfig = new YamlConfiguration();
+            plugin.getLogger().severe("No language files found!");
+            catalog = MessageCatalog.compile(langConfig);
+        }
+
+        // Other languages are only read once a player using them shows up
+        language = new Language(catalog,
+                new LanguageBundles(plugin, lang, plugin.getConfigManager().getLanguageCacheSize()), langFile,
+                langConfig);
+    }
+
+    private File languageFile(String lang) {
+        return new File(plugin.getDataFolder(), "lang/" + lang + ".yml");
+    }
 
-            // If the specified language doesn't exist, default to English
-            if (defaultLangStream == null) {
-                defaultLangStream = plugin.getResource("lang/en.yml");
-                plugin.getLogger().warning("Language " + lang + " not found, defaulting to English");
+    // Saves a language file bundled in the jar to the data folder; false if the jar has none
+    private boolean saveBundledLanguage(String lang) {
+        String path = "lang/" + lang + ".yml";
+        try (InputStream stream = plugin.getResource(path)) {
+            if (stream == null) {
+                return false;
             }
+        } catch (IOException e) {
+            return false;
+        }
 
-            if (defaultLangStream != null) {
-                langConfig = YamlConfiguration
-                        .loadConfiguration(new InputStreamReader(defaultLangStream, StandardCharsets.UTF_8));
-
-                // Save the default language file to the plugin data folder
-                try {
-                    plugin.saveResource("lang/"
-                            + (defaultLangStream == plugin.getResource("lang/en.yml") ? "en.yml" : lang + ".yml"),
-                            false);
-                } catch (Exception e) {
-                    plugin.getLogger().warning("Failed to save default language file");
-                }
-            } else {
-                // Create an empty config if no language file is found
-                langConfig = new YamlConfiguration();
-                plugin.getLogger().severe("No language files found!");
+        try {
+            plugin.saveResource(path, false);
+        } catch (RuntimeException e) {
+            plugin.getLogger().warning("Failed to save default language file");
+        }
+        return true;
+    }
+
+    private YamlConfiguration parseLanguage(File langFile) {
+        if (langFile.isFile()) {
+            return YamlConfiguration.loadConfiguration(langFile);
+        }
+        try (InputStream stream = plugin.getResource("lang/" + langFile.getName())) {
+            if (stream != null) {
+                return YamlConfiguration.loadConfiguration(new InputStreamReader(stream, StandardCharsets.UTF_8));
             }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to read language file " + langFile.getName());
+        }
+        return new YamlConfiguration();
+    }
+
+    /**
+     * @return The catalog of the default language
+     */
+    public MessageCatalog getCatalog() {
+        return language.catalog;
+    }
+
+    /**
+     * Gets the catalog a player reads messages from, loading it on first use
+     *
+     * @param player The player
+     * @return The catalog for the player's language
+     */
+    public MessageCatalog getCatalog(Player player) {
+        return getCatalog(language, player);
+    }
+
+    private MessageCatalog getCatalog(Language language, Player player) {
+        if (!plugin.getConfigManager().isPerPlayerLanguage()) {
+            return language.catalog;
+        }
+
+        String locale = playerLocales.get(player.getUniqueId());
+        if (locale == null) {
+            locale = resolveLocale(player, player.getLocale());
+        }
+        return language.bundles.get(locale, language.catalog);
+    }
+
+    /**
+     * Remembers a player's language, e.g. when they join or change their
+     * client locale. A language override the player set takes precedence.
+     *
+     * @param player       The player
+     * @param clientLocale The locale their client reports
+     */
+    public void updatePlayerLocale(Player player, String clientLocale) {
+        String locale = resolveLocale(player, clientLocale);
+        if (locale == null) {
+            playerLocales.remove(player.getUniqueId());
+        } else {
+            playerLocales.put(player.getUniqueId(), locale);
+        }
+    }
+
+    public void removePlayerLocale(Player player) {
+        playerLocales.remove(player.getUniqueId());
+    }
+
+    /**
+     * Sets or clears the language a player reads messages in, regardless of
+     * their client locale. The choice is stored on the player.
+     *
+     * @param player   The player
+     * @param language The language code, or null to follow the client locale
+     * @return False if there is no bundle for the language
+     */
+    public boolean setLanguageOverride(Player player, String language) {
+        language = LanguageBundles.normalize(language);
+        if (language != null && !this.language.bundles.exists(language)) {
+            return false;
+        }
+
+        PersistentDataContainer data = player.getPersistentDataContainer();
+        if (language == null) {
+            data.remove(getLanguageKey());
+        } else {
+            data.set(getLanguageKey(), PersistentDataType.STRING, language);
         }
+        updatePlayerLocale(player, player.getLocale());
+        return true;
+    }
+
+    /**
+     * @param player The player
+     * @return The language the player chose, or null if they follow their client locale
+     */
+    public String getLanguageOverride(Player player) {
+        PersistentDataContainer data = player.getPersistentDataContainer();
+        return data == null ? null : data.get(getLanguageKey(), PersistentDataType.STRING);
+    }
+
+    /**
+     * @return The languages players can choose, for tab completion
+     */
+    public List<String> getAvailableLanguages() {
+        return language.bundles.getAvailable();
+    }
+
+    private String resolveLocale(Player player, String clientLocale) {
+        String override = getLanguageOverride(player);
+        return LanguageBundles.normalize(override != null ? override : clientLocale);
+    }
+
+    private NamespacedKey getLanguageKey() {
+        if (languageKey == null) {
+            languageKey = new NamespacedKey(plugin, "language");
+        }
+        return languageKey;
+    }
+
+    public String getMessage(MessageKey key) {
+        return language.catalog.get(key).text();
     }
 
     public String getMessage(String key) {
-        String message = langConfig.getString(key);
+        MessageKey messageKey = MessageKey.fromPath(key);
+        if (messageKey != null) {
+            return getMessage(messageKey);
+        }
+
+        String message = getLangConfig(language).getString(key);
         if (message == null) {
             return "Missing translation for: " + key;
         }
@@ -70,33 +245,197 @@ public class MessageUtils {
     }
 
     public void sendMessage(Player player, String key) {
-        player.sendMessage(getMessage(key));
+        MessageKey messageKey = MessageKey.fromPath(key);
+        if (messageKey != null) {
+            sendMessage(player, messageKey);
+        } else {
+            player.sendMessage(getMessage(key));
+        }
+    }
+
+    public void sendMessage(Player player, MessageKey key) {
+        player.sendMessage(getCatalog(player).get(key).text());
     }
 
-    @SuppressWarnings("deprecation")
     public void sendVoteMessage(Player player, String worldName) {
-        TextComponent message = new TextComponent(getMessage("vote.prompt").replace("{world}", worldName));
+        if (tickHealth.isDegraded()) {
+            player.sendMessage(getCatalog(player).getPlainVotePrompt(worldName));
+        } else {
+            player.spigot().sendMessage(getCatalog(player).getVotePrompt(worldName));
+        }
+    }
+
+    /**
+     * Sends the vote prompt for a world to every given player. The prompt is
+     * built once per language and the same components are sent to everyone
+     * reading it; large worlds get it over several ticks, but always before
+     * anything broadcast later. While the server is behind it goes out as
+     * plain chat instead.
+     *
+     * @param worldName The name of the world with the active vote
+     * @param players   The players to send the prompt to
+     */
+    public void broadcastVotePrompt(String worldName, Collection<? extends Player> players) {
+        long start = stats.begin();
+        boolean plain = tickHealth.isDegraded();
+        Language current = language;
+        Map<MessageCatalog, List<Player>> audiences = groupByCatalog(current, players);
+        if (audiences == null) {
+            submitVotePrompt(current.catalog, worldName, plain, players);
+        } else {
+            for (Map.Entry<MessageCatalog, List<Player>> audience : audiences.entrySet()) {
+                submitVotePrompt(audience.getKey(), worldName, plain, audience.getValue());
+            }
+        }
+        stats.record(Probe.BROADCAST, worldName, start);
+    }
+
+    /**
+     * Sends the result of the last vote in a world to every given player
+     *
+     * @param worldName The name of the world
+     * @param passed    Whether the vote passed
+     * @param players   The players to send the result to
+     */
+    public void broadcastVoteResult(String worldName, boolean passed, Collection<? extends Player> players) {
+        long start = stats.begin();
+        Language current = language;
+        Map<MessageCatalog, List<Player>> audiences = groupByCatalog(current, players);
+        if (audiences == null) {
+            broadcasts.submit(renderVoteResult(current.catalog, passed, worldName), players);
+        } else {
+            for (Map.Entry<MessageCatalog, List<Player>> audience : audiences.entrySet()) {
+                broadcasts.submit(renderVoteResult(audience.getKey(), passed, worldName), audience.getValue());
+            }
+        }
+        stats.record(Probe.BROADCAST, worldName, start);
+    }
+
+    public void broadcastMessage(MessageKey key, Collection<? extends Player> players) {
+        long start = stats.begin();
+        Language current = language;
+        Map<MessageCatalog, List<Player>> audiences = groupByCatalog(current, players);
+        if (audiences == null) {
+            broadcasts.submit(current.catalog.get(key).text(), players);
+        } else {
+            for (Map.Entry<MessageCatalog, List<Player>> audience : audiences.entrySet()) {
+                broadcasts.submit(audience.getKey().get(key).text(), audience.getValue());
+            }
+        }
+        stats.record(Probe.BROADCAST, start);
+    }
+
+    private void submitVotePrompt(MessageCatalog catalog, String worldName, boolean plain,
+            Collection<? extends Player> players) {
+        if (plain) {
+            broadcasts.submit(catalog.getPlainVotePrompt(worldName), players);
+        } else {
+            broadcasts.submit(catalog.getVotePrompt(worldName), players);
+        }
+    }
 
-        TextComponent yesButton = new TextComponent(getMessage("vote.yes_button"));
-        yesButton.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/sleepmanager yes"));
-        yesButton.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
-                new ComponentBuilder(getMessage("vote.yes_hover")).create()));
+    // Splits an audience by the catalog each player reads, so a message is rendered
+    // once per language. Returns null when everyone reads the default catalog.
+    private Map<MessageCatalog, List<Player>> groupByCatalog(Language language,
+            Collection<? extends Player> players) {
+        if (!plugin.getConfigManager().isPerPlayerLanguage()) {
+            return null;
+        }
 
-        TextComponent separator = new TextComponent(" | ");
+        Map<MessageCatalog, List<Player>> audiences = null;
+        int index = 0;
+        for (Player player : players) {
+            MessageCatalog playerCatalog = getCatalog(language, player);
+            if (audiences == null && playerCatalog != language.catalog) {
+                // First player on another language: everyone before them reads the default
+                audiences = new LinkedHashMap<>();
+                List<Player> defaults = new ArrayList<>();
+                for (Player earlier : players) {
+                    if (defaults.size() == index) {
+                        break;
+                    }
+                    defaults.add(earlier);
+                }
+                audiences.put(language.catalog, defaults);
+            }
+            if (audiences != null) {
+                audiences.computeIfAbsent(playerCatalog, c -> new ArrayList<>()).add(player);
+            }
+            index++;
+        }
+        return audiences;
+    }
 
-        TextComponent noButton = new TextComponent(getMessage("vote.no_button"));
-        noButton.setClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/sleepmanager no"));
-        noButton.setHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
-                new ComponentBuilder(getMessage("vote.no_hover")).create()));
+    /**
+     * Sends any broadcasts still waiting for a later tick right away
+     */
+    public void flushBroadcasts() {
+        broadcasts.flush();
+    }
 
-        player.spigot().sendMessage(message, yesButton, separator, noButton);
+    /**
+     * Drops the cached vote prompt for a world, e.g. once its vote has ended
+     *
+     * @param worldName The name of the world
+     */
+    public void invalidateVotePrompt(String worldName) {
+        Language current = language;
+        current.catalog.invalidateVotePrompt(worldName);
+        current.bundles.forEachLoaded(loaded -> loaded.invalidateVotePrompt(worldName));
     }
 
     public void sendVoteResult(Player player, boolean passed, String worldName) {
-        String key = passed ? "vote.passed" : "vote.failed";
-        player.sendMessage(getMessage(key)
-                .replace("{world}", worldName)
-                .replace("{yes_percent}",
-                        String.format("%.0f", plugin.getVoteManager().getLastVoteYesPercentage(worldName))));
+        player.sendMessage(renderVoteResult(getCatalog(player), passed, worldName));
+    }
+
+    /**
+     * Renders the pass/fail announcement for the last vote in a world
+     *
+     * @param passed    Whether the vote passed
+     * @param worldName The name of the world
+     * @return The rendered result message
+     */
+    public String renderVoteResult(boolean passed, String worldName) {
+        return renderVoteResult(language.catalog, passed, worldName);
+    }
+
+    private String renderVoteResult(MessageCatalog catalog, boolean passed, String worldName) {
+        CompiledMessage message = catalog.get(passed ? MessageKey.VOTE_PASSED : MessageKey.VOTE_FAILED);
+        return message.render(worldName,
+                formatPercent(plugin.getVoteManager().getLastVoteYesPercentage(worldName)));
+    }
+
+    // Same rounding as String.format("%.0f") for the 0-100 range, without the Formatter
+    static String formatPercent(double percentage) {
+        return Long.toString(Math.round(percentage));
+    }
+
+    // The default language file as YAML, only parsed when a message outside the
+    // catalog is asked for, since a cached start never parses it
+    private YamlConfiguration getLangConfig(Language language) {
+        YamlConfiguration langConfig = language.langConfig;
+        if (langConfig == null) {
+            // Parsing twice in a race is harmless; both results are the same
+            langConfig = parseLanguage(language.file);
+            language.langConfig = langConfig;
+        }
+        return langConfig;
+    }
+
+    // Everything read from the language files at one moment
+    static final class Language {
+        final MessageCatalog catalog;
+        // Every other language, loaded when a player first needs it
+        final LanguageBundles bundles;
+        final File file;
+        // Parsed on demand; see getLangConfig
+        volatile YamlConfiguration langConfig;
+
+        Language(MessageCatalog catalog, LanguageBundles bundles, File file, YamlConfiguration langConfig) {
+            this.catalog = catalog;
+            this.bundles = bundles;
+            this.file = file;
+            this.langConfig = langConfig;
+        }
     }
 }
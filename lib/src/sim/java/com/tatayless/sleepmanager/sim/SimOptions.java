@@ -0,0 +1,61 @@
+package com.tatayless.sleepmanager.sim;
+
+import java.util.Locale;
+
+/**
+ * Simulator settings, read from {@code --name value} pairs
+ */
+final class SimOptions {
+    int worlds = 20;
+    int playersPerWorld = 50;
+    int nights = 5;
+    long seed = 42L;
+    // Vote commands each player sends at the start of the night
+    int spam = 3;
+    // Share of each world's players who get into bed on each wave
+    double bedFraction = 0.5;
+    // Share of players who vote yes
+    double yesShare = 0.7;
+    int bedWaveTicks = 20;
+
+    // Plugin settings
+    int voteTimeLimit = 30;
+    int revoteCooldown = 60;
+    int threshold = 50;
+    int broadcastMaxPerTick = 100;
+
+    static SimOptions parse(String[] args) {
+        SimOptions options = new SimOptions();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i].toLowerCase(Locale.ROOT)) {
+                case "--worlds" -> options.worlds = Integer.parseInt(value);
+                case "--players" -> options.playersPerWorld = Integer.parseInt(value);
+                case "--nights" -> options.nights = Integer.parseInt(value);
+                case "--seed" -> options.seed = Long.parseLong(value);
+                case "--spam" -> options.spam = Integer.parseInt(value);
+                case "--bed-fraction" -> options.bedFraction = Double.parseDouble(value);
+                case "--yes-share" -> options.yesShare = Double.parseDouble(value);
+                case "--bed-wave-ticks" -> options.bedWaveTicks = Math.max(1, Integer.parseInt(value));
+                case "--vote-time" -> options.voteTimeLimit = Integer.parseInt(value);
+                case "--cooldown" -> options.revoteCooldown = Integer.parseInt(value);
+                case "--threshold" -> options.threshold = Integer.parseInt(value);
+                case "--broadcast-max-per-tick" -> options.broadcastMaxPerTick = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "%d worlds x %d players, %d nights, seed %d, spam %d, bed fraction %.2f, yes share %.2f, "
+                        + "vote time %ds, cooldown %ds, threshold %d%%",
+                worlds, playersPerWorld, nights, seed, spam, bedFraction, yesShare, voteTimeLimit,
+                revoteCooldown, threshold);
+    }
+}
@@ -0,0 +1,245 @@
+package com.tatayless.sleepmanager.sim;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.commands.CommandManager;
+import com.tatayless.sleepmanager.config.ConfigManager;
+import com.tatayless.sleepmanager.listeners.PlayerListener;
+import com.tatayless.sleepmanager.managers.VoteManager;
+import com.tatayless.sleepmanager.managers.WorldStateRegistry;
+import com.tatayless.sleepmanager.scheduling.BukkitTaskDispatcher;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import com.tatayless.sleepmanager.utils.MessageUtils;
+import net.md_5.bungee.api.chat.BaseComponent;
+import org.bukkit.Bukkit;
+import org.bukkit.GameMode;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.Command;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerBedEnterEvent;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.mockito.MockSettings;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * A stub server with any number of overworlds and survival players, wired to
+ * the real vote manager, messages, listener and command handler. Scheduled
+ * tasks run on a {@link VirtualScheduler}, world time only moves when the
+ * plugin or the script changes it, and every message sent to a player is
+ * counted. Mocks are stub-only so they don't record invocations.
+ */
+final class SimulatedServer {
+    private static final Logger LOGGER = Logger.getLogger("SleepManagerSim");
+
+    final VirtualScheduler scheduler = new VirtualScheduler();
+    final List<SimWorld> worlds = new ArrayList<>();
+    final SleepManager plugin;
+    final VoteManager voteManager;
+    final PlayerListener listener;
+    final CommandManager commandManager;
+    final Command command;
+
+    private final Map<String, World> worldsByName = new HashMap<>();
+    private final List<World> worldList = new ArrayList<>();
+    private final List<Player> onlinePlayers = new ArrayList<>();
+    private final Map<UUID, Player> playersById = new HashMap<>();
+    private long messagesSent;
+
+    SimulatedServer(SimOptions options) throws IOException {
+        installServer();
+
+        long nextPlayerId = 0;
+        for (int w = 0; w < options.worlds; w++) {
+            SimWorld world = new SimWorld("world_" + w, new UUID(1L, w));
+            for (int p = 0; p < options.playersPerWorld; p++) {
+                Player player = player(world.world, new UUID(2L, nextPlayerId++));
+                world.players.add(player);
+                playersById.put(player.getUniqueId(), player);
+            }
+            worlds.add(world);
+            worldsByName.put(world.name, world.world);
+            worldList.add(world.world);
+            onlinePlayers.addAll(world.players);
+        }
+
+        File dataFolder = Files.createTempDirectory("sleepmanager-sim").toFile();
+        dataFolder.deleteOnExit();
+
+        plugin = mock(SleepManager.class, stubOnly());
+        when(plugin.getWorldStates()).thenReturn(new WorldStateRegistry());
+        when(plugin.getStats()).thenReturn(new StatsRecorder());
+        BukkitTaskDispatcher dispatcher = new BukkitTaskDispatcher(plugin);
+        when(plugin.getDispatcher()).thenReturn(dispatcher);
+        // Never started: virtual ticks take no wall time, so the server always looks healthy
+        when(plugin.getTickHealth()).thenReturn(new TickHealthMonitor(dispatcher, LOGGER, 0, 0));
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getLogger()).thenReturn(LOGGER);
+        when(plugin.getResource(anyString())).thenAnswer(
+                invocation -> SleepManager.class.getClassLoader().getResourceAsStream(invocation.getArgument(0)));
+        doAnswer(invocation -> {
+            saveResource(dataFolder, invocation.getArgument(0));
+            return null;
+        }).when(plugin).saveResource(anyString(), anyBoolean());
+
+        ConfigManager configManager = mock(ConfigManager.class, stubOnly());
+        when(configManager.getLanguage()).thenReturn("en");
+        when(configManager.getVoteTimeLimit()).thenReturn(options.voteTimeLimit);
+        when(configManager.getRevoteCooldown()).thenReturn(options.revoteCooldown);
+        when(configManager.getVotePercentageThreshold()).thenReturn(options.threshold);
+        when(configManager.getBroadcastMaxPerTick()).thenReturn(options.broadcastMaxPerTick);
+        when(configManager.getLanguageCacheSize()).thenReturn(8);
+        when(configManager.isWorldEnabled(anyString())).thenReturn(true);
+        when(plugin.getConfigManager()).thenReturn(configManager);
+
+        MessageUtils messageUtils = new MessageUtils(plugin);
+        when(plugin.getMessageUtils()).thenReturn(messageUtils);
+
+        voteManager = new VoteManager(plugin);
+        when(plugin.getVoteManager()).thenReturn(voteManager);
+        voteManager.indexOnlinePlayers();
+
+        listener = new PlayerListener(plugin);
+        commandManager = new CommandManager(plugin);
+        command = mock(Command.class, stubOnly());
+        when(command.getName()).thenReturn("sleepmanager");
+    }
+
+    /**
+     * @return Every message sent to a player so far, chat and components alike
+     */
+    long getMessagesSent() {
+        return messagesSent;
+    }
+
+    private Player player(World world, UUID playerId) {
+        Player player = mock(Player.class, stubOnly());
+        when(player.getUniqueId()).thenReturn(playerId);
+        when(player.getName()).thenReturn("player_" + playerId.getLeastSignificantBits());
+        when(player.getWorld()).thenReturn(world);
+        when(player.getGameMode()).thenReturn(GameMode.SURVIVAL);
+        when(player.isOnline()).thenReturn(true);
+        when(player.hasPermission(anyString())).thenReturn(true);
+        Answer<Void> countMessage = invocation -> {
+            messagesSent++;
+            return null;
+        };
+        doAnswer(countMessage).when(player).sendMessage(anyString());
+        Player.Spigot spigot = mock(Player.Spigot.class, stubOnly());
+        doAnswer(countMessage).when(spigot).sendMessage(any(BaseComponent[].class));
+        when(player.spigot()).thenReturn(spigot);
+        return player;
+    }
+
+    private static void saveResource(File dataFolder, String path) throws IOException {
+        File target = new File(dataFolder, path);
+        try (InputStream stream = SleepManager.class.getClassLoader().getResourceAsStream(path)) {
+            if (stream != null) {
+                target.getParentFile().mkdirs();
+                Files.copy(stream, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static MockSettings stubOnly() {
+        return withSettings().stubOnly();
+    }
+
+    // Bukkit's server is a JVM-wide singleton; the simulator runs one server per JVM
+    private void installServer() {
+        BukkitScheduler bukkitScheduler = mock(BukkitScheduler.class, stubOnly());
+        when(bukkitScheduler.runTask(any(), any(Runnable.class)))
+                .thenAnswer(invocation -> handle(scheduler.schedule(invocation.getArgument(1), 1L, 0L)));
+        when(bukkitScheduler.runTaskLater(any(), any(Runnable.class), anyLong()))
+                .thenAnswer(invocation -> handle(scheduler.schedule(invocation.getArgument(1),
+                        invocation.<Long>getArgument(2), 0L)));
+        when(bukkitScheduler.runTaskTimer(any(), any(Runnable.class), anyLong(), anyLong()))
+                .thenAnswer(invocation -> handle(scheduler.schedule(invocation.getArgument(1),
+                        invocation.<Long>getArgument(2), Math.max(1L, invocation.<Long>getArgument(3)))));
+
+        Server server = mock(Server.class, stubOnly());
+        when(server.getLogger()).thenReturn(LOGGER);
+        when(server.getName()).thenReturn("SleepManagerSim");
+        when(server.getVersion()).thenReturn("sim");
+        when(server.getBukkitVersion()).thenReturn("sim");
+        when(server.getScheduler()).thenReturn(bukkitScheduler);
+        when(server.isPrimaryThread()).thenReturn(true);
+        when(server.getWorld(anyString())).thenAnswer(invocation -> worldsByName.get(invocation.<String>getArgument(0)));
+        when(server.getWorlds()).thenAnswer(invocation -> Collections.unmodifiableList(worldList));
+        when(server.getPlayer(any(UUID.class))).thenAnswer(invocation -> playersById.get(invocation.<UUID>getArgument(0)));
+        doAnswer(invocation -> Collections.unmodifiableList(onlinePlayers)).when(server).getOnlinePlayers();
+        Bukkit.setServer(server);
+    }
+
+    private static BukkitTask handle(VirtualScheduler.Task task) {
+        BukkitTask handle = mock(BukkitTask.class, stubOnly());
+        doAnswer(invocation -> {
+            task.cancel();
+            return null;
+        }).when(handle).cancel();
+        return handle;
+    }
+
+    /**
+     * One overworld and its players; time only changes when set
+     */
+    static final class SimWorld {
+        final String name;
+        final World world;
+        final List<Player> players = new ArrayList<>();
+        final List<PlayerBedEnterEvent> bedEntries = new ArrayList<>();
+        private long time;
+
+        private SimWorld(String name, UUID worldUid) {
+            this.name = name;
+            this.world = mock(World.class, stubOnly());
+            when(world.getName()).thenReturn(name);
+            when(world.getUID()).thenReturn(worldUid);
+            when(world.getEnvironment()).thenReturn(World.Environment.NORMAL);
+            when(world.getPlayers()).thenReturn(players);
+            when(world.getTime()).thenAnswer(invocation -> time);
+            when(world.getFullTime()).thenAnswer(invocation -> time);
+            doAnswer(invocation -> {
+                time = invocation.getArgument(0);
+                return null;
+            }).when(world).setTime(anyLong());
+        }
+
+        long getTime() {
+            return time;
+        }
+
+        void setTime(long time) {
+            this.time = time;
+        }
+
+        /**
+         * @return The bed entry event of a player in this world, created on first use
+         */
+        PlayerBedEnterEvent bedEntry(int playerIndex) {
+            while (bedEntries.size() <= playerIndex) {
+                PlayerBedEnterEvent event = mock(PlayerBedEnterEvent.class, stubOnly());
+                when(event.getPlayer()).thenReturn(players.get(bedEntries.size()));
+                bedEntries.add(event);
+            }
+            return bedEntries.get(playerIndex);
+        }
+    }
+}
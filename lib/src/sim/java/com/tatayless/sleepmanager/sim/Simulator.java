@@ -0,0 +1,158 @@
+package com.tatayless.sleepmanager.sim;
+
+import com.tatayless.sleepmanager.sim.SimulatedServer.SimWorld;
+import org.bukkit.entity.Player;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Plays scripted nights on a {@link SimulatedServer}: every world turns to
+ * night at once, a share of its players get into bed every few ticks, and
+ * everyone spams their vote for the first few ticks. Each night runs until
+ * every world's night is skipped or its vote has had time to end, then the
+ * day runs long enough for the revote cooldowns to expire.
+ *
+ * <p>The same options always give the same run, so the per-tick report can be
+ * compared between commits. Exits with status 1 if a vote is still open when
+ * its night is over.
+ *
+ * <pre>
+ * ./gradlew :lib:simulate -PsimArgs="--worlds 20 --players 50 --nights 5 --seed 42"
+ * </pre>
+ */
+public final class Simulator {
+    private static final long NIGHT_START = 13000L;
+    // Beds work from here, see PlayerListener
+    private static final long BEDTIME = 12541L;
+
+    private final SimOptions options;
+    private final SimulatedServer server;
+    private final TickProfiler profiler = new TickProfiler();
+    private final Random random;
+
+    private int skipped;
+    private int failed;
+    private int stuck;
+
+    private Simulator(SimOptions options) throws Exception {
+        this.options = options;
+        this.server = new SimulatedServer(options);
+        this.random = new Random(options.seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        SimOptions options;
+        try {
+            options = SimOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        Simulator simulator = new Simulator(options);
+        long started = System.nanoTime();
+        for (int night = 0; night < options.nights; night++) {
+            simulator.runNight();
+            simulator.runDay();
+        }
+        simulator.report(System.out, (System.nanoTime() - started) / 1_000_000L);
+        System.exit(simulator.stuck > 0 ? 1 : 0);
+    }
+
+    private void runNight() {
+        for (SimWorld world : server.worlds) {
+            world.setTime(NIGHT_START);
+        }
+        // Decided once a night, so spammed votes agree with each other
+        boolean[][] votesYes = new boolean[server.worlds.size()][options.playersPerWorld];
+        for (boolean[] world : votesYes) {
+            for (int i = 0; i < world.length; i++) {
+                world[i] = random.nextDouble() < options.yesShare;
+            }
+        }
+
+        // Long enough for the vote to end and the next bed wave to skip the night
+        long deadline = options.voteTimeLimit * 20L + options.bedWaveTicks + 100L;
+        for (long tick = 0; tick < deadline && !allDay(); tick++) {
+            profiler.begin(server.getMessagesSent());
+            if (tick % options.bedWaveTicks == 0) {
+                bedWave();
+            }
+            if (tick < options.spam) {
+                voteSpam(votesYes);
+            }
+            server.scheduler.runTick();
+            profiler.end(server.getMessagesSent());
+        }
+
+        for (SimWorld world : server.worlds) {
+            if (world.getTime() < BEDTIME) {
+                skipped++;
+            } else if (server.voteManager.hasActiveVote(world.name)) {
+                stuck++;
+                // Don't let it spill into the next night
+                server.voteManager.clearVote(world.name);
+            } else {
+                failed++;
+            }
+        }
+    }
+
+    // Not profiled: nothing happens but the cooldowns, queued broadcasts and the vote timer
+    private void runDay() {
+        for (SimWorld world : server.worlds) {
+            world.setTime(0L);
+        }
+        long dayTicks = options.revoteCooldown * 20L + 20L;
+        for (long tick = 0; tick < dayTicks; tick++) {
+            server.scheduler.runTick();
+        }
+    }
+
+    private void bedWave() {
+        for (SimWorld world : server.worlds) {
+            if (world.getTime() < BEDTIME) {
+                continue;
+            }
+            for (int i = 0; i < world.players.size(); i++) {
+                if (random.nextDouble() < options.bedFraction) {
+                    server.listener.onPlayerBedEnter(world.bedEntry(i));
+                }
+            }
+        }
+    }
+
+    private void voteSpam(boolean[][] votesYes) {
+        for (int w = 0; w < server.worlds.size(); w++) {
+            SimWorld world = server.worlds.get(w);
+            for (int i = 0; i < world.players.size(); i++) {
+                Player player = world.players.get(i);
+                String[] args = {votesYes[w][i] ? "yes" : "no"};
+                server.commandManager.onCommand(player, server.command, "sleepmanager", args);
+            }
+        }
+    }
+
+    private boolean allDay() {
+        for (SimWorld world : server.worlds) {
+            if (world.getTime() >= BEDTIME) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void report(PrintStream out, long wallMillis) {
+        out.println("SleepManager load simulation");
+        out.println(options);
+        int worldNights = options.worlds * options.nights;
+        out.printf(Locale.ROOT, "World-nights: %d skipped, %d failed, %d stuck (of %d)%n",
+                skipped, failed, stuck, worldNights);
+        out.printf(Locale.ROOT, "Coalesced night skips: %d%n", server.voteManager.getCoalescedNightSkips());
+        out.printf(Locale.ROOT, "Virtual ticks: %d, wall time %d ms%n", server.scheduler.getTick(), wallMillis);
+        profiler.report(out);
+    }
+}
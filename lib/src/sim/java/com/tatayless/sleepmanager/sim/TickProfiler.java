@@ -0,0 +1,89 @@
+package com.tatayless.sleepmanager.sim;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures the CPU time, heap allocation and messages sent of each simulated
+ * tick on the calling thread. Mock calls made by the stub server are counted
+ * too, so compare runs with each other rather than with a real server.
+ */
+final class TickProfiler {
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private long[] cpuNanos = new long[1024];
+    private long[] allocatedBytes = new long[1024];
+    private long[] messages = new long[1024];
+    private int ticks;
+
+    private long cpuStart;
+    private long allocatedStart;
+    private long messagesStart;
+
+    void begin(long messagesSent) {
+        messagesStart = messagesSent;
+        allocatedStart = threads.getCurrentThreadAllocatedBytes();
+        cpuStart = threads.getCurrentThreadCpuTime();
+    }
+
+    void end(long messagesSent) {
+        long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedStart;
+        if (ticks == cpuNanos.length) {
+            cpuNanos = Arrays.copyOf(cpuNanos, ticks * 2);
+            allocatedBytes = Arrays.copyOf(allocatedBytes, ticks * 2);
+            messages = Arrays.copyOf(messages, ticks * 2);
+        }
+        cpuNanos[ticks] = cpu;
+        allocatedBytes[ticks] = allocated;
+        messages[ticks] = messagesSent - messagesStart;
+        ticks++;
+    }
+
+    int getTicks() {
+        return ticks;
+    }
+
+    void report(PrintStream out) {
+        out.printf(Locale.ROOT, "Ticks: %d%n", ticks);
+        if (ticks == 0) {
+            return;
+        }
+        long[] cpu = sorted(cpuNanos);
+        long[] allocated = sorted(allocatedBytes);
+        long[] sent = sorted(messages);
+        out.printf(Locale.ROOT, "CPU per tick (us):       mean %.1f, p50 %.1f, p99 %.1f, max %.1f%n",
+                mean(cpu) / 1_000.0, percentile(cpu, 0.50) / 1_000.0, percentile(cpu, 0.99) / 1_000.0,
+                cpu[ticks - 1] / 1_000.0);
+        out.printf(Locale.ROOT, "Allocated per tick (KiB): mean %.1f, p50 %.1f, p99 %.1f, max %.1f%n",
+                mean(allocated) / 1024.0, percentile(allocated, 0.50) / 1024.0,
+                percentile(allocated, 0.99) / 1024.0, allocated[ticks - 1] / 1024.0);
+        out.printf(Locale.ROOT, "Messages per tick:        mean %.1f, p50 %d, p99 %d, max %d (total %d)%n",
+                mean(sent), percentile(sent, 0.50), percentile(sent, 0.99), sent[ticks - 1], sum(sent));
+    }
+
+    private long[] sorted(long[] values) {
+        long[] copy = Arrays.copyOf(values, ticks);
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    private static double mean(long[] values) {
+        return (double) sum(values) / values.length;
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
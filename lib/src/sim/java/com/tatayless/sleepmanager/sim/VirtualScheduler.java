@@ -0,0 +1,72 @@
+package com.tatayless.sleepmanager.sim;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * A tick clock that only moves when told to. Tasks run in the order they
+ * are due, and tasks due on the same tick in the order they were scheduled,
+ * so a run with the same script always does the same work in the same order.
+ */
+final class VirtualScheduler {
+    private final PriorityQueue<Task> queue = new PriorityQueue<>(
+            Comparator.comparingLong((Task task) -> task.due).thenComparingLong(task -> task.sequence));
+    private long tick;
+    private long sequence;
+
+    /**
+     * @param task        What to run
+     * @param delayTicks  Ticks until the first run; tasks never run on the tick they were scheduled
+     * @param periodTicks Ticks between runs, or 0 to run once
+     * @return A handle to cancel the task with
+     */
+    Task schedule(Runnable task, long delayTicks, long periodTicks) {
+        Task scheduled = new Task(task, periodTicks);
+        enqueue(scheduled, Math.max(1, delayTicks));
+        return scheduled;
+    }
+
+    /**
+     * Advances the clock one tick and runs everything due
+     */
+    void runTick() {
+        tick++;
+        while (!queue.isEmpty() && queue.peek().due <= tick) {
+            Task task = queue.poll();
+            if (task.cancelled) {
+                continue;
+            }
+            task.runnable.run();
+            if (task.period > 0 && !task.cancelled) {
+                enqueue(task, task.period);
+            }
+        }
+    }
+
+    long getTick() {
+        return tick;
+    }
+
+    private void enqueue(Task task, long delayTicks) {
+        task.due = tick + delayTicks;
+        task.sequence = sequence++;
+        queue.add(task);
+    }
+
+    static final class Task {
+        private final Runnable runnable;
+        private final long period;
+        private long due;
+        private long sequence;
+        private boolean cancelled;
+
+        private Task(Runnable runnable, long period) {
+            this.runnable = runnable;
+            this.period = period;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+}
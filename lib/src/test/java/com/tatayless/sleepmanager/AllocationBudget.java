@@ -0,0 +1,149 @@
+package com.tatayless.sleepmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks hot paths against the heap allocation budgets in
+ * {@code allocation-budgets.properties}, in bytes per call. Calls are measured
+ * with the current thread's allocation counter once the JIT has compiled them.
+ *
+ * <p>Mockito mocks allocate a couple of kilobytes on every call, so objects
+ * the measured path calls into should be {@link #fake fakes} instead.
+ */
+public final class AllocationBudget {
+    private static final String BUDGETS_FILE = "allocation-budgets.properties";
+    private static final int WARMUP_CALLS = 50_000;
+    private static final int CALLS = 100_000;
+    private static final int ROUNDS = 3;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final Properties BUDGETS = loadBudgets();
+
+    // Results are written here so the JIT can't drop an allocation nothing reads
+    @SuppressWarnings("unused")
+    private static volatile Object sink;
+
+    private AllocationBudget() {
+    }
+
+    /**
+     * Fails if a call allocates more than the budget for its path
+     *
+     * @param path      The budget's key
+     * @param operation One call of the path; whatever it returns is kept alive
+     */
+    public static void assertWithinBudget(String path, Supplier<?> operation) {
+        String budget = BUDGETS.getProperty(path);
+        assertNotNull(budget, "No allocation budget for " + path + " in " + BUDGETS_FILE);
+        long budgetBytes = Long.parseLong(budget.trim());
+
+        double bytesPerCall = bytesPerCall(operation);
+        // Under a byte per call is the runtime's own noise, not the path
+        assertTrue(bytesPerCall < budgetBytes + 1, String.format(
+                "%s allocated %.1fB per call, over its budget of %dB", path, bytesPerCall, budgetBytes));
+    }
+
+    /**
+     * @return The bytes one call allocates, the least over a few rounds so a
+     *         stray recompile or TLAB refill doesn't count against it
+     */
+    public static double bytesPerCall(Supplier<?> operation) {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported(), "Per-thread allocation counter not supported");
+        if (!THREADS.isThreadAllocatedMemoryEnabled()) {
+            THREADS.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            sink = operation.get();
+        }
+        double least = Double.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < CALLS; i++) {
+                sink = operation.get();
+            }
+            long allocated = THREADS.getCurrentThreadAllocatedBytes() - before;
+            least = Math.min(least, (double) allocated / CALLS);
+        }
+        sink = null;
+        return least;
+    }
+
+    /**
+     * Measures what a structure takes on the heap by what building it
+     * allocates, so the build must not leave garbage behind (e.g. presize
+     * collections so they never resize). Runs once, before the JIT could
+     * optimize any of it away.
+     *
+     * @param build Builds the structure, which is kept alive while it is measured
+     * @return The bytes the build allocated
+     */
+    public static long bytesToBuild(Supplier<?> build) {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported(), "Per-thread allocation counter not supported");
+        if (!THREADS.isThreadAllocatedMemoryEnabled()) {
+            THREADS.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        long before = THREADS.getCurrentThreadAllocatedBytes();
+        sink = build.get();
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - before;
+        sink = null;
+        return allocated;
+    }
+
+    /**
+     * Creates an implementation of an interface that answers its methods from a
+     * map and allocates nothing per call. Methods missing from the map throw, so
+     * the path can't quietly depend on a default. Answers for methods returning
+     * primitives have to be boxed up front.
+     *
+     * @param type    The interface, e.g. Player
+     * @param answers Return values by method name
+     */
+    public static <T> T fake(Class<T> type, Map<String, Object> answers) {
+        Map<String, Object> methods = new HashMap<>(answers);
+        methods.putIfAbsent("toString", "Fake" + type.getSimpleName());
+        Object instance = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.equals("equals") && args != null && args.length == 1) {
+                        return proxy == args[0];
+                    }
+                    if (name.equals("hashCode") && args == null) {
+                        return methods.get("hashCode");
+                    }
+                    Object answer = methods.get(name);
+                    if (answer == null && !methods.containsKey(name)) {
+                        throw new UnsupportedOperationException(type.getSimpleName() + "." + name);
+                    }
+                    return answer;
+                });
+        methods.put("hashCode", System.identityHashCode(instance));
+        return type.cast(instance);
+    }
+
+    private static Properties loadBudgets() {
+        Properties budgets = new Properties();
+        try (InputStream stream = AllocationBudget.class.getClassLoader().getResourceAsStream(BUDGETS_FILE)) {
+            if (stream != null) {
+                budgets.load(stream);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return budgets;
+    }
+}
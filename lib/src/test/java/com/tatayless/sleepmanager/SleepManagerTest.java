@@ -1,5 +1,7 @@
 package com.tatayless.sleepmanager;
 
+import com.tatayless.sleepmanager.listeners.PlayerListener;
+import com.tatayless.sleepmanager.listeners.WorldListener;
 import com.tatayless.sleepmanager.managers.VoteManager;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.plugin.PluginManager;
@@ -41,7 +43,8 @@ public class SleepManagerTest {
 
         sleepManager.onEnable();
 
-        verify(pluginManager).registerEvents(any(), eq(sleepManager));
+        verify(pluginManager).registerEvents(any(PlayerListener.class), eq(sleepManager));
+        verify(pluginManager).registerEvents(any(WorldListener.class), eq(sleepManager));
         verify(sleepCommand).setExecutor(any());
         verify(sleepCommand).setTabCompleter(any());
     }
@@ -0,0 +1,89 @@
+package com.tatayless.sleepmanager.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryCacheTest {
+    @TempDir
+    File folder;
+
+    private BinaryCache cache;
+    private File source;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cache = new BinaryCache(new File(folder, "cache"), Logger.getLogger("BinaryCacheTest"));
+        source = new File(folder, "config.yml");
+        Files.write(source.toPath(), "vote-time-limit: 30\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void read_returnsWhatWasWrittenForAnUnchangedSource() {
+        cache.write("config", source, 1, BinaryCache.payload(out -> {
+            out.writeInt(30);
+            BinaryCache.putString(out, "en");
+            BinaryCache.putString(out, null);
+        }));
+
+        ByteBuffer payload = cache.read("config", source, 1);
+
+        assertNotNull(payload);
+        assertEquals(30, payload.getInt());
+        assertEquals("en", BinaryCache.getString(payload));
+        assertNull(BinaryCache.getString(payload));
+        assertFalse(payload.hasRemaining());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void read_missesOnceTheSourceChanges() throws Exception {
+        cache.write("config", source, 1, new byte[] {1});
+        Files.write(source.toPath(), "vote-time-limit: 45\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(source.setLastModified(source.lastModified() + 2000));
+
+        assertNull(cache.read("config", source, 1));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void read_hitsWhenTheSourceWasOnlyTouched() {
+        cache.write("config", source, 1, new byte[] {1});
+        assertTrue(source.setLastModified(source.lastModified() + 2000));
+
+        assertNotNull(cache.read("config", source, 1));
+    }
+
+    @Test
+    void read_missesForAnotherSchema() {
+        cache.write("config", source, 1, new byte[] {1});
+
+        assertNull(cache.read("config", source, 2));
+    }
+
+    @Test
+    void read_missesForACorruptEntry() throws Exception {
+        cache.write("config", source, 1, new byte[] {1, 2, 3, 4});
+        try (RandomAccessFile entry = new RandomAccessFile(new File(folder, "cache/config.bin"), "rw")) {
+            entry.seek(entry.length() - 1);
+            entry.write(9);
+        }
+
+        assertNull(cache.read("config", source, 1));
+    }
+
+    @Test
+    void read_missesWithoutAnEntry() {
+        assertNull(cache.read("lang-en", source, 1));
+        assertEquals(1, cache.getMisses());
+    }
+}
@@ -0,0 +1,270 @@
+package com.tatayless.sleepmanager.config;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.cache.BinaryCache;
+import com.tatayless.sleepmanager.managers.WorldSleepState;
+import com.tatayless.sleepmanager.managers.WorldStateRegistry;
+import com.tatayless.sleepmanager.scheduling.TaskDispatcher;
+import com.tatayless.sleepmanager.stats.Probe;
+import com.tatayless.sleepmanager.stats.RollingCounter;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ConfigManagerTest {
+    @TempDir
+    File dataFolder;
+    @Mock
+    private SleepManager plugin;
+    @Mock
+    private TaskDispatcher dispatcher;
+
+    private final WorldStateRegistry worldStates = new WorldStateRegistry();
+    private final StatsRecorder stats = new StatsRecorder();
+    private BinaryCache cache;
+    private File configFile;
+    private ConfigManager configManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cache = new BinaryCache(new File(dataFolder, "cache"), Logger.getLogger("ConfigManagerTest"));
+        when(plugin.getWorldStates()).thenReturn(worldStates);
+        when(plugin.getStats()).thenReturn(stats);
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getBinaryCache()).thenReturn(cache);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("ConfigManagerTest"));
+        // Reloads swap the settings in on the "main thread", here whichever thread finished reading
+        lenient().when(plugin.getDispatcher()).thenReturn(dispatcher);
+        lenient().doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(dispatcher).runGlobal(any());
+
+        // Settings are served from the cache so the test doesn't depend on YAML parsing
+        configFile = new File(dataFolder, "config.yml");
+        writeConfig("revote-cooldown: 60\n", settings(60, true));
+        configManager = new ConfigManager(plugin);
+        configManager.loadConfig();
+    }
+
+    @AfterEach
+    void tearDown() {
+        configManager.flush(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void reload_swapsInNewSettingsWithoutChangingTheOldSnapshot() throws Exception {
+        ConfigSnapshot before = configManager.getSnapshot();
+        writeConfig("revote-cooldown: 120\n", settings(120, false));
+
+        ConfigSnapshot after = configManager.reload().get(5, TimeUnit.SECONDS);
+
+        assertSame(after, configManager.getSnapshot());
+        assertEquals(120, configManager.getRevoteCooldown());
+        assertFalse(configManager.isWorldEnabled("world"));
+        assertEquals(60, before.getRevoteCooldown());
+        assertTrue(configManager.isLoadedFromCache());
+        assertFalse(configManager.isChangedOnDisk());
+    }
+
+    @Test
+    void reload_dropsInGameChangesNotYetWritten() throws Exception {
+        writeConfig("worlds: {world: false, world_nether: false}\n",
+                settings(60, Map.of("world", false, "world_nether", false), List.of()));
+        configManager.reload().get(5, TimeUnit.SECONDS);
+        configManager.toggleWorld("world");
+        // Not in the file at all
+        configManager.toggleWorld("lobby");
+        configManager.saveConfig();
+
+        // world_nether deleted from the file by hand
+        writeConfig("worlds: {world: false}\n", settings(60, false));
+        configManager.reload().get(5, TimeUnit.SECONDS);
+
+        assertFalse(configManager.isDirty());
+        assertFalse(configManager.isWorldEnabled("world"));
+        assertTrue(configManager.isWorldEnabled("world_nether"));
+        assertFalse(worldStates.find("world_nether").hasToggle());
+        assertTrue(configManager.isWorldEnabled("lobby"));
+        assertFalse(worldStates.find("lobby").hasToggle());
+    }
+
+    @Test
+    void reload_neverShowsAToggledWorldFollowingTheRules() throws Exception {
+        // Many toggles, so a reload that sets them one at a time leaves the last one unset for a while
+        Map<String, Boolean> toggles = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            toggles.put("lobby" + i, false);
+        }
+        writeConfig("worlds: {}\n", settings(60, toggles, List.of()));
+        configManager.reload().get(5, TimeUnit.SECONDS);
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicBoolean sawEnabled = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                if (configManager.isWorldEnabled("lobby999")) {
+                    sawEnabled.set(true);
+                }
+            }
+        });
+        reader.start();
+        try {
+            for (int i = 0; i < 50; i++) {
+                // Alternate between two files that both disable every lobby
+                writeConfig(i % 2 == 0 ? "worlds: {}\n#\n" : "worlds: {}\n", settings(60 + i % 2, toggles, List.of()));
+                configManager.reload().get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+
+        assertFalse(sawEnabled.get());
+    }
+
+    @Test
+    void saveConfig_mergesSavesRequestedWhileOneIsPending() throws Exception {
+        stats.setEnabled(true);
+        configManager.toggleWorld("lobby");
+        configManager.saveConfig();
+        configManager.toggleWorld("arena");
+        configManager.saveConfig();
+        configManager.toggleWorld("lobby");
+        configManager.saveConfig();
+
+        configManager.flush(5, TimeUnit.SECONDS);
+
+        assertEquals(1, stats.getCount(Probe.CONFIG_SAVE, RollingCounter.ONE_MINUTE));
+        String saved = Files.readString(configFile.toPath());
+        assertTrue(saved.contains("arena: false"), saved);
+        assertFalse(saved.contains("lobby"), saved);
+    }
+
+    @Test
+    void flush_returnsOnceTheFileIsWritten() throws Exception {
+        configManager.toggleWorld("lobby");
+        configManager.saveConfig();
+
+        // The delayed write hasn't run yet; flush writes it now and waits
+        configManager.flush(5, TimeUnit.SECONDS);
+
+        assertTrue(Files.readString(configFile.toPath()).contains("lobby: false"));
+        assertFalse(configManager.isChangedOnDisk());
+        assertFalse(new File(dataFolder, "config.yml.tmp").exists());
+    }
+
+    @Test
+    void saveConfig_racingFlushNeverHitsAStoppedWriter() throws Exception {
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread saver = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    configManager.toggleWorld("lobby");
+                    configManager.saveConfig();
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        saver.start();
+        try {
+            for (int i = 0; i < 500 && failure.get() == null; i++) {
+                configManager.flush(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            done.set(true);
+            saver.join();
+        }
+
+        assertNull(failure.get());
+    }
+
+    @Test
+    void saveConfig_failedWriteKeepsThePreviousFile() throws Exception {
+        byte[] before = Files.readAllBytes(configFile.toPath());
+        // The temp file can't be written while a directory has its name
+        assertTrue(new File(dataFolder, "config.yml.tmp").mkdir());
+        configManager.toggleWorld("lobby");
+        configManager.saveConfig();
+
+        configManager.flush(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(before, Files.readAllBytes(configFile.toPath()));
+    }
+
+    @Test
+    void toggleWorld_keepsAToggleOnlyWhileItDiffersFromTheRules() throws Exception {
+        writeConfig("world-rules: [{pattern: match_*, enabled: false}]\n",
+                settings(60, true, List.of(Map.of("pattern", "match_*", "enabled", false))));
+        configManager.reload().get(5, TimeUnit.SECONDS);
+        WorldSleepState match = worldStates.getOrCreate("match_83412");
+
+        assertFalse(configManager.isWorldEnabled("match_83412"));
+        configManager.toggleWorld("match_83412");
+        assertTrue(match.hasToggle());
+        assertTrue(match.isEnabled());
+        configManager.toggleWorld("match_83412");
+        assertFalse(match.hasToggle());
+        assertFalse(match.isEnabled());
+    }
+
+    @Test
+    void loadConfig_dropsFileTogglesThatMatchTheRules() throws Exception {
+        // world: true is what it would be without an entry
+        assertFalse(worldStates.find("world").hasToggle());
+        assertTrue(configManager.isWorldEnabled("world"));
+        assertTrue(configManager.isDirty());
+    }
+
+    private void writeConfig(String text, ConfigSnapshot snapshot) throws Exception {
+        // A different length each time, so the cache entry for the old file no longer matches
+        Files.write(configFile.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        cache.write("config", configFile, ConfigSnapshot.CACHE_SCHEMA, BinaryCache.payload(snapshot::writeTo));
+    }
+
+    private static ConfigSnapshot settings(int revoteCooldown, boolean worldEnabled) {
+        return settings(revoteCooldown, worldEnabled, List.of());
+    }
+
+    private static ConfigSnapshot settings(int revoteCooldown, boolean worldEnabled, List<Map<?, ?>> rules) {
+        return settings(revoteCooldown, Map.of("world", worldEnabled), rules);
+    }
+
+    private static ConfigSnapshot settings(int revoteCooldown, Map<String, Boolean> worldToggles,
+            List<Map<?, ?>> rules) {
+        FileConfiguration config = mock(FileConfiguration.class, withSettings().stubOnly().defaultAnswer(
+                invocation -> invocation.getArguments().length > 1 ? invocation.getArgument(1) : null));
+        ConfigurationSection worlds = mock(ConfigurationSection.class, withSettings().stubOnly());
+        doReturn(worlds).when(config).getConfigurationSection("worlds");
+        when(worlds.getKeys(false)).thenReturn(worldToggles.keySet());
+        worldToggles.forEach((world, enabled) -> doReturn(enabled).when(config).getBoolean("worlds." + world));
+        doReturn(revoteCooldown).when(config).getInt("revote-cooldown", 60);
+        doReturn(rules).when(config).getMapList("world-rules");
+        return ConfigSnapshot.fromYaml(config);
+    }
+}
@@ -0,0 +1,138 @@
+package com.tatayless.sleepmanager.config;
+
+import com.tatayless.sleepmanager.cache.BinaryCache;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ConfigSnapshotTest {
+
+    @Test
+    void fromYaml_missingKeysUseDefaultsAndThresholdIsClamped() {
+        FileConfiguration config = defaultsConfig();
+        doReturn(150).when(config).getInt("vote-percentage-threshold", 50);
+
+        ConfigSnapshot snapshot = ConfigSnapshot.fromYaml(config);
+
+        assertEquals(60, snapshot.getRevoteCooldown());
+        assertEquals("en", snapshot.getLanguage());
+        assertEquals(100, snapshot.getVotePercentageThreshold());
+        assertFalse(snapshot.isWatchFiles());
+        assertTrue(snapshot.getWorldToggles().isEmpty());
+    }
+
+    @Test
+    void writeTo_roundTripsEverySettingAndWorldToggle() {
+        FileConfiguration config = defaultsConfig();
+        ConfigurationSection worlds = mock(ConfigurationSection.class);
+        doReturn(worlds).when(config).getConfigurationSection("worlds");
+        when(worlds.getKeys(false)).thenReturn(Set.of("world"));
+        doReturn(false).when(config).getBoolean("worlds.world");
+        doReturn(45).when(config).getInt("vote-time-limit", 30);
+        doReturn("lobby").when(config).getString("sync-server-id", "");
+        ConfigSnapshot written = ConfigSnapshot.fromYaml(config);
+
+        ConfigSnapshot read = ConfigSnapshot.readFrom(ByteBuffer.wrap(BinaryCache.payload(written::writeTo)));
+
+        assertNotNull(read);
+        assertEquals(45, read.getVoteTimeLimit());
+        assertEquals("lobby", read.getSyncServerId());
+        assertEquals(written.getDegradedMspt(), read.getDegradedMspt());
+        assertEquals(Map.of("world", false), read.getWorldToggles());
+        assertThrows(UnsupportedOperationException.class, () -> read.getWorldToggles().put("nether", true));
+    }
+
+    @Test
+    void fromYaml_readsWorldRulesFromTheConfigFile() throws Exception {
+        YamlConfiguration config = new YamlConfiguration();
+        config.loadFromString(String.join("\n",
+                "world-rules:",
+                "  - pattern: \"regex:(?<id>lobby)-[0-9]+\"",
+                "    enabled: true",
+                "  - pattern: \"regex:(?<id>match)_.*\"",
+                "    enabled: false",
+                "  - enabled: false",
+                "  - pattern: \"hub_*\"",
+                "    enabled: maybe",
+                "  - pattern: \"event_*\"",
+                "    enabled: \"FALSE\"",
+                "  - pattern: \"arena_*\"",
+                "  - pattern: \"*\"",
+                "    enabled: false",
+                "world-rules-cache-size: 64",
+                ""));
+        ConfigSnapshot snapshot = ConfigSnapshot.fromYaml(config);
+        WorldRules rules = snapshot.getWorldRules();
+
+        // The entry without a pattern and the one with an unreadable enabled are skipped
+        assertEquals(5, rules.getRules().size());
+        assertTrue(rules.getInvalid().isEmpty());
+        assertEquals(64, rules.getCacheSize());
+        assertTrue(rules.isEnabled("lobby-2"));
+        assertFalse(rules.isEnabled("match_7"));
+        assertFalse(rules.isEnabled("event_1"));
+        // Left out, enabled is true
+        assertTrue(rules.isEnabled("arena_1"));
+        assertFalse(rules.isEnabled("hub_1"));
+        assertFalse(rules.isEnabled("world"));
+
+        List<String> warnings = new ArrayList<>();
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                warnings.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        ConfigSnapshot.readFrom(ByteBuffer.wrap(BinaryCache.payload(snapshot::writeTo))).warnInvalid(logger);
+        assertEquals(List.of("Ignoring world rule whose enabled is not true or false: hub_* (enabled: maybe)"),
+                warnings);
+    }
+
+    @Test
+    void readFrom_rejectsATruncatedPayload() {
+        byte[] payload = BinaryCache.payload(ConfigSnapshot.fromYaml(defaultsConfig())::writeTo);
+
+        assertNull(ConfigSnapshot.readFrom(ByteBuffer.wrap(payload, 0, payload.length - 1)));
+    }
+
+    @Test
+    void getRestartOnlyChanges_listsSettingsReadOnlyAtStartup() {
+        ConfigSnapshot before = ConfigSnapshot.fromYaml(defaultsConfig());
+        FileConfiguration config = defaultsConfig();
+        doReturn(90).when(config).getInt("revote-cooldown", 60);
+        doReturn(4).when(config).getInt("history-max-segments", 16);
+        ConfigSnapshot after = ConfigSnapshot.fromYaml(config);
+
+        assertEquals(List.of("vote history"), after.getRestartOnlyChanges(before));
+        assertEquals(List.of(), before.getRestartOnlyChanges(before));
+    }
+
+    // Every lookup returns the default it was given, as for an empty file
+    private static FileConfiguration defaultsConfig() {
+        return mock(FileConfiguration.class,
+                invocation -> invocation.getArguments().length > 1 ? invocation.getArgument(1) : null);
+    }
+}
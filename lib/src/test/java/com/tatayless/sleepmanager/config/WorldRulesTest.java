@@ -0,0 +1,74 @@
+package com.tatayless.sleepmanager.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorldRulesTest {
+
+    @Test
+    void isEnabled_firstMatchingRuleWins() {
+        WorldRules rules = new WorldRules(List.of(
+                new WorldRules.Rule("match_final_*", true),
+                new WorldRules.Rule("match_*", false)), 16);
+
+        assertTrue(rules.isEnabled("match_final_7"));
+        assertFalse(rules.isEnabled("match_83412"));
+        assertTrue(rules.isEnabled("world"));
+    }
+
+    @Test
+    void isEnabled_globsMatchTheWholeNameLiterally() {
+        WorldRules rules = new WorldRules(List.of(new WorldRules.Rule("arena.?", false)), 16);
+
+        assertFalse(rules.isEnabled("arena.1"));
+        assertTrue(rules.isEnabled("arenax1"));
+        assertTrue(rules.isEnabled("arena.12"));
+        assertTrue(rules.isEnabled("my_arena.1"));
+    }
+
+    @Test
+    void isEnabled_regexGroupsDoNotShiftLaterRules() {
+        WorldRules rules = new WorldRules(List.of(
+                new WorldRules.Rule("regex:(lobby|hub)-([0-9]+)", true),
+                new WorldRules.Rule("*", false)), 16);
+
+        assertTrue(rules.isEnabled("hub-3"));
+        assertFalse(rules.isEnabled("hub-x"));
+    }
+
+    @Test
+    void isEnabled_namedGroupsRepeatedAcrossRulesStillMatch() {
+        WorldRules rules = new WorldRules(List.of(
+                new WorldRules.Rule("regex:(?<id>lobby)-[0-9]+", true),
+                new WorldRules.Rule("regex:(?<id>hub)-[0-9]+", false)), 16);
+
+        assertTrue(rules.getInvalid().isEmpty());
+        assertTrue(rules.isEnabled("lobby-1"));
+        assertFalse(rules.isEnabled("hub-1"));
+    }
+
+    @Test
+    void isEnabled_backreferencesPointIntoTheirOwnRule() {
+        WorldRules rules = new WorldRules(List.of(
+                new WorldRules.Rule("regex:(x)+y", true),
+                new WorldRules.Rule("regex:(.)\\1", false)), 16);
+
+        assertFalse(rules.isEnabled("aa"));
+        assertTrue(rules.isEnabled("ab"));
+        assertTrue(rules.isEnabled("xxy"));
+    }
+
+    @Test
+    void invalidPatternsAreSkippedAndReported() {
+        WorldRules rules = new WorldRules(List.of(
+                new WorldRules.Rule("regex:match_(", true),
+                new WorldRules.Rule("match_*", false)), 16);
+
+        assertEquals(List.of("regex:match_("), rules.getInvalid());
+        assertEquals(2, rules.getRules().size());
+        assertFalse(rules.isEnabled("match_1"));
+    }
+}
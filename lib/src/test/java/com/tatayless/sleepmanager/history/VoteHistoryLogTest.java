@@ -0,0 +1,143 @@
+package com.tatayless.sleepmanager.history;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VoteHistoryLogTest {
+    private static final Logger LOGGER = Logger.getLogger("VoteHistoryLogTest");
+
+    @TempDir
+    File folder;
+
+    private VoteHistoryLog log;
+
+    @AfterEach
+    void tearDown() {
+        if (log != null) {
+            log.close(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void record_roundTripsThroughItsFixedLayout() {
+        ByteBuffer buffer = ByteBuffer.allocate(VoteRecord.SIZE);
+        new VoteRecord("world_ü", 1_700_000_000_000L, 12_000L, 12_600L, 3, 1, 5, true, 50).writeTo(buffer);
+        assertFalse(buffer.hasRemaining());
+
+        buffer.flip();
+        VoteRecord record = VoteRecord.readFrom(buffer);
+
+        assertEquals("world_ü", record.getWorldName());
+        assertEquals(1_700_000_000_000L, record.getEndedAtMillis());
+        assertEquals(12_000L, record.getStartTick());
+        assertEquals(12_600L, record.getEndTick());
+        assertEquals(3, record.getYesVotes());
+        assertEquals(1, record.getNoVotes());
+        assertEquals(5, record.getEligible());
+        assertTrue(record.isPassed());
+        assertEquals(50, record.getThreshold());
+    }
+
+    @Test
+    void record_longWorldNamesAreCutOnACharacterBoundary() {
+        ByteBuffer buffer = ByteBuffer.allocate(VoteRecord.SIZE);
+        new VoteRecord("a" + "é".repeat(40), 1L, 0L, 0L, 0, 0, 0, false, 0).writeTo(buffer);
+
+        buffer.flip();
+        assertEquals("a" + "é".repeat(31), VoteRecord.readFrom(buffer).getWorldName());
+    }
+
+    @Test
+    void recent_returnsNewestFirstAndFiltersByWorld() throws Exception {
+        log = new VoteHistoryLog(folder, 16, 0, LOGGER);
+        for (int i = 1; i <= 5; i++) {
+            log.append(record(i % 2 == 0 ? "world" : "world_nether", i));
+        }
+
+        assertEquals(List.of(5L, 4L, 3L), ended(log.recent(null, 3).get()));
+        assertEquals(List.of(4L, 2L), ended(log.recent("world", 10).get()));
+        assertTrue(log.recent("world_the_end", 10).get().isEmpty());
+    }
+
+    @Test
+    void append_rotatesSegmentsAndDropsTheOldest() throws Exception {
+        log = new VoteHistoryLog(folder, 4, 2, LOGGER);
+        for (int i = 1; i <= 10; i++) {
+            log.append(record("world", i));
+        }
+
+        // Ten records in segments of four: 0 and 1 are full, 2 holds the last two,
+        // and only the newest two segments are kept
+        assertEquals(List.of(10L, 9L, 8L, 7L, 6L, 5L), ended(log.recent(null, 50).get()));
+        assertFalse(new File(folder, "votes-000000.log").exists());
+        assertEquals(4L * VoteRecord.SIZE, new File(folder, "votes-000002.log").length());
+    }
+
+    @Test
+    void append_continuesTheLatestSegmentAfterReopening() throws Exception {
+        log = new VoteHistoryLog(folder, 8, 0, LOGGER);
+        log.append(record("world", 1));
+        log.append(record("world", 2));
+        log.close(5, TimeUnit.SECONDS);
+
+        log = new VoteHistoryLog(folder, 8, 0, LOGGER);
+        log.append(record("world", 3));
+
+        assertEquals(List.of(3L, 2L, 1L), ended(log.recent(null, 10).get()));
+        assertEquals(1, folder.list().length);
+    }
+
+    @Test
+    void append_startsANewSegmentWhenTheSegmentSizeShrinks() throws Exception {
+        log = new VoteHistoryLog(folder, 8, 0, LOGGER);
+        for (int i = 1; i <= 5; i++) {
+            log.append(record("world", i));
+        }
+        log.close(5, TimeUnit.SECONDS);
+
+        log = new VoteHistoryLog(folder, 4, 0, LOGGER);
+        log.append(record("world", 6));
+        log.append(record("world", 7));
+
+        assertEquals(List.of(7L, 6L, 5L, 4L, 3L, 2L, 1L), ended(log.recent(null, 10).get()));
+        assertEquals(8L * VoteRecord.SIZE, new File(folder, "votes-000000.log").length());
+        assertEquals(4L * VoteRecord.SIZE, new File(folder, "votes-000001.log").length());
+    }
+
+    @Test
+    void recent_skipsRecordsThatFailTheirChecksum() throws Exception {
+        log = new VoteHistoryLog(folder, 8, 0, LOGGER);
+        for (int i = 1; i <= 3; i++) {
+            log.append(record("world", i));
+        }
+        log.close(5, TimeUnit.SECONDS);
+
+        // Flip a byte in the middle record's counts
+        try (RandomAccessFile file = new RandomAccessFile(new File(folder, "votes-000000.log"), "rw")) {
+            file.seek(VoteRecord.SIZE + 25);
+            file.write(0x7F);
+        }
+
+        log = new VoteHistoryLog(folder, 8, 0, LOGGER);
+        assertEquals(List.of(3L, 1L), ended(log.recent(null, 10).get()));
+    }
+
+    private static VoteRecord record(String worldName, long endedAt) {
+        return new VoteRecord(worldName, endedAt, 0L, 100L, 1, 0, 1, true, 50);
+    }
+
+    private static List<Long> ended(List<VoteRecord> records) {
+        return records.stream().map(VoteRecord::getEndedAtMillis).collect(Collectors.toList());
+    }
+}
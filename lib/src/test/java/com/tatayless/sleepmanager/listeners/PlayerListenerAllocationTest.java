@@ -0,0 +1,70 @@
+package com.tatayless.sleepmanager.listeners;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.managers.WorldStateRegistry;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerBedEnterEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static com.tatayless.sleepmanager.AllocationBudget.assertWithinBudget;
+import static com.tatayless.sleepmanager.AllocationBudget.fake;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.*;
+
+/**
+ * Heap allocated per bed entry the listener turns away, against the budgets
+ * in allocation-budgets.properties. Every bed in the nether, the end or a
+ * disabled world takes this path.
+ */
+public class PlayerListenerAllocationTest {
+    private final WorldStateRegistry worldStates = new WorldStateRegistry();
+    private PlayerListener listener;
+
+    @BeforeEach
+    void setUp() {
+        SleepManager plugin = mock(SleepManager.class, withSettings().stubOnly());
+        when(plugin.getWorldStates()).thenReturn(worldStates);
+        when(plugin.getStats()).thenReturn(new StatsRecorder());
+        when(plugin.getTickHealth()).thenReturn(mock(TickHealthMonitor.class, withSettings().stubOnly()));
+        listener = new PlayerListener(plugin);
+        worldStates.setWorldRules(name -> !name.startsWith("lobby"));
+    }
+
+    @Test
+    void onPlayerBedEnter_netherBed_allocatesNothing() {
+        PlayerBedEnterEvent event = bedEntry("world_nether", 1L, World.Environment.NETHER);
+
+        listener.onPlayerBedEnter(event);
+        assertFalse(worldStates.find("world_nether").isEligible());
+        assertWithinBudget("player-listener.bed-enter-rejected", () -> {
+            listener.onPlayerBedEnter(event);
+            return null;
+        });
+    }
+
+    @Test
+    void onPlayerBedEnter_disabledWorld_allocatesNothing() {
+        PlayerBedEnterEvent event = bedEntry("lobby", 2L, World.Environment.NORMAL);
+
+        listener.onPlayerBedEnter(event);
+        assertFalse(worldStates.find("lobby").isEligible());
+        assertWithinBudget("player-listener.bed-enter-rejected", () -> {
+            listener.onPlayerBedEnter(event);
+            return null;
+        });
+    }
+
+    private static PlayerBedEnterEvent bedEntry(String worldName, long worldId, World.Environment environment) {
+        World world = fake(World.class, Map.of("getName", worldName, "getUID", new UUID(0L, worldId),
+                "getEnvironment", environment));
+        Player player = fake(Player.class, Map.of("getWorld", world));
+        return new PlayerBedEnterEvent(player, null, PlayerBedEnterEvent.BedEnterResult.OK);
+    }
+}
@@ -3,20 +3,33 @@ package com.tatayless.sleepmanager.listeners;
 import com.tatayless.sleepmanager.SleepManager;
 import com.tatayless.sleepmanager.config.ConfigManager;
 import com.tatayless.sleepmanager.managers.VoteManager;
+import com.tatayless.sleepmanager.managers.WorldSleepState;
+import com.tatayless.sleepmanager.managers.WorldStateRegistry;
+import com.tatayless.sleepmanager.scheduling.BukkitTaskDispatcher;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
 import com.tatayless.sleepmanager.utils.MessageUtils;
+import org.bukkit.GameMode;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.player.PlayerBedEnterEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerGameModeChangeEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
@@ -25,10 +38,13 @@ import static org.mockito.Mockito.*;
 public class PlayerListenerTest {
 
     private PlayerListener playerListener;
+    private WorldStateRegistry worldStates;
 
     @Mock
     private SleepManager plugin;
     @Mock
+    private TickHealthMonitor tickHealth;
+    @Mock
     private VoteManager voteManager;
     @Mock
     private ConfigManager configManager;
@@ -45,76 +61,91 @@ public class PlayerListenerTest {
 
     @BeforeEach
     void setUp() {
-        when(plugin.getVoteManager()).thenReturn(voteManager);
-        when(plugin.getConfigManager()).thenReturn(configManager);
-        when(plugin.getMessageUtils()).thenReturn(messageUtils);
+        worldStates = new WorldStateRegistry();
+        lenient().when(plugin.getVoteManager()).thenReturn(voteManager);
+        lenient().when(plugin.getConfigManager()).thenReturn(configManager);
+        lenient().when(plugin.getMessageUtils()).thenReturn(messageUtils);
+        lenient().when(plugin.getWorldStates()).thenReturn(worldStates);
+        lenient().when(plugin.getStats()).thenReturn(new StatsRecorder());
+        lenient().when(plugin.getTickHealth()).thenReturn(tickHealth);
+        lenient().when(world.getName()).thenReturn("world");
+        lenient().when(world.getUID()).thenReturn(UUID.randomUUID());
+        lenient().when(player.getUniqueId()).thenReturn(UUID.randomUUID());
         playerListener = new PlayerListener(plugin);
     }
 
     @Test
-    void onPlayerBedEnter_cancelledEvent_doNothing() {
-        when(bedEnterEvent.isCancelled()).thenReturn(true);
+    void onPlayerBedEnter_cancelledEvent_doNothing() throws NoSuchMethodException {
+        // Bukkit skips the handler for cancelled events, before it reads anything
+        EventHandler handler = PlayerListener.class.getMethod("onPlayerBedEnter", PlayerBedEnterEvent.class)
+                .getAnnotation(EventHandler.class);
 
-        playerListener.onPlayerBedEnter(bedEnterEvent);
+        assertTrue(handler.ignoreCancelled());
+        assertEquals(EventPriority.MONITOR, handler.priority());
+    }
 
-        verify(voteManager, never()).hasActiveVote(anyString());
-        verify(voteManager, never()).startVote(anyString());
+    @Test
+    void onPlayerBedEnter_followsToggleAndWorldLoading() {
+        when(world.getEnvironment()).thenReturn(World.Environment.NORMAL);
+        WorldSleepState state = worldStates.get(world);
+        assertTrue(state.isEligible());
+
+        state.setEnabled(false);
+        assertFalse(state.isEligible());
+        state.setEnabled(true);
+
+        // Unloaded worlds keep their state but stop being eligible until loaded again
+        worldStates.unload(world);
+        assertFalse(state.isEligible());
+        assertSame(state, worldStates.get(world));
+        assertTrue(state.isEligible());
     }
 
     @Test
     void onPlayerBedEnter_nonOverworldEnvironment_doNothing() {
-        when(bedEnterEvent.isCancelled()).thenReturn(false);
         when(bedEnterEvent.getPlayer()).thenReturn(player);
         when(player.getWorld()).thenReturn(world);
         when(world.getEnvironment()).thenReturn(World.Environment.NETHER);
 
         playerListener.onPlayerBedEnter(bedEnterEvent);
 
-        verify(voteManager, never()).hasActiveVote(anyString());
         verify(voteManager, never()).startVote(anyString());
+        verify(voteManager, never()).handlePlayerSleep(any(Player.class));
     }
 
     @Test
     void onPlayerBedEnter_worldDisabled_doNothing() {
-        when(bedEnterEvent.isCancelled()).thenReturn(false);
         when(bedEnterEvent.getPlayer()).thenReturn(player);
         when(player.getWorld()).thenReturn(world);
         when(world.getEnvironment()).thenReturn(World.Environment.NORMAL);
-        when(world.getName()).thenReturn("world");
-        when(configManager.isWorldEnabled("world")).thenReturn(false);
+        worldStates.get(world).setEnabled(false);
 
         playerListener.onPlayerBedEnter(bedEnterEvent);
 
-        verify(voteManager, never()).hasActiveVote(anyString());
         verify(voteManager, never()).startVote(anyString());
+        verify(voteManager, never()).handlePlayerSleep(any(Player.class));
     }
 
     @Test
     void onPlayerBedEnter_notNightTime_doNothing() {
-        when(bedEnterEvent.isCancelled()).thenReturn(false);
         when(bedEnterEvent.getPlayer()).thenReturn(player);
         when(player.getWorld()).thenReturn(world);
         when(world.getEnvironment()).thenReturn(World.Environment.NORMAL);
-        when(world.getName()).thenReturn("world");
-        when(configManager.isWorldEnabled("world")).thenReturn(true);
         when(world.getTime()).thenReturn(6000L); // Day time
 
         playerListener.onPlayerBedEnter(bedEnterEvent);
 
-        verify(voteManager, never()).hasActiveVote(anyString());
         verify(voteManager, never()).startVote(anyString());
+        verify(voteManager, never()).handlePlayerSleep(any(Player.class));
     }
 
     @Test
     void onPlayerBedEnter_startVoteMultiplePlayers() {
         setupValidBedEnterEvent();
-        when(voteManager.hasActiveVote("world")).thenReturn(false);
-        when(voteManager.isSleepEnabled("world")).thenReturn(false);
 
-        List<Player> players = new ArrayList<>();
-        players.add(player);
-        players.add(mock(Player.class));
-        when(voteManager.getEligiblePlayers("world")).thenReturn(players);
+        Player other = mock(Player.class);
+        when(other.getUniqueId()).thenReturn(UUID.randomUUID());
+        indexPlayers(player, other);
 
         playerListener.onPlayerBedEnter(bedEnterEvent);
 
@@ -125,12 +156,8 @@ public class PlayerListenerTest {
     @Test
     void onPlayerBedEnter_singlePlayerAutoSleep() {
         setupValidBedEnterEvent();
-        when(voteManager.hasActiveVote("world")).thenReturn(false);
-        when(voteManager.isSleepEnabled("world")).thenReturn(false);
 
-        List<Player> players = new ArrayList<>();
-        players.add(player);
-        when(voteManager.getEligiblePlayers("world")).thenReturn(players);
+        indexPlayers(player);
 
         playerListener.onPlayerBedEnter(bedEnterEvent);
 
@@ -140,44 +167,135 @@ public class PlayerListenerTest {
     @Test
     void onPlayerBedEnter_sleepAlreadyEnabled() {
         setupValidBedEnterEvent();
-        when(voteManager.isSleepEnabled("world")).thenReturn(true);
+        WorldSleepState state = worldStates.get(world);
+        setSleepEnabled(state);
 
         playerListener.onPlayerBedEnter(bedEnterEvent);
 
         verify(voteManager).handlePlayerSleep(player);
+        verify(voteManager, never()).startVote(anyString());
     }
 
     @Test
     void onPlayerJoin_activeVote_sendMessage() {
         when(joinEvent.getPlayer()).thenReturn(player);
         when(player.getWorld()).thenReturn(world);
-        when(world.getName()).thenReturn("world");
-        when(voteManager.hasActiveVote("world")).thenReturn(true);
+        WorldSleepState state = worldStates.get(world);
+        setActiveVote(state);
 
         playerListener.onPlayerJoin(joinEvent);
 
         verify(messageUtils).sendVoteMessage(player, "world");
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void onPlayerJoin_serverBehind_defersPromptUntilRecovery() {
+        ArgumentCaptor<Consumer<TickHealthMonitor.LoadLevel>> levelChanges = ArgumentCaptor.forClass(Consumer.class);
+        verify(tickHealth).addListener(levelChanges.capture());
+        when(plugin.getDispatcher()).thenReturn(new BukkitTaskDispatcher(plugin));
+        when(tickHealth.isDegraded()).thenReturn(true);
+        when(joinEvent.getPlayer()).thenReturn(player);
+        when(player.getWorld()).thenReturn(world);
+        setActiveVote(worldStates.get(world));
+
+        playerListener.onPlayerJoin(joinEvent);
+        verify(messageUtils, never()).sendVoteMessage(any(Player.class), anyString());
+
+        levelChanges.getValue().accept(TickHealthMonitor.LoadLevel.NORMAL);
+        verify(messageUtils).sendVoteMessage(player, "world");
+
+        // Sent once only
+        levelChanges.getValue().accept(TickHealthMonitor.LoadLevel.NORMAL);
+        verify(messageUtils, times(1)).sendVoteMessage(player, "world");
+    }
+
     @Test
     void onPlayerJoin_noActiveVote_noMessage() {
         when(joinEvent.getPlayer()).thenReturn(player);
         when(player.getWorld()).thenReturn(world);
-        when(world.getName()).thenReturn("world");
-        when(voteManager.hasActiveVote("world")).thenReturn(false);
 
         playerListener.onPlayerJoin(joinEvent);
 
         verify(messageUtils, never()).sendVoteMessage(any(Player.class), anyString());
     }
 
+    @Test
+    void onPlayerJoin_indexesPlayer() {
+        when(joinEvent.getPlayer()).thenReturn(player);
+        when(player.getWorld()).thenReturn(world);
+        when(player.getGameMode()).thenReturn(GameMode.SURVIVAL);
+
+        playerListener.onPlayerJoin(joinEvent);
+
+        verify(voteManager).updatePlayer(player, world, GameMode.SURVIVAL);
+    }
+
+    @Test
+    void onPlayerChangedWorld_activeVote_sendMessage() {
+        PlayerChangedWorldEvent event = mock(PlayerChangedWorldEvent.class);
+        when(event.getPlayer()).thenReturn(player);
+        when(player.getWorld()).thenReturn(world);
+        when(player.getGameMode()).thenReturn(GameMode.SURVIVAL);
+        setActiveVote(worldStates.get(world));
+
+        playerListener.onPlayerChangedWorld(event);
+
+        verify(voteManager).updatePlayer(player, world, GameMode.SURVIVAL);
+        verify(messageUtils).sendVoteMessage(player, "world");
+    }
+
+    @Test
+    void onPlayerGameModeChange_usesNewGameMode() {
+        PlayerGameModeChangeEvent event = mock(PlayerGameModeChangeEvent.class);
+        when(event.getPlayer()).thenReturn(player);
+        when(event.getNewGameMode()).thenReturn(GameMode.CREATIVE);
+        when(player.getWorld()).thenReturn(world);
+
+        playerListener.onPlayerGameModeChange(event);
+
+        verify(voteManager).updatePlayer(player, world, GameMode.CREATIVE);
+    }
+
     private void setupValidBedEnterEvent() {
-        when(bedEnterEvent.isCancelled()).thenReturn(false);
         when(bedEnterEvent.getPlayer()).thenReturn(player);
         when(player.getWorld()).thenReturn(world);
         when(world.getEnvironment()).thenReturn(World.Environment.NORMAL);
-        when(world.getName()).thenReturn("world");
-        when(configManager.isWorldEnabled("world")).thenReturn(true);
         when(world.getTime()).thenReturn(13000L); // Night time
     }
+
+    // Index players through a real VoteManager; the mocked one is only used for verification
+    private void indexPlayers(Player... players) {
+        VoteManager indexer = new VoteManager(plugin);
+        for (Player indexed : players) {
+            indexer.updatePlayer(indexed, world, GameMode.SURVIVAL);
+        }
+    }
+
+    // World state setters are package-private to the managers; tests set them reflectively
+    private static void setSleepEnabled(WorldSleepState state) {
+        setField(state, "sleepEnabled", true);
+    }
+
+    private static void setActiveVote(WorldSleepState state) {
+        try {
+            Class<?> sessionClass = Class.forName("com.tatayless.sleepmanager.managers.VoteSession");
+            java.lang.reflect.Constructor<?> constructor = sessionClass.getDeclaredConstructor(String.class,
+                    java.util.Collection.class);
+            constructor.setAccessible(true);
+            setField(state, "session", constructor.newInstance("world", List.of(UUID.randomUUID())));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        try {
+            java.lang.reflect.Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -0,0 +1,111 @@
+package com.tatayless.sleepmanager.managers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimerWheelTest {
+
+    private final TimerWheel wheel = new TimerWheel();
+    private final List<String> fired = new ArrayList<>();
+
+    @Test
+    void schedule_runsOnItsDeadlineTick() {
+        Timeout timeout = new Timeout(() -> fired.add("a"));
+        wheel.schedule(timeout, 3);
+
+        advance(2);
+        assertTrue(fired.isEmpty());
+        assertEquals(1, timeout.getRemainingTicks());
+
+        advance(1);
+        assertEquals(List.of("a"), fired);
+        assertFalse(timeout.isPending());
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    void schedule_beyondOneTurnWaitsForItsRound() {
+        Timeout timeout = new Timeout(() -> fired.add("late"));
+        wheel.schedule(timeout, 1200);
+
+        advance(1199);
+        assertTrue(fired.isEmpty());
+        advance(1);
+        assertEquals(List.of("late"), fired);
+    }
+
+    @Test
+    void schedule_replacesPendingDeadline() {
+        Timeout timeout = new Timeout(() -> fired.add("a"));
+        wheel.schedule(timeout, 600);
+        wheel.schedule(timeout, 1);
+
+        advance(1);
+        assertEquals(List.of("a"), fired);
+        advance(600);
+        assertEquals(1, fired.size());
+        assertEquals(0, wheel.getPending());
+    }
+
+    @Test
+    void cancel_preventsRun() {
+        Timeout first = new Timeout(() -> fired.add("first"));
+        Timeout second = new Timeout(() -> fired.add("second"));
+        wheel.schedule(first, 5);
+        wheel.schedule(second, 5);
+
+        first.cancel();
+        advance(5);
+
+        assertEquals(List.of("second"), fired);
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    void actions_canCancelAndRescheduleTimeoutsDueOnTheSameTick() {
+        Timeout[] other = new Timeout[1];
+        Timeout canceller = new Timeout(() -> {
+            fired.add("canceller");
+            other[0].cancel();
+        });
+        other[0] = new Timeout(() -> fired.add("other"));
+        Timeout[] repeating = new Timeout[1];
+        repeating[0] = new Timeout(() -> {
+            fired.add("repeat");
+            if (fired.size() < 4) {
+                wheel.schedule(repeating[0], 2);
+            }
+        });
+
+        wheel.schedule(canceller, 1);
+        wheel.schedule(other[0], 1);
+        wheel.schedule(repeating[0], 1);
+        advance(10);
+
+        assertEquals(List.of("canceller", "repeat", "repeat", "repeat"), fired);
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    void clear_dropsEverything() {
+        Timeout timeout = new Timeout(() -> fired.add("a"));
+        wheel.schedule(timeout, 1);
+
+        wheel.clear();
+        advance(1);
+
+        assertTrue(fired.isEmpty());
+        assertFalse(timeout.isPending());
+        assertEquals(0, wheel.getPending());
+    }
+
+    private void advance(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            wheel.advance();
+        }
+    }
+}
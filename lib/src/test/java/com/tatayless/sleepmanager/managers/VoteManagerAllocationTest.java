@@ -0,0 +1,61 @@
+package com.tatayless.sleepmanager.managers;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.scheduling.TaskDispatcher;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.tatayless.sleepmanager.AllocationBudget.assertWithinBudget;
+import static com.tatayless.sleepmanager.AllocationBudget.fake;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Heap allocated per call by the vote paths every player can hit, against
+ * the budgets in allocation-budgets.properties
+ */
+public class VoteManagerAllocationTest {
+    private static final String WORLD_NAME = "world";
+
+    private final WorldStateRegistry worldStates = new WorldStateRegistry();
+    private VoteManager voteManager;
+    private Player player;
+
+    @BeforeEach
+    void setUp() {
+        SleepManager plugin = mock(SleepManager.class, withSettings().stubOnly());
+        when(plugin.getWorldStates()).thenReturn(worldStates);
+        when(plugin.getStats()).thenReturn(new StatsRecorder());
+        when(plugin.getDispatcher()).thenReturn(mock(TaskDispatcher.class, withSettings().stubOnly()));
+        when(plugin.getTickHealth()).thenReturn(mock(TickHealthMonitor.class, withSettings().stubOnly()));
+        voteManager = new VoteManager(plugin);
+
+        World world = fake(World.class, Map.of("getName", WORLD_NAME, "getUID", new UUID(0L, 1L),
+                "getEnvironment", World.Environment.NORMAL));
+        UUID playerId = new UUID(0L, 2L);
+        player = fake(Player.class, Map.of("getUniqueId", playerId, "getWorld", world));
+
+        WorldSleepState state = worldStates.load(world);
+        state.setSession(new VoteSession(WORLD_NAME, List.of(playerId)));
+    }
+
+    @Test
+    void vote_allocatesOnlyTheQueuedVote() {
+        assertTrue(voteManager.vote(player, true));
+        assertWithinBudget("vote-manager.vote", () -> voteManager.vote(player, true));
+    }
+
+    @Test
+    void voteStateChecks_allocateNothing() {
+        assertWithinBudget("vote-manager.has-active-vote", () -> voteManager.hasActiveVote(WORLD_NAME));
+        assertWithinBudget("vote-manager.is-sleep-enabled", () -> voteManager.isSleepEnabled(WORLD_NAME));
+    }
+}
@@ -0,0 +1,229 @@
+package com.tatayless.sleepmanager.managers;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.config.ConfigManager;
+import com.tatayless.sleepmanager.scheduling.FakeRegionDispatcher;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import com.tatayless.sleepmanager.utils.MessageKey;
+import com.tatayless.sleepmanager.utils.MessageUtils;
+import net.md_5.bungee.api.chat.BaseComponent;
+import org.bukkit.Bukkit;
+import org.bukkit.GameMode;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Drives a vote from several region threads at once through a fake
+ * region-threaded dispatcher
+ */
+public class VoteManagerConcurrencyTest {
+    private static final int PLAYERS = 2000;
+    private static final Map<String, World> WORLDS = new ConcurrentHashMap<>();
+
+    @TempDir
+    File dataFolder;
+
+    private FakeRegionDispatcher dispatcher;
+    private VoteManager voteManager;
+    private World world;
+    private List<Player> players;
+    private Map<Player, Queue<String>> received;
+    // Names of the threads each player's chat messages were sent on
+    private Map<Player, Queue<String>> sentOn;
+    private MessageUtils messageUtils;
+
+    // Bukkit's static server is shared by every thread, unlike a static mock
+    @BeforeAll
+    static void installServer() {
+        if (Bukkit.getServer() == null) {
+            Server server = mock(Server.class);
+            when(server.getLogger()).thenReturn(Logger.getLogger("VoteManagerConcurrencyTest"));
+            when(server.getWorld(anyString())).thenAnswer(invocation -> WORLDS.get(invocation.getArgument(0)));
+            Bukkit.setServer(server);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new FakeRegionDispatcher(8);
+
+        world = mock(World.class);
+        when(world.getName()).thenReturn("world");
+        when(world.getUID()).thenReturn(UUID.randomUUID());
+        WORLDS.put("world", world);
+
+        players = new ArrayList<>();
+        received = new ConcurrentHashMap<>();
+        sentOn = new ConcurrentHashMap<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            // Stub-only mocks don't record calls, which would serialize the threads on Mockito's lock
+            Player player = mock(Player.class, withSettings().stubOnly());
+            Player.Spigot spigot = mock(Player.Spigot.class, withSettings().stubOnly());
+            Queue<String> inbox = new ConcurrentLinkedQueue<>();
+            Queue<String> threads = new ConcurrentLinkedQueue<>();
+            when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+            when(player.getWorld()).thenReturn(world);
+            when(player.isOnline()).thenReturn(true);
+            when(player.spigot()).thenReturn(spigot);
+            doAnswer(invocation -> inbox.add("prompt")).when(spigot).sendMessage(any(BaseComponent[].class));
+            doAnswer(invocation -> threads.add(Thread.currentThread().getName())
+                    && inbox.add(invocation.getArgument(0))).when(player).sendMessage(anyString());
+            players.add(player);
+            received.put(player, inbox);
+            sentOn.put(player, threads);
+        }
+        when(world.getPlayers()).thenReturn(players);
+
+        SleepManager plugin = mock(SleepManager.class);
+        ConfigManager configManager = mock(ConfigManager.class);
+        when(configManager.getLanguage()).thenReturn("en");
+        // A fake tick is a millisecond; leave the deadline well clear of the voting
+        when(configManager.getVoteTimeLimit()).thenReturn(600);
+        when(configManager.getVotePercentageThreshold()).thenReturn(50);
+        when(plugin.getConfigManager()).thenReturn(configManager);
+        when(plugin.getWorldStates()).thenReturn(new WorldStateRegistry());
+        when(plugin.getStats()).thenReturn(new StatsRecorder());
+        when(plugin.getDispatcher()).thenReturn(dispatcher);
+        when(plugin.getTickHealth()).thenReturn(new TickHealthMonitor(dispatcher,
+                Logger.getLogger("VoteManagerConcurrencyTest"), 0, 0));
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("VoteManagerConcurrencyTest"));
+        when(plugin.getResource(anyString())).thenAnswer(
+                invocation -> SleepManager.class.getClassLoader().getResourceAsStream(invocation.getArgument(0)));
+
+        messageUtils = new MessageUtils(plugin);
+        when(plugin.getMessageUtils()).thenReturn(messageUtils);
+        voteManager = new VoteManager(plugin);
+        when(plugin.getVoteManager()).thenReturn(voteManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        voteManager.shutdown();
+        dispatcher.close();
+        WORLDS.clear();
+    }
+
+    @Test
+    void concurrentIndexingAndVoting_keepsExactTalliesAndOrder() throws Exception {
+        // Every player joins from their own region, while a few also churn in and out of creative
+        onEachRegion(player -> {
+            voteManager.updatePlayer(player, world, GameMode.SURVIVAL);
+            if (players.indexOf(player) % 10 == 0) {
+                voteManager.updatePlayer(player, world, GameMode.CREATIVE);
+                voteManager.updatePlayer(player, world, GameMode.SURVIVAL);
+            }
+        });
+        assertEquals(PLAYERS, voteManager.getEligibleCount("world"));
+
+        // Several regions race to start the vote; exactly one wins
+        List<Future<Boolean>> starts = new ArrayList<>();
+        ExecutorService starters = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; i++) {
+            starts.add(starters.submit(() -> voteManager.startVote("world")));
+        }
+        int started = 0;
+        for (Future<Boolean> start : starts) {
+            started += start.get(10, TimeUnit.SECONDS) ? 1 : 0;
+        }
+        starters.shutdown();
+        assertEquals(1, started);
+
+        // Everyone votes from their own region; three in four vote yes
+        onEachRegion(player -> voteManager.vote(player, players.indexOf(player) % 4 != 0));
+
+        // The last vote brings the deadline forward; the global timer ends the vote
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (voteManager.hasActiveVote("world") && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        dispatcher.awaitIdle();
+        dispatcher.awaitIdle();
+
+        assertTrue(dispatcher.getFailures().isEmpty(), () -> dispatcher.getFailures().toString());
+        assertFalse(voteManager.hasActiveVote("world"));
+        assertEquals(75.0, voteManager.getLastVoteYesPercentage("world"));
+        assertTrue(voteManager.isSleepEnabled("world"));
+
+        // Each player got the prompt before the result, exactly once each
+        String passed = messageUtils.renderVoteResult(true, "world");
+        for (Player player : players) {
+            List<String> inbox = new ArrayList<>(received.get(player));
+            int prompt = inbox.indexOf("prompt");
+            int result = inbox.indexOf(passed);
+            assertTrue(prompt >= 0 && result > prompt, "out of order: " + inbox);
+            assertEquals(prompt, inbox.lastIndexOf("prompt"));
+            assertEquals(result, inbox.lastIndexOf(passed));
+        }
+    }
+
+    @Test
+    void voteConfirmations_reachEachPlayerOnTheirRegionAfterThePrompt() throws Exception {
+        onEachRegion(player -> voteManager.updatePlayer(player, world, GameMode.SURVIVAL));
+        assertTrue(voteManager.startVote("world"));
+        onEachRegion(player -> voteManager.vote(player, true));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (voteManager.hasActiveVote("world") && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        dispatcher.awaitIdle();
+        dispatcher.awaitIdle();
+
+        assertTrue(dispatcher.getFailures().isEmpty(), () -> dispatcher.getFailures().toString());
+        String confirmation = messageUtils.getMessage(MessageKey.VOTE_VOTED_YES);
+        for (Player player : players) {
+            List<String> inbox = new ArrayList<>(received.get(player));
+            int confirmed = inbox.indexOf(confirmation);
+            assertTrue(confirmed > inbox.indexOf("prompt") && inbox.indexOf("prompt") >= 0,
+                    "out of order: " + inbox);
+            assertEquals(confirmed, inbox.lastIndexOf(confirmation));
+            // Never sent from the global thread, only the player's own region
+            String region = "fake-region-" + dispatcher.regionOf(player);
+            for (String thread : sentOn.get(player)) {
+                assertEquals(region, thread);
+            }
+        }
+    }
+
+    // Runs the action for every player on the player's region, with all regions released at once
+    private void onEachRegion(java.util.function.Consumer<Player> action) throws Exception {
+        Map<Integer, List<Player>> byRegion = new HashMap<>();
+        for (Player player : players) {
+            byRegion.computeIfAbsent(dispatcher.regionOf(player), region -> new ArrayList<>()).add(player);
+        }
+
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(byRegion.size());
+        for (List<Player> regionPlayers : byRegion.values()) {
+            dispatcher.runForPlayer(regionPlayers.get(0), () -> {
+                try {
+                    go.await();
+                    regionPlayers.forEach(action);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        go.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+}
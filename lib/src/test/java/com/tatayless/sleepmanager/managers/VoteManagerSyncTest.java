@@ -0,0 +1,186 @@
+package com.tatayless.sleepmanager.managers;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.config.ConfigManager;
+import com.tatayless.sleepmanager.scheduling.TaskDispatcher;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import com.tatayless.sleepmanager.sync.LoopbackTransport;
+import com.tatayless.sleepmanager.sync.VoteSync;
+import com.tatayless.sleepmanager.utils.MessageUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.GameMode;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Two servers running the same world, connected by a loopback transport
+ */
+public class VoteManagerSyncTest {
+    private final LoopbackTransport.Network network = new LoopbackTransport.Network();
+    private MockedStatic<Bukkit> bukkit;
+    private World world;
+    private Shard first;
+    private Shard second;
+
+    @BeforeEach
+    void setUp() {
+        world = mock(World.class);
+        when(world.getName()).thenReturn("world");
+        when(world.getUID()).thenReturn(UUID.randomUUID());
+        bukkit = mockStatic(Bukkit.class);
+        bukkit.when(() -> Bukkit.getWorld("world")).thenReturn(world);
+
+        first = new Shard(1L);
+        second = new Shard(2L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bukkit.close();
+    }
+
+    @Test
+    void voteStartedOnOneServerOpensAndEndsOnTheOther() {
+        Player alex = first.join();
+        first.join();
+        Player sam = second.join();
+
+        assertTrue(first.voteManager.startVote("world"));
+        exchange();
+        assertTrue(second.voteManager.hasActiveVote("world"));
+        verify(second.messageUtils).broadcastVotePrompt(eq("world"), anyList());
+
+        first.voteManager.vote(alex, true);
+        first.tick();
+        second.voteManager.vote(sam, true);
+        exchange();
+
+        // Everyone on the second server voted, so it ended the vote for both
+        assertFalse(first.voteManager.hasActiveVote("world"));
+        assertFalse(second.voteManager.hasActiveVote("world"));
+        assertTrue(first.voteManager.isSleepEnabled("world"));
+        assertTrue(second.voteManager.isSleepEnabled("world"));
+    }
+
+    @Test
+    void simultaneousStartsMergeIntoTheEarliest() {
+        first.join();
+        second.join();
+
+        first.voteManager.startVote("world");
+        second.voteManager.startVote("world");
+        exchange();
+
+        VoteSession firstSession = first.state().getSession();
+        VoteSession secondSession = second.state().getSession();
+        assertEquals(firstSession.getStamp(), secondSession.getStamp());
+        assertEquals(1L, firstSession.getStamp().getOrigin());
+    }
+
+    @Test
+    void conflictingEndsSettleOnTheSameResult() {
+        Player alex = first.join();
+        Player sam = second.join();
+        first.voteManager.startVote("world");
+        exchange();
+
+        // Each server sees only its own vote before ending
+        first.voteManager.vote(alex, true);
+        second.voteManager.vote(sam, false);
+        first.voteManager.applyVotes();
+        second.voteManager.applyVotes();
+        first.voteManager.endVote("world");
+        second.voteManager.endVote("world");
+        exchange();
+
+        assertEquals(first.voteManager.isSleepEnabled("world"), second.voteManager.isSleepEnabled("world"));
+    }
+
+    @Test
+    void sleepingOnOneServerSkipsTheNightOnBoth() {
+        Player alex = first.join();
+        second.join();
+        first.voteManager.startVote("world");
+        first.voteManager.vote(alex, true);
+        exchange();
+        assertTrue(second.voteManager.isSleepEnabled("world"));
+
+        first.voteManager.handlePlayerSleep(alex);
+        exchange();
+
+        assertFalse(second.voteManager.isSleepEnabled("world"));
+        assertTrue(second.state().isNightSkipPending());
+    }
+
+    // Enough ticks for a change to reach the other server and its answer to come back
+    private void exchange() {
+        for (int i = 0; i < 3; i++) {
+            first.tick();
+            second.tick();
+        }
+    }
+
+    private final class Shard {
+        final WorldStateRegistry worldStates = new WorldStateRegistry();
+        final MessageUtils messageUtils = mock(MessageUtils.class);
+        final List<Runnable> tasks = new ArrayList<>();
+        final VoteManager voteManager;
+
+        Shard(long origin) {
+            SleepManager plugin = mock(SleepManager.class);
+            ConfigManager configManager = mock(ConfigManager.class);
+            TaskDispatcher dispatcher = mock(TaskDispatcher.class);
+            when(configManager.getVoteTimeLimit()).thenReturn(30);
+            when(configManager.getVotePercentageThreshold()).thenReturn(50);
+            when(dispatcher.runRepeating(any(Runnable.class), anyLong(), anyLong())).thenAnswer(invocation -> {
+                tasks.add(invocation.getArgument(0));
+                return mock(TaskDispatcher.ScheduledTask.class);
+            });
+
+            VoteSync sync = new VoteSync(network.connect(), dispatcher, Logger.getLogger("VoteManagerSyncTest"),
+                    origin, 1);
+            when(plugin.getWorldStates()).thenReturn(worldStates);
+            when(plugin.getConfigManager()).thenReturn(configManager);
+            when(plugin.getMessageUtils()).thenReturn(messageUtils);
+            when(plugin.getStats()).thenReturn(new StatsRecorder());
+            when(plugin.getTickHealth()).thenReturn(mock(TickHealthMonitor.class));
+            when(plugin.getDispatcher()).thenReturn(dispatcher);
+            when(plugin.getVoteSync()).thenReturn(sync);
+
+            voteManager = new VoteManager(plugin);
+            sync.start(voteManager::applyRemote);
+        }
+
+        Player join() {
+            Player player = mock(Player.class);
+            when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+            when(player.getWorld()).thenReturn(world);
+            voteManager.updatePlayer(player, world, GameMode.SURVIVAL);
+            return player;
+        }
+
+        WorldSleepState state() {
+            return worldStates.find("world");
+        }
+
+        void tick() {
+            for (Runnable task : new ArrayList<>(tasks)) {
+                task.run();
+            }
+        }
+    }
+}
@@ -2,23 +2,29 @@ package com.tatayless.sleepmanager.managers;
 
 import com.tatayless.sleepmanager.SleepManager;
 import com.tatayless.sleepmanager.config.ConfigManager;
+import com.tatayless.sleepmanager.history.VoteHistoryLog;
+import com.tatayless.sleepmanager.history.VoteRecord;
+import com.tatayless.sleepmanager.scheduling.BukkitTaskDispatcher;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import com.tatayless.sleepmanager.utils.MessageKey;
 import com.tatayless.sleepmanager.utils.MessageUtils;
 import org.bukkit.Bukkit;
-import org.bukkit.Server;
+import org.bukkit.GameMode;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
-import org.bukkit.plugin.PluginManager;
 import org.bukkit.scheduler.BukkitScheduler;
 import org.bukkit.scheduler.BukkitTask;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -28,6 +34,7 @@ import static org.mockito.Mockito.*;
 public class VoteManagerTest {
 
     private VoteManager voteManager;
+    private WorldStateRegistry worldStates;
 
     @Mock
     private SleepManager plugin;
@@ -36,8 +43,6 @@ public class VoteManagerTest {
     @Mock
     private MessageUtils messageUtils;
     @Mock
-    private Server server;
-    @Mock
     private World world;
     @Mock
     private Player player1;
@@ -47,17 +52,20 @@ public class VoteManagerTest {
     private BukkitScheduler scheduler;
     @Mock
     private BukkitTask task;
-    @Mock
-    private PluginManager pluginManager;
 
     @BeforeEach
     void setUp() {
-        when(plugin.getConfigManager()).thenReturn(configManager);
-        when(plugin.getMessageUtils()).thenReturn(messageUtils);
-        when(plugin.getServer()).thenReturn(server);
-        when(server.getScheduler()).thenReturn(scheduler);
-        when(server.getPluginManager()).thenReturn(pluginManager);
-        when(scheduler.runTaskLater(eq(plugin), any(Runnable.class), anyLong())).thenReturn(task);
+        worldStates = new WorldStateRegistry();
+        when(plugin.getWorldStates()).thenReturn(worldStates);
+        lenient().when(plugin.getConfigManager()).thenReturn(configManager);
+        lenient().when(plugin.getMessageUtils()).thenReturn(messageUtils);
+        lenient().when(plugin.getStats()).thenReturn(new StatsRecorder());
+        lenient().when(plugin.getDispatcher()).thenReturn(new BukkitTaskDispatcher(plugin));
+        lenient().when(scheduler.runTaskTimer(eq(plugin), any(Runnable.class), eq(1L), eq(1L))).thenReturn(task);
+        lenient().when(world.getName()).thenReturn("world");
+        lenient().when(world.getUID()).thenReturn(UUID.randomUUID());
+        lenient().when(player1.getUniqueId()).thenReturn(UUID.randomUUID());
+        lenient().when(player1.getWorld()).thenReturn(world);
 
         voteManager = new VoteManager(plugin);
     }
@@ -74,75 +82,292 @@ public class VoteManagerTest {
 
     @Test
     void getEligiblePlayers_returnsCorrectPlayers() {
-        try (MockedStatic<Bukkit> bukkit = mockStatic(Bukkit.class)) {
-            bukkit.when(() -> Bukkit.getWorld("world")).thenReturn(world);
+        when(player2.getUniqueId()).thenReturn(UUID.randomUUID());
 
-            List<Player> worldPlayers = new ArrayList<>();
-            worldPlayers.add(player1);
-            worldPlayers.add(player2);
+        voteManager.updatePlayer(player1, world, GameMode.SURVIVAL);
+        voteManager.updatePlayer(player2, world, GameMode.CREATIVE); // Not eligible
 
-            when(world.getPlayers()).thenReturn(worldPlayers);
-            when(player1.getGameMode()).thenReturn(org.bukkit.GameMode.SURVIVAL);
-            when(player2.getGameMode()).thenReturn(org.bukkit.GameMode.CREATIVE); // Not eligible
+        List<Player> eligiblePlayers = voteManager.getEligiblePlayers("world");
 
-            List<Player> eligiblePlayers = voteManager.getEligiblePlayers("world");
+        assertEquals(1, eligiblePlayers.size());
+        assertTrue(eligiblePlayers.contains(player1));
+        assertFalse(eligiblePlayers.contains(player2));
+    }
 
-            assertEquals(1, eligiblePlayers.size());
-            assertTrue(eligiblePlayers.contains(player1));
-            assertFalse(eligiblePlayers.contains(player2));
-        }
+    @Test
+    void updatePlayer_followsWorldAndGameModeChanges() {
+        World nether = mock(World.class);
+        when(nether.getName()).thenReturn("world_nether");
+        when(nether.getUID()).thenReturn(UUID.randomUUID());
+
+        voteManager.updatePlayer(player1, world, GameMode.SURVIVAL);
+        voteManager.updatePlayer(player1, nether, GameMode.SURVIVAL);
+        assertEquals(0, voteManager.getEligibleCount("world"));
+        assertEquals(1, voteManager.getEligibleCount("world_nether"));
+
+        voteManager.updatePlayer(player1, nether, GameMode.SPECTATOR);
+        assertEquals(0, voteManager.getEligibleCount("world_nether"));
+
+        voteManager.updatePlayer(player1, world, GameMode.ADVENTURE);
+        voteManager.removePlayer(player1);
+        assertEquals(0, voteManager.getEligibleCount("world"));
     }
 
     @Test
-    void startVote_startsCorrectly() {
-        try (MockedStatic<Bukkit> bukkit = mockStatic(Bukkit.class)) {
-            bukkit.when(() -> Bukkit.getWorld("world")).thenReturn(world);
+    void removePlayer_keepsOtherPlayersIndexed() {
+        Player player3 = mock(Player.class);
+        when(player2.getUniqueId()).thenReturn(UUID.randomUUID());
+        when(player3.getUniqueId()).thenReturn(UUID.randomUUID());
+
+        voteManager.updatePlayer(player1, world, GameMode.SURVIVAL);
+        voteManager.updatePlayer(player2, world, GameMode.SURVIVAL);
+        voteManager.updatePlayer(player3, world, GameMode.SURVIVAL);
+        voteManager.removePlayer(player1);
+
+        assertEquals(List.of(player3, player2), voteManager.getEligiblePlayers("world"));
+        voteManager.removePlayer(player3);
+        assertEquals(List.of(player2), voteManager.getEligiblePlayers("world"));
+    }
 
-            List<Player> worldPlayers = new ArrayList<>();
-            worldPlayers.add(player1);
-            when(world.getPlayers()).thenReturn(worldPlayers);
-            when(player1.getGameMode()).thenReturn(org.bukkit.GameMode.SURVIVAL);
+    @Test
+    void startVote_startsCorrectly() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            List<Player> worldPlayers = singlePlayerWorld();
             when(configManager.getVoteTimeLimit()).thenReturn(30);
 
             boolean result = voteManager.startVote("world");
 
             assertTrue(result);
             assertTrue(voteManager.hasActiveVote("world"));
-            verify(scheduler).runTaskLater(eq(plugin), any(Runnable.class), eq(30 * 20L));
-            verify(messageUtils).sendVoteMessage(player1, "world");
+            verify(messageUtils).broadcastVotePrompt("world", worldPlayers);
+
+            // The deadline runs off the shared timer wheel
+            advance(30 * 20 - 1);
+            assertTrue(voteManager.hasActiveVote("world"));
+            advance(1);
+            assertFalse(voteManager.hasActiveVote("world"));
+            verify(scheduler, times(1)).runTaskTimer(eq(plugin), any(Runnable.class), eq(1L), eq(1L));
         }
     }
 
     @Test
-    void handlePlayerSleep_enablesSleep() {
-        try (MockedStatic<Bukkit> bukkit = mockStatic(Bukkit.class)) {
-            bukkit.when(() -> Bukkit.getScheduler()).thenReturn(scheduler);
+    void vote_lastVoteEndsVoteOnNextTick() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            singlePlayerWorld();
+            when(configManager.getVoteTimeLimit()).thenReturn(30);
+
+            voteManager.startVote("world");
+            voteManager.vote(player1, true);
+            assertTrue(voteManager.hasActiveVote("world"));
+
+            advance(1);
+            assertFalse(voteManager.hasActiveVote("world"));
+            assertTrue(voteManager.getTimers().isEmpty());
+        }
+    }
+
+    @Test
+    void vote_repeatedVotesInOneTickCountOnce() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            List<Player> worldPlayers = singlePlayerWorld();
+            when(player2.getUniqueId()).thenReturn(UUID.randomUUID());
+            when(player2.getWorld()).thenReturn(world);
+            worldPlayers.add(player2);
+            voteManager.updatePlayer(player2, world, GameMode.SURVIVAL);
+            when(configManager.getVotePercentageThreshold()).thenReturn(50);
+            when(configManager.getVoteTimeLimit()).thenReturn(30);
 
-            when(player1.getWorld()).thenReturn(world);
-            when(world.getName()).thenReturn("world");
+            List<Player> confirmedNo = captureConfirmations(MessageKey.VOTE_VOTED_NO);
+
+            voteManager.startVote("world");
+            voteManager.vote(player1, true);
+            voteManager.vote(player1, false);
+            voteManager.vote(player1, false);
+            advance(1);
+
+            // Only the latest vote is counted and confirmed
+            assertEquals(List.of(player1), confirmedNo);
+            verify(messageUtils, never()).broadcastMessage(eq(MessageKey.VOTE_VOTED_YES), anyCollection());
+            assertTrue(voteManager.hasActiveVote("world"));
+
+            voteManager.vote(player2, true);
+            advance(1);
+            assertFalse(voteManager.hasActiveVote("world"));
+            assertEquals(50.0, voteManager.getLastVoteYesPercentage("world"));
+        }
+    }
+
+    @Test
+    void vote_confirmationsGoOutAsBroadcasts() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            singlePlayerWorld();
+            when(configManager.getVoteTimeLimit()).thenReturn(30);
+            List<Player> confirmed = captureConfirmations(MessageKey.VOTE_VOTED_YES);
+
+            voteManager.startVote("world");
+            voteManager.vote(player1, true);
+            advance(1);
+
+            assertEquals(List.of(player1), confirmed);
+            verify(messageUtils, never()).sendMessage(any(Player.class), any(MessageKey.class));
+        }
+    }
+
+    @Test
+    void vote_dropsVotesForAnEndedSession() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            singlePlayerWorld();
+            when(configManager.getVoteTimeLimit()).thenReturn(30);
+
+            voteManager.startVote("world");
+            voteManager.vote(player1, true);
+            voteManager.clearVote("world");
+            voteManager.startVote("world");
+            advance(1);
+
+            // The vote was cast in the cleared session, so the new one is still open
+            assertTrue(voteManager.hasActiveVote("world"));
+            verify(messageUtils, never()).broadcastMessage(eq(MessageKey.VOTE_VOTED_YES), anyCollection());
+        }
+    }
+
+    @Test
+    void submitVote_countsVotesRelayedFromOtherThreads() throws Exception {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            singlePlayerWorld();
+            when(configManager.getVotePercentageThreshold()).thenReturn(50);
+            voteManager.startVote("world");
+
+            Thread bridge = new Thread(() -> voteManager.submitVote("world", player1.getUniqueId(), true));
+            bridge.start();
+            bridge.join();
+            assertFalse(voteManager.submitVote("world_nether", player1.getUniqueId(), true));
+
+            advance(1);
+            assertFalse(voteManager.hasActiveVote("world"));
+            assertTrue(voteManager.isSleepEnabled("world"));
+        }
+    }
+
+    @Test
+    void endVote_passedVoteEnablesSleepAndStartsCooldown() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            singlePlayerWorld();
+            when(configManager.getRevoteCooldown()).thenReturn(60);
+            when(configManager.getVotePercentageThreshold()).thenReturn(50);
+
+            voteManager.startVote("world");
+            voteManager.vote(player1, true);
+            voteManager.applyVotes();
+            voteManager.endVote("world");
+
+            assertFalse(voteManager.hasActiveVote("world"));
+            assertTrue(voteManager.isSleepEnabled("world"));
+            assertEquals(100.0, voteManager.getLastVoteYesPercentage("world"));
+            assertFalse(voteManager.canStartVote("world"));
+            verify(messageUtils).broadcastVoteResult(eq("world"), eq(true), anyList());
+
+            // The cooldown expires after the configured number of seconds
+            advance(60 * 20 - 1);
+            assertFalse(voteManager.canStartVote("world"));
+            advance(1);
+            assertTrue(voteManager.canStartVote("world"));
+        }
+    }
+
+    @Test
+    void endVote_appendsOutcomeToHistory() {
+        VoteHistoryLog history = mock(VoteHistoryLog.class);
+        when(plugin.getVoteHistory()).thenReturn(history);
+        voteManager = new VoteManager(plugin);
+
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            singlePlayerWorld();
+            when(configManager.getVotePercentageThreshold()).thenReturn(75);
+            when(world.getFullTime()).thenReturn(13_000L, 13_400L);
+
+            voteManager.startVote("world");
+            voteManager.vote(player1, false);
+            voteManager.applyVotes();
+            voteManager.endVote("world");
+        }
+
+        ArgumentCaptor<VoteRecord> record = ArgumentCaptor.forClass(VoteRecord.class);
+        verify(history).append(record.capture());
+        assertEquals("world", record.getValue().getWorldName());
+        assertEquals(13_000L, record.getValue().getStartTick());
+        assertEquals(13_400L, record.getValue().getEndTick());
+        assertEquals(0, record.getValue().getYesVotes());
+        assertEquals(1, record.getValue().getNoVotes());
+        assertEquals(1, record.getValue().getEligible());
+        assertFalse(record.getValue().isPassed());
+        assertEquals(75, record.getValue().getThreshold());
+    }
+
+    @Test
+    void handlePlayerSleep_enablesSleep() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            singlePlayerWorld();
+            when(configManager.getVotePercentageThreshold()).thenReturn(50);
 
             // First mark sleep as enabled
             voteManager.startVote("world"); // Setup active vote
             voteManager.vote(player1, true); // Make a vote to change state
+            voteManager.applyVotes();
+            voteManager.endVote("world");
 
             // Now simulate sleep
             voteManager.handlePlayerSleep(player1);
+            assertFalse(voteManager.isSleepEnabled("world"));
 
-            // Test should verify the setTime call happens at right time
-            verify(scheduler).runTaskLater(eq(plugin), any(Runnable.class), eq(20L));
+            // The night is skipped a second later
+            advance(19);
+            verify(world, never()).setTime(anyLong());
+            advance(1);
+            verify(world).setTime(0);
+            verify(messageUtils).broadcastMessage(eq(MessageKey.SLEEP_NIGHT_SKIPPED), anyList());
         }
     }
 
     @Test
-    void clearAllVotes_clearsActiveVotes() {
-        try (MockedStatic<Bukkit> bukkit = mockStatic(Bukkit.class)) {
-            bukkit.when(() -> Bukkit.getWorld("world")).thenReturn(world);
+    void handlePlayerSleep_simultaneousSleepersShareOneSkip() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            List<Player> worldPlayers = singlePlayerWorld();
+            when(player2.getUniqueId()).thenReturn(UUID.randomUUID());
+            when(player2.getWorld()).thenReturn(world);
+            worldPlayers.add(player2);
+            voteManager.updatePlayer(player2, world, GameMode.SURVIVAL);
+            when(configManager.getVotePercentageThreshold()).thenReturn(50);
+
+            voteManager.startVote("world");
+            voteManager.vote(player1, true);
+            voteManager.vote(player2, true);
+            voteManager.applyVotes();
+            voteManager.endVote("world");
+
+            voteManager.handlePlayerSleep(player1);
+            advance(5);
+            voteManager.handlePlayerSleep(player2);
+            voteManager.requestNightSkip("world");
+            advance(15);
+
+            verify(world, times(1)).setTime(0);
+            verify(messageUtils, times(1)).broadcastMessage(eq(MessageKey.SLEEP_NIGHT_SKIPPED), anyList());
+            assertEquals(2, voteManager.getCoalescedNightSkips());
+            assertEquals(2, voteManager.getCoalescedNightSkips("world"));
 
+            // Once the skip has run, sleeping no longer skips anything without a new vote
+            voteManager.handlePlayerSleep(player2);
+            advance(20);
+            verify(world, times(1)).setTime(0);
+        }
+    }
+
+    @Test
+    void clearAllVotes_clearsActiveVotes() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
             // Setup eligible players
-            List<Player> worldPlayers = new ArrayList<>();
-            worldPlayers.add(player1);
-            when(world.getPlayers()).thenReturn(worldPlayers);
-            when(player1.getGameMode()).thenReturn(org.bukkit.GameMode.SURVIVAL);
+            singlePlayerWorld();
 
             // Start a vote
             voteManager.startVote("world");
@@ -151,8 +376,92 @@ public class VoteManagerTest {
             // Clear votes
             voteManager.clearAllVotes();
 
-            // Verify vote was cleared
+            // Verify vote was cleared along with its deadline
+            assertFalse(voteManager.hasActiveVote("world"));
+            assertTrue(voteManager.getTimers().isEmpty());
+        }
+    }
+
+    @Test
+    void shutdown_stopsTimerTask() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            singlePlayerWorld();
+            voteManager.startVote("world");
+
+            voteManager.shutdown();
+
+            verify(task).cancel();
+            assertTrue(voteManager.getTimers().isEmpty());
+        }
+    }
+
+    @Test
+    void unloadWorld_dropsOpenVoteAndForgetsTheWorld() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            singlePlayerWorld();
+            voteManager.startVote("world");
+
+            voteManager.unloadWorld(world);
+
             assertFalse(voteManager.hasActiveVote("world"));
+            assertTrue(voteManager.getTimers().isEmpty());
+            assertNull(worldStates.find("world"));
+            assertEquals(0, worldStates.getArchivedCount());
+            verify(messageUtils, never()).broadcastVoteResult(anyString(), anyBoolean(), any());
         }
     }
+
+    @Test
+    void unloadWorld_archivesCooldownUntilTheWorldLoadsAgain() {
+        try (MockedStatic<Bukkit> bukkit = mockBukkit()) {
+            singlePlayerWorld();
+            when(configManager.getRevoteCooldown()).thenReturn(60);
+            voteManager.startVote("world");
+            voteManager.vote(player1, true);
+            advance(1);
+            voteManager.removePlayer(player1);
+
+            voteManager.unloadWorld(world);
+            assertNull(worldStates.find("world"));
+            assertEquals(1, worldStates.getArchivedCount());
+
+            WorldSleepState state = worldStates.load(world);
+            assertEquals(0, worldStates.getArchivedCount());
+            assertTrue(state.isOnCooldown());
+            assertEquals(100.0, state.getLastVotePercentage());
+            // The vote passed, but not for whatever night it is now
+            assertFalse(state.isSleepEnabled());
+            assertFalse(voteManager.canStartVote("world"));
+        }
+    }
+
+    private MockedStatic<Bukkit> mockBukkit() {
+        MockedStatic<Bukkit> bukkit = mockStatic(Bukkit.class);
+        bukkit.when(() -> Bukkit.getWorld("world")).thenReturn(world);
+        bukkit.when(Bukkit::getScheduler).thenReturn(scheduler);
+        return bukkit;
+    }
+
+    private void advance(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            voteManager.tick();
+        }
+    }
+
+    private List<Player> singlePlayerWorld() {
+        List<Player> worldPlayers = new ArrayList<>();
+        worldPlayers.add(player1);
+        lenient().when(world.getPlayers()).thenReturn(worldPlayers);
+        voteManager.updatePlayer(player1, world, GameMode.SURVIVAL);
+        return worldPlayers;
+    }
+
+    // Collects the players each confirmation broadcast goes to
+    private List<Player> captureConfirmations(MessageKey key) {
+        // The batch list is reused, so copy it as the real broadcast does
+        List<Player> confirmed = new ArrayList<>();
+        doAnswer(invocation -> confirmed.addAll(invocation.getArgument(1))).when(messageUtils)
+                .broadcastMessage(eq(key), anyCollection());
+        return confirmed;
+    }
 }
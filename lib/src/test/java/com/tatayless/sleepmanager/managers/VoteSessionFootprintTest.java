@@ -0,0 +1,58 @@
+package com.tatayless.sleepmanager.managers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static com.tatayless.sleepmanager.AllocationBudget.bytesToBuild;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the heap taken by fully voted sessions against the previous
+ * HashSet/HashMap layout, measured by what building them allocates. Player
+ * UUIDs are shared between both layouts, as they are on a live server, so
+ * only the per-session structures are counted.
+ */
+public class VoteSessionFootprintTest {
+
+    private static final int SESSIONS = 100;
+    private static final int PLAYERS = 200;
+
+    @Test
+    void slotLedgerRetainsLessHeapThanHashMaps() {
+        List<UUID> playerIds = new ArrayList<>(PLAYERS);
+        for (int i = 0; i < PLAYERS; i++) {
+            playerIds.add(UUID.randomUUID());
+        }
+
+        long legacyBytes = bytesToBuild(() -> {
+            Object[] legacy = new Object[SESSIONS];
+            for (int i = 0; i < SESSIONS; i++) {
+                Set<UUID> eligible = new HashSet<>(playerIds);
+                // Sized up front so no resized table is counted as retained
+                Map<UUID, Boolean> votes = new HashMap<>(PLAYERS * 2);
+                for (int p = 0; p < PLAYERS; p++) {
+                    votes.put(playerIds.get(p), (p & 1) == 0);
+                }
+                legacy[i] = new Object[] { eligible, votes };
+            }
+            return legacy;
+        });
+
+        long ledgerBytes = bytesToBuild(() -> {
+            VoteSession[] sessions = new VoteSession[SESSIONS];
+            for (int i = 0; i < SESSIONS; i++) {
+                VoteSession session = new VoteSession("world", playerIds);
+                for (int p = 0; p < PLAYERS; p++) {
+                    session.vote(playerIds.get(p), (p & 1) == 0);
+                }
+                assertTrue(session.haveAllPlayersVoted());
+                sessions[i] = session;
+            }
+            return sessions;
+        });
+
+        assertTrue(ledgerBytes < legacyBytes * 0.6,
+                "ledger retained " + ledgerBytes + "B vs legacy " + legacyBytes + "B");
+    }
+}
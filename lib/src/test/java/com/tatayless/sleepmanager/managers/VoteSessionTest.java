@@ -0,0 +1,72 @@
+package com.tatayless.sleepmanager.managers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VoteSessionTest {
+
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+    private final UUID lateJoiner = UUID.randomUUID();
+
+    @Test
+    void vote_updatesTalliesIncrementally() {
+        VoteSession session = new VoteSession("world", List.of(alice, bob));
+
+        session.vote(alice, true);
+        assertEquals(1, session.countYesVotes());
+        assertEquals(1, session.getRemainingVotes());
+        assertFalse(session.haveAllPlayersVoted());
+
+        session.vote(bob, false);
+        assertEquals(1, session.countNoVotes());
+        assertEquals(2, session.getTotalVotes());
+        assertTrue(session.haveAllPlayersVoted());
+    }
+
+    @Test
+    void vote_changedVoteMovesTallyWithoutCountingTwice() {
+        VoteSession session = new VoteSession("world", List.of(alice, bob));
+
+        session.vote(alice, true);
+        session.vote(alice, false);
+        session.vote(alice, false);
+
+        assertEquals(0, session.countYesVotes());
+        assertEquals(1, session.countNoVotes());
+        assertEquals(1, session.getRemainingVotes());
+    }
+
+    @Test
+    void vote_ineligibleVoterCountsButDoesNotCompleteVote() {
+        VoteSession session = new VoteSession("world", List.of(alice));
+
+        session.vote(lateJoiner, true);
+
+        assertEquals(1, session.getTotalVotes());
+        assertFalse(session.haveAllPlayersVoted());
+    }
+
+    @Test
+    void haveAllPlayersVoted_emptySessionNeverCompletes() {
+        assertFalse(new VoteSession("world", List.<UUID>of()).haveAllPlayersVoted());
+    }
+
+    @Test
+    void vote_manyLateVotersGrowTheLedger() {
+        VoteSession session = new VoteSession("world", List.of(alice));
+
+        for (int i = 0; i < 300; i++) {
+            session.vote(UUID.randomUUID(), i % 3 == 0);
+        }
+        session.vote(alice, true);
+
+        assertEquals(101, session.countYesVotes());
+        assertEquals(301, session.getTotalVotes());
+        assertTrue(session.haveAllPlayersVoted());
+    }
+}
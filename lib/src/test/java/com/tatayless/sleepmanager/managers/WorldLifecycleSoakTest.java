@@ -0,0 +1,81 @@
+package com.tatayless.sleepmanager.managers;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.scheduling.TaskDispatcher;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.Probe;
+import com.tatayless.sleepmanager.stats.RollingCounter;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Loads and unloads many short-lived worlds, as a minigame server does, and
+ * checks that nothing is kept for them beyond the bounded archive. Counts
+ * what is still tracked rather than measuring the heap, which depends on the
+ * JVM and collector.
+ */
+public class WorldLifecycleSoakTest {
+    private static final int WORLDS = 100_000;
+
+    private final WorldStateRegistry worldStates = new WorldStateRegistry();
+    private final StatsRecorder stats = new StatsRecorder();
+    private VoteManager voteManager;
+
+    // The world currently being cycled; the one stub World answers for it
+    private String worldName;
+    private UUID worldUid;
+
+    @Test
+    void loadingAndUnloadingWorlds_keepsOnlyTheBoundedArchive() {
+        SleepManager plugin = mock(SleepManager.class, withSettings().stubOnly());
+        TaskDispatcher dispatcher = mock(TaskDispatcher.class, withSettings().stubOnly());
+        when(dispatcher.runRepeating(any(), anyLong(), anyLong()))
+                .thenReturn(mock(TaskDispatcher.ScheduledTask.class, withSettings().stubOnly()));
+        when(plugin.getWorldStates()).thenReturn(worldStates);
+        when(plugin.getStats()).thenReturn(stats);
+        when(plugin.getDispatcher()).thenReturn(dispatcher);
+        when(plugin.getTickHealth()).thenReturn(mock(TickHealthMonitor.class, withSettings().stubOnly()));
+        voteManager = new VoteManager(plugin);
+        stats.setEnabled(true);
+
+        World world = mock(World.class, withSettings().stubOnly());
+        when(world.getName()).thenAnswer(invocation -> worldName);
+        when(world.getUID()).thenAnswer(invocation -> worldUid);
+        when(world.getEnvironment()).thenReturn(World.Environment.NORMAL);
+
+        cycle(world, WORLDS);
+
+        assertTrue(worldStates.all().isEmpty());
+        assertEquals(WorldStateRegistry.DEFAULT_ARCHIVE_SIZE, worldStates.getArchivedCount());
+        assertTrue(voteManager.getTimers().isEmpty());
+        assertEquals(0, stats.getCount(Probe.BED_ENTER, "match_0", RollingCounter.ONE_MINUTE));
+        assertEquals(0, stats.getCount(Probe.BED_ENTER, "match_" + (WORLDS - 1), RollingCounter.ONE_MINUTE));
+    }
+
+    // Each world is loaded, used a little, and unloaded; every tenth one has state worth archiving
+    private void cycle(World world, int count) {
+        for (int i = 0; i < count; i++) {
+            worldName = "match_" + i;
+            worldUid = new UUID(0L, i);
+
+            WorldSleepState state = worldStates.load(world);
+            voteManager.requestNightSkip(worldName);
+            stats.record(Probe.BED_ENTER, worldName, stats.begin());
+            if (i % 10 == 0) {
+                state.setLastVotePercentage(75.0);
+            } else {
+                // A passed vote alone isn't worth archiving
+                state.setSleepEnabled(true);
+            }
+
+            voteManager.unloadWorld(world);
+        }
+    }
+}
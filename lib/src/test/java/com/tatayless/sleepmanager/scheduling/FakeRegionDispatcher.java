@@ -0,0 +1,112 @@
+package com.tatayless.sleepmanager.scheduling;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * A stand-in for a region-threaded server: one global thread plus a few
+ * region threads, with each player owned by a fixed region. A tick is one
+ * millisecond. Exceptions thrown by tasks are collected instead of lost.
+ */
+public class FakeRegionDispatcher implements TaskDispatcher, AutoCloseable {
+    private final ScheduledExecutorService global;
+    private final ExecutorService[] regions;
+    private final ThreadLocal<Integer> currentRegion = new ThreadLocal<>();
+    private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+
+    public FakeRegionDispatcher(int regionCount) {
+        global = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(() -> {
+            currentRegion.set(-1);
+            runnable.run();
+        }, "fake-global"));
+        regions = new ExecutorService[regionCount];
+        for (int i = 0; i < regionCount; i++) {
+            int region = i;
+            regions[i] = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+                currentRegion.set(region);
+                runnable.run();
+            }, "fake-region-" + region));
+        }
+    }
+
+    @Override
+    public ScheduledTask runRepeating(Runnable task, long delayTicks, long periodTicks) {
+        ScheduledFuture<?> future = global.scheduleAtFixedRate(guard(task), delayTicks, periodTicks,
+                TimeUnit.MILLISECONDS);
+        return () -> future.cancel(false);
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        if (Integer.valueOf(-1).equals(currentRegion.get())) {
+            task.run();
+        } else {
+            global.execute(guard(task));
+        }
+    }
+
+    @Override
+    public void runForWorld(World world, Runnable task) {
+        if (Integer.valueOf(-1).equals(currentRegion.get())) {
+            task.run();
+        } else {
+            global.execute(guard(task));
+        }
+    }
+
+    @Override
+    public void runForPlayer(Player player, Runnable task) {
+        int region = regionOf(player);
+        if (Integer.valueOf(region).equals(currentRegion.get())) {
+            task.run();
+        } else {
+            regions[region].execute(guard(task));
+        }
+    }
+
+    @Override
+    public boolean isRegionThreaded() {
+        return true;
+    }
+
+    public int regionOf(Player player) {
+        return Math.floorMod(player.getUniqueId().hashCode(), regions.length);
+    }
+
+    /**
+     * Waits until every task queued so far on every thread has run
+     */
+    public void awaitIdle() throws Exception {
+        global.submit(() -> {
+        }).get(10, TimeUnit.SECONDS);
+        for (ExecutorService region : regions) {
+            region.submit(() -> {
+            }).get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    public List<Throwable> getFailures() {
+        return failures;
+    }
+
+    @Override
+    public void close() {
+        global.shutdownNow();
+        for (ExecutorService region : regions) {
+            region.shutdownNow();
+        }
+    }
+
+    private Runnable guard(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failures.add(t);
+            }
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package com.tatayless.sleepmanager.scheduling;
+
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor.LoadLevel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class TickHealthMonitorTest {
+    private static final long MILLIS = 1_000_000L;
+
+    private TickHealthMonitor monitor;
+    private final List<LoadLevel> changes = new ArrayList<>();
+    private long now = 1_000L * MILLIS;
+
+    @BeforeEach
+    void setUp() {
+        monitor = new TickHealthMonitor(mock(TaskDispatcher.class), Logger.getLogger("TickHealthMonitorTest"),
+                60, 100);
+        monitor.addListener(changes::add);
+        monitor.sample(now);
+    }
+
+    @Test
+    void sample_healthyTicksStayNormal() {
+        ticks(200, 50);
+
+        assertEquals(LoadLevel.NORMAL, monitor.getLevel());
+        assertEquals(50.0, monitor.getMspt(), 0.001);
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    void sample_sustainedLagDegradesThenRecovers() {
+        ticks(100, 80);
+        assertEquals(LoadLevel.DEGRADED, monitor.getLevel());
+        assertTrue(monitor.isDegraded());
+
+        ticks(200, 150);
+        assertEquals(LoadLevel.CRITICAL, monitor.getLevel());
+
+        ticks(200, 50);
+        assertEquals(LoadLevel.NORMAL, monitor.getLevel());
+        assertEquals(List.of(LoadLevel.DEGRADED, LoadLevel.CRITICAL, LoadLevel.DEGRADED, LoadLevel.NORMAL),
+                changes);
+        assertEquals(2, monitor.getTransitions(LoadLevel.DEGRADED));
+        assertEquals(1, monitor.getTransitions(LoadLevel.CRITICAL));
+    }
+
+    @Test
+    void sample_singleSpikeIsSmoothedOut() {
+        ticks(100, 50);
+        ticks(1, 200);
+
+        assertEquals(LoadLevel.NORMAL, monitor.getLevel());
+    }
+
+    @Test
+    void sample_hoveringAroundThresholdDoesNotFlap() {
+        ticks(200, 62);
+        assertEquals(LoadLevel.DEGRADED, monitor.getLevel());
+
+        // Just under the threshold, but not clearly enough to recover
+        ticks(200, 58);
+        assertEquals(LoadLevel.DEGRADED, monitor.getLevel());
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    void start_doesNothingWithThresholdsOff() {
+        TaskDispatcher dispatcher = mock(TaskDispatcher.class);
+        TickHealthMonitor off = new TickHealthMonitor(dispatcher, Logger.getLogger("TickHealthMonitorTest"), 0, 0);
+
+        off.start();
+
+        org.mockito.Mockito.verifyNoInteractions(dispatcher);
+    }
+
+    private void ticks(int count, long millis) {
+        for (int i = 0; i < count; i++) {
+            now += millis * MILLIS;
+            monitor.sample(now);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.tatayless.sleepmanager.stats;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatsRecorderTest {
+
+    @Test
+    void disabledRecorder_recordsNothing() {
+        StatsRecorder stats = new StatsRecorder();
+
+        long start = stats.begin();
+        stats.record(Probe.VOTE_START, "world", start);
+
+        assertEquals(0L, start);
+        assertEquals(0, stats.getTimings(Probe.VOTE_START).getCount());
+        assertEquals(0, stats.getCount(Probe.VOTE_START, RollingCounter.FIFTEEN_MINUTES));
+        assertEquals(0, stats.getCount(Probe.VOTE_START, "world", RollingCounter.FIFTEEN_MINUTES));
+    }
+
+    @Test
+    void enabledRecorder_countsPerProbeAndWorld() {
+        StatsRecorder stats = new StatsRecorder();
+        stats.setEnabled(true);
+
+        stats.record(Probe.VOTE_START, "world", stats.begin());
+        stats.record(Probe.VOTE_START, "world_nether", stats.begin());
+        stats.record(Probe.BROADCAST, stats.begin());
+
+        assertEquals(2, stats.getCount(Probe.VOTE_START, RollingCounter.ONE_MINUTE));
+        assertEquals(1, stats.getCount(Probe.VOTE_START, "world", RollingCounter.ONE_MINUTE));
+        assertEquals(0, stats.getCount(Probe.VOTE_END, "world", RollingCounter.ONE_MINUTE));
+        assertEquals(1, stats.getTimings(Probe.BROADCAST).getCount());
+    }
+
+    @Test
+    void rollingCounter_dropsSlotsOutsideTheWindow() {
+        RollingCounter counter = new RollingCounter();
+        long slot = RollingCounter.SLOT_NANOS;
+
+        counter.increment(0);
+        counter.increment(slot * 3);
+        counter.increment(slot * 10);
+        counter.increment(slot * 10 + 1);
+
+        assertEquals(2, counter.sum(RollingCounter.ONE_MINUTE, slot * 10));
+        assertEquals(4, counter.sum(RollingCounter.FIVE_MINUTES, slot * 10));
+        // 15 minutes later every earlier slot has aged out
+        assertEquals(0, counter.sum(RollingCounter.FIFTEEN_MINUTES, slot * 100));
+
+        // A slot reused by a later period starts from zero
+        counter.increment(slot * 91);
+        assertEquals(1, counter.sum(RollingCounter.ONE_MINUTE, slot * 91));
+    }
+
+    @Test
+    void latencyHistogram_percentilesStayWithinABucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+
+        long p50 = histogram.getPercentile(50);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 1.125, "p50 was " + p50);
+        assertTrue(p99 >= 990_000 && p99 <= 1_000_000, "p99 was " + p99);
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(1000, histogram.getCount());
+    }
+
+    @Test
+    void latencyHistogram_bucketBoundsCoverEveryValue() {
+        long[] values = { 0, 1, 7, 8, 9, 15, 16, 17, 1023, 1024, 123_456_789L, Long.MAX_VALUE };
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.upperBound(bucket) >= value, "upper bound below " + value);
+            if (bucket > 0) {
+                assertTrue(LatencyHistogram.upperBound(bucket - 1) < value, "previous bucket holds " + value);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.tatayless.sleepmanager.sync;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SyncCodecTest {
+    private static final long ORIGIN = 0x5EED_0001L;
+    private static final long OTHER = 0x5EED_0002L;
+
+    @Test
+    void decode_returnsEveryOpGroupedByWorld() {
+        UUID player = UUID.randomUUID();
+        List<SyncOp> ops = List.of(
+                SyncOp.start("world", new Stamp(1_000_000L, ORIGIN)),
+                SyncOp.vote("world", new Stamp(1_000_002L, ORIGIN), player, true),
+                SyncOp.sleep("world_nether", new Stamp(1_000_003L, ORIGIN), false, true),
+                SyncOp.end("world", new Stamp(1_000_004L, ORIGIN), new Stamp(999_998L, OTHER), false));
+
+        List<SyncOp> decoded = SyncCodec.decode(SyncCodec.encode(ORIGIN, ops));
+
+        assertEquals(4, decoded.size());
+        SyncOp start = decoded.get(0);
+        assertEquals(SyncOp.Type.START, start.getType());
+        assertEquals(new Stamp(1_000_000L, ORIGIN), start.getStamp());
+
+        SyncOp vote = decoded.get(1);
+        assertEquals(SyncOp.Type.VOTE, vote.getType());
+        assertEquals(player, vote.getPlayerId());
+        assertTrue(vote.getFlag());
+
+        SyncOp end = decoded.get(2);
+        assertEquals(SyncOp.Type.END, end.getType());
+        assertEquals("world", end.getWorldName());
+        assertEquals(new Stamp(999_998L, OTHER), end.getSession());
+        assertFalse(end.getFlag());
+
+        SyncOp sleep = decoded.get(3);
+        assertEquals(SyncOp.Type.SLEEP, sleep.getType());
+        assertEquals("world_nether", sleep.getWorldName());
+        assertFalse(sleep.getFlag());
+        assertTrue(sleep.isSkipNight());
+    }
+
+    @Test
+    void encode_votesCostAFewBytesBeyondThePlayerId() {
+        SyncOp[] votes = new SyncOp[100];
+        for (int i = 0; i < votes.length; i++) {
+            votes[i] = SyncOp.vote("world", new Stamp(5_000_000L + i, ORIGIN), UUID.randomUUID(), i % 2 == 0);
+        }
+
+        byte[] batch = SyncCodec.encode(ORIGIN, Arrays.asList(votes));
+
+        // Header and world name, then a header byte, a one-byte clock delta and 16 bytes each
+        assertTrue(batch.length <= 32 + votes.length * 18, "batch was " + batch.length + " bytes");
+    }
+
+    @Test
+    void decode_rejectsTruncatedAndUnknownBatches() {
+        byte[] batch = SyncCodec.encode(ORIGIN, List.of(
+                SyncOp.vote("world", new Stamp(7L, ORIGIN), UUID.randomUUID(), true)));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> SyncCodec.decode(Arrays.copyOf(batch, batch.length - 3)));
+
+        batch[0] = 99;
+        assertThrows(IllegalArgumentException.class, () -> SyncCodec.decode(batch));
+    }
+
+    @Test
+    void coalesce_keepsLatestVotePerPlayerWithinAVote() {
+        UUID player = UUID.randomUUID();
+        SyncOp firstVote = SyncOp.vote("world", new Stamp(1L, ORIGIN), player, true);
+        SyncOp secondVote = SyncOp.vote("world", new Stamp(2L, ORIGIN), player, false);
+        SyncOp end = SyncOp.end("world", new Stamp(3L, ORIGIN), new Stamp(0L, ORIGIN), false);
+        SyncOp start = SyncOp.start("world", new Stamp(4L, ORIGIN));
+        SyncOp nextVote = SyncOp.vote("world", new Stamp(5L, ORIGIN), player, true);
+        SyncOp lastVote = SyncOp.vote("world", new Stamp(6L, ORIGIN), player, true);
+
+        assertEquals(List.of(secondVote, end, start, lastVote),
+                VoteSync.coalesce(List.of(firstVote, secondVote, end, start, nextVote, lastVote)));
+    }
+}
@@ -0,0 +1,165 @@
+package com.tatayless.sleepmanager.utils;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.scheduling.BukkitTaskDispatcher;
+import net.md_5.bungee.api.chat.BaseComponent;
+import net.md_5.bungee.api.chat.TextComponent;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BroadcastSchedulerTest {
+
+    @Mock
+    private SleepManager plugin;
+    @Mock
+    private BukkitScheduler scheduler;
+    @Mock
+    private BukkitTask task;
+
+    private final BaseComponent[] prompt = { new TextComponent("prompt") };
+    private List<Player> players;
+    private List<Player.Spigot> spigots;
+
+    @BeforeEach
+    void setUp() {
+        players = new ArrayList<>();
+        spigots = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Player player = mock(Player.class);
+            Player.Spigot spigot = mock(Player.Spigot.class);
+            lenient().when(player.spigot()).thenReturn(spigot);
+            lenient().when(player.isOnline()).thenReturn(true);
+            players.add(player);
+            spigots.add(spigot);
+        }
+    }
+
+    @Test
+    void submit_withinBudget_sendsInline() {
+        BroadcastScheduler broadcasts = new BroadcastScheduler(new BukkitTaskDispatcher(plugin), 10, 0);
+
+        try (MockedStatic<Bukkit> bukkit = mockStatic(Bukkit.class)) {
+            broadcasts.submit(prompt, players);
+
+            for (Player.Spigot spigot : spigots) {
+                verify(spigot).sendMessage(same(prompt));
+            }
+            bukkit.verifyNoInteractions();
+        }
+    }
+
+    @Test
+    void submit_overBudget_spreadsOverTicksAndKeepsOrder() {
+        BroadcastScheduler broadcasts = new BroadcastScheduler(new BukkitTaskDispatcher(plugin), 2, 0);
+
+        try (MockedStatic<Bukkit> bukkit = mockStatic(Bukkit.class)) {
+            bukkit.when(Bukkit::getScheduler).thenReturn(scheduler);
+            ArgumentCaptor<Runnable> drain = ArgumentCaptor.forClass(Runnable.class);
+            when(scheduler.runTaskTimer(eq(plugin), drain.capture(), eq(1L), eq(1L))).thenReturn(task);
+
+            broadcasts.submit(prompt, players);
+            broadcasts.submit("result", players);
+
+            // First tick: only the first two prompts go out
+            verify(spigots.get(0)).sendMessage(same(prompt));
+            verify(spigots.get(1)).sendMessage(same(prompt));
+            verify(spigots.get(2), never()).sendMessage(any(BaseComponent[].class));
+            verify(players.get(0), never()).sendMessage(anyString());
+            assertEquals(2, broadcasts.getQueuedDeliveries());
+
+            // Following ticks drain the rest, prompt before result for every player
+            for (int tick = 0; tick < 4; tick++) {
+                drain.getValue().run();
+            }
+
+            for (int i = 0; i < players.size(); i++) {
+                InOrder inOrder = inOrder(spigots.get(i), players.get(i));
+                inOrder.verify(spigots.get(i)).sendMessage(same(prompt));
+                inOrder.verify(players.get(i)).sendMessage("result");
+            }
+            assertEquals(0, broadcasts.getQueuedDeliveries());
+            verify(task).cancel();
+            verify(scheduler, times(1)).runTaskTimer(eq(plugin), any(Runnable.class), anyLong(), anyLong());
+        }
+    }
+
+    @Test
+    void drain_skipsPlayersWhoLeft() {
+        BroadcastScheduler broadcasts = new BroadcastScheduler(new BukkitTaskDispatcher(plugin), 1, 0);
+
+        try (MockedStatic<Bukkit> bukkit = mockStatic(Bukkit.class)) {
+            bukkit.when(Bukkit::getScheduler).thenReturn(scheduler);
+            ArgumentCaptor<Runnable> drain = ArgumentCaptor.forClass(Runnable.class);
+            when(scheduler.runTaskTimer(eq(plugin), drain.capture(), eq(1L), eq(1L))).thenReturn(task);
+
+            broadcasts.submit("night skipped", players.subList(0, 2));
+            when(players.get(1).isOnline()).thenReturn(false);
+            drain.getValue().run();
+
+            verify(players.get(0)).sendMessage("night skipped");
+            verify(players.get(1), never()).sendMessage(anyString());
+        }
+    }
+
+    @Test
+    void drain_tinyTimeBudget_stillSendsOneMessageEachTick() {
+        BroadcastScheduler broadcasts = new BroadcastScheduler(new BukkitTaskDispatcher(plugin), 0, 1L);
+
+        try (MockedStatic<Bukkit> bukkit = mockStatic(Bukkit.class)) {
+            bukkit.when(Bukkit::getScheduler).thenReturn(scheduler);
+            ArgumentCaptor<Runnable> drain = ArgumentCaptor.forClass(Runnable.class);
+            when(scheduler.runTaskTimer(eq(plugin), drain.capture(), eq(1L), eq(1L))).thenReturn(task);
+
+            broadcasts.submit("result", players);
+            verify(players.get(0)).sendMessage("result");
+            verify(players.get(1), never()).sendMessage(anyString());
+
+            drain.getValue().run();
+            verify(players.get(1)).sendMessage("result");
+            verify(players.get(2), never()).sendMessage(anyString());
+
+            // Halving 1ns must not turn into no limit
+            broadcasts.setThrottled(true);
+            drain.getValue().run();
+            verify(players.get(2)).sendMessage("result");
+            verify(players.get(3), never()).sendMessage(anyString());
+        }
+    }
+
+    @Test
+    void flush_sendsEverythingQueued() {
+        BroadcastScheduler broadcasts = new BroadcastScheduler(new BukkitTaskDispatcher(plugin), 1, 0);
+
+        try (MockedStatic<Bukkit> bukkit = mockStatic(Bukkit.class)) {
+            bukkit.when(Bukkit::getScheduler).thenReturn(scheduler);
+            when(scheduler.runTaskTimer(eq(plugin), any(Runnable.class), eq(1L), eq(1L))).thenReturn(task);
+
+            broadcasts.submit("result", players);
+            broadcasts.flush();
+
+            for (Player player : players) {
+                verify(player).sendMessage("result");
+            }
+            verify(task).cancel();
+            assertEquals(0, broadcasts.getQueuedDeliveries());
+        }
+    }
+}
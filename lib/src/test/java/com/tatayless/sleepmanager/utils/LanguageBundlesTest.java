@@ -0,0 +1,99 @@
+package com.tatayless.sleepmanager.utils;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.cache.BinaryCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class LanguageBundlesTest {
+
+    @Mock
+    private SleepManager plugin;
+    @TempDir
+    File dataFolder;
+
+    private final MessageCatalog defaultCatalog = MessageCatalog.compile(null);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        lenient().when(plugin.getDataFolder()).thenReturn(dataFolder);
+        File lang = new File(dataFolder, "lang");
+        lang.mkdirs();
+        for (String language : List.of("en", "de", "fr", "pt", "es")) {
+            Files.writeString(new File(lang, language + ".yml").toPath(), "sleep:\n  night_skipped: \"" + language + "\"\n");
+        }
+    }
+
+    @Test
+    void get_resolvesRegionalLocalesToTheirLanguage() {
+        LanguageBundles bundles = new LanguageBundles(plugin, "en", 4);
+
+        assertSame(defaultCatalog, bundles.get(null, defaultCatalog));
+        assertSame(defaultCatalog, bundles.get("en_us", defaultCatalog));
+        assertSame(defaultCatalog, bundles.get("xx_yy", defaultCatalog));
+        assertSame(bundles.get("pt_br", defaultCatalog), bundles.get("pt_pt", defaultCatalog));
+        assertNotSame(defaultCatalog, bundles.get("pt_br", defaultCatalog));
+
+        // The default bundle is never counted against the cache
+        assertEquals(1, bundles.getLoadedCount());
+    }
+
+    @Test
+    void get_evictsLeastRecentlyUsedBundle() {
+        LanguageBundles bundles = new LanguageBundles(plugin, "en", 2);
+
+        MessageCatalog german = bundles.get("de_de", defaultCatalog);
+        MessageCatalog french = bundles.get("fr_fr", defaultCatalog);
+        assertSame(german, bundles.get("de_de", defaultCatalog));
+
+        // French was used least recently, so Spanish takes its place
+        bundles.get("es_es", defaultCatalog);
+        assertEquals(2, bundles.getLoadedCount());
+        assertSame(german, bundles.get("de_de", defaultCatalog));
+        assertNotSame(french, bundles.get("fr_fr", defaultCatalog));
+    }
+
+    @Test
+    void exists_rejectsPathsOutsideLang() {
+        LanguageBundles bundles = new LanguageBundles(plugin, "en", 2);
+
+        assertTrue(bundles.exists("de"));
+        assertFalse(bundles.exists("../config"));
+        assertFalse(bundles.exists("it"));
+        assertEquals(List.of("de", "en", "es", "fr", "pt"), bundles.getAvailable());
+    }
+
+    @Test
+    void read_parsesOnceThenServesTheCachedMessages() {
+        BinaryCache cache = new BinaryCache(new File(dataFolder, "cache"), Logger.getLogger("LanguageBundlesTest"));
+        File file = new File(dataFolder, "lang/de.yml");
+
+        String[] parsed = LanguageBundles.read(file, "de", cache);
+        String[] cached = LanguageBundles.read(file, "de", cache);
+
+        assertArrayEquals(parsed, cached);
+        assertEquals(MessageKey.values().length, cached.length);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void normalize_lowercasesAndUsesUnderscores() {
+        assertEquals("pt_br", LanguageBundles.normalize("pt-BR"));
+        assertNull(LanguageBundles.normalize(""));
+    }
+}
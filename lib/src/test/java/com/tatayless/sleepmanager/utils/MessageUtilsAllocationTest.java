@@ -0,0 +1,64 @@
+package com.tatayless.sleepmanager.utils;
+
+import com.tatayless.sleepmanager.SleepManager;
+import com.tatayless.sleepmanager.config.ConfigManager;
+import com.tatayless.sleepmanager.scheduling.TaskDispatcher;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import static com.tatayless.sleepmanager.AllocationBudget.assertWithinBudget;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Heap allocated per rendered message, against the budgets in
+ * allocation-budgets.properties. Uses the bundled English file.
+ */
+public class MessageUtilsAllocationTest {
+    private static final String WORLD_NAME = "world";
+
+    @TempDir
+    File dataFolder;
+
+    private MessageUtils messageUtils;
+
+    @BeforeEach
+    void setUp() {
+        SleepManager plugin = mock(SleepManager.class, withSettings().stubOnly());
+        ConfigManager configManager = mock(ConfigManager.class, withSettings().stubOnly());
+        when(configManager.getLanguage()).thenReturn("en");
+        when(configManager.getLanguageCacheSize()).thenReturn(8);
+        when(plugin.getConfigManager()).thenReturn(configManager);
+        when(plugin.getStats()).thenReturn(new StatsRecorder());
+        when(plugin.getDispatcher()).thenReturn(mock(TaskDispatcher.class, withSettings().stubOnly()));
+        when(plugin.getTickHealth()).thenReturn(mock(TickHealthMonitor.class, withSettings().stubOnly()));
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("MessageUtilsAllocationTest"));
+        // Read straight from the jar; the copy into the data folder is skipped
+        when(plugin.getResource(anyString())).thenAnswer(
+                invocation -> SleepManager.class.getClassLoader().getResourceAsStream(invocation.getArgument(0)));
+        messageUtils = new MessageUtils(plugin);
+    }
+
+    @Test
+    void cachedMessages_allocateNothing() {
+        assertWithinBudget("message-utils.message", () -> messageUtils.getMessage(MessageKey.VOTE_VOTED_YES));
+        assertWithinBudget("message-utils.vote-prompt", () -> messageUtils.getCatalog().getVotePrompt(WORLD_NAME));
+        assertWithinBudget("message-utils.plain-vote-prompt",
+                () -> messageUtils.getCatalog().getPlainVotePrompt(WORLD_NAME));
+    }
+
+    @Test
+    void voteResult_allocatesOnlyTheRenderedString() {
+        // What renderVoteResult does once it has the percentage, which it reads through the plugin
+        CompiledMessage passed = messageUtils.getCatalog().get(MessageKey.VOTE_PASSED);
+        assertWithinBudget("message-utils.vote-result",
+                () -> passed.render(WORLD_NAME, MessageUtils.formatPercent(75.0)));
+    }
+}
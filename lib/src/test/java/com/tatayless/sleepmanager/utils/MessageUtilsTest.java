@@ -3,18 +3,30 @@ package com.tatayless.sleepmanager.utils;
 import com.tatayless.sleepmanager.SleepManager;
 import com.tatayless.sleepmanager.config.ConfigManager;
 import com.tatayless.sleepmanager.managers.VoteManager;
+import com.tatayless.sleepmanager.scheduling.BukkitTaskDispatcher;
+import com.tatayless.sleepmanager.scheduling.TickHealthMonitor;
+import com.tatayless.sleepmanager.stats.StatsRecorder;
+import net.md_5.bungee.api.chat.BaseComponent;
 import org.bukkit.World;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
+import org.bukkit.persistence.PersistentDataContainer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -26,13 +38,15 @@ public class MessageUtilsTest {
     @Mock
     private SleepManager plugin;
     @Mock
+    private TickHealthMonitor tickHealth;
+    @Mock
     private ConfigManager configManager;
     @Mock
     private VoteManager voteManager;
     @Mock
     private YamlConfiguration langConfig;
-    @Mock
-    private File dataFolder;
+    @TempDir
+    File dataFolder;
     @Mock
     private World world;
     @Mock
@@ -41,32 +55,42 @@ public class MessageUtilsTest {
     @BeforeEach
     void setUp() {
         when(plugin.getConfigManager()).thenReturn(configManager);
-        when(plugin.getVoteManager()).thenReturn(voteManager);
+        lenient().when(plugin.getVoteManager()).thenReturn(voteManager);
+        lenient().when(plugin.getStats()).thenReturn(new StatsRecorder());
+        lenient().when(plugin.getTickHealth()).thenReturn(tickHealth);
+        lenient().when(plugin.getDispatcher()).thenReturn(new BukkitTaskDispatcher(plugin));
         when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("SleepManagerTest"));
+        when(configManager.getLanguage()).thenReturn("en");
 
         // Create a spy on MessageUtils to avoid actual file operations
         messageUtils = spy(new MessageUtils(plugin));
 
         // Mock loadLanguage
-        doNothing().when(messageUtils).loadLanguage();
+        lenient().doNothing().when(messageUtils).loadLanguage();
     }
 
     @Test
     void getMessage_returnsFormattedMessage() {
-        // Setup the test using reflection to set langConfig
-        try {
-            java.lang.reflect.Field langConfigField = MessageUtils.class.getDeclaredField("langConfig");
-            langConfigField.setAccessible(true);
-            langConfigField.set(messageUtils, langConfig);
+        when(langConfig.getString(anyString())).thenReturn(null);
+        when(langConfig.getString("test.key")).thenReturn("&aTest message");
+        useLanguage();
 
-            when(langConfig.getString("test.key")).thenReturn("&aTest message");
+        String result = messageUtils.getMessage("test.key");
+        assertEquals("§aTest message", result);
+    }
 
-            String result = messageUtils.getMessage("test.key");
-            assertEquals("§aTest message", result);
-        } catch (Exception e) {
-            // Handle the exception or fail the test
-            throw new RuntimeException(e);
-        }
+    @Test
+    void getMessage_knownPathUsesCompiledCatalog() {
+        when(langConfig.getString(anyString())).thenReturn(null);
+        when(langConfig.getString("vote.voted_yes")).thenReturn("&aYou voted &2YES");
+        useLanguage();
+
+        // Compiled once; string lookups for known paths no longer hit the YAML tree
+        clearInvocations(langConfig);
+        assertEquals("§aYou voted §2YES", messageUtils.getMessage("vote.voted_yes"));
+        assertSame(messageUtils.getMessage(MessageKey.VOTE_VOTED_YES), messageUtils.getMessage("vote.voted_yes"));
+        verifyNoInteractions(langConfig);
     }
 
     @Test
@@ -81,16 +105,15 @@ public class MessageUtilsTest {
 
     @Test
     void sendVoteMessage_sendsInteractiveMessage() {
-        // Setup MessageUtils to return known messages
-        doReturn("Vote for night skip").when(messageUtils).getMessage("vote.prompt");
-        doReturn("Yes").when(messageUtils).getMessage("vote.yes_button");
-        doReturn("Hover for yes").when(messageUtils).getMessage("vote.yes_hover");
-        doReturn("No").when(messageUtils).getMessage("vote.no_button");
-        doReturn("Hover for no").when(messageUtils).getMessage("vote.no_hover");
+        when(langConfig.getString(anyString())).thenReturn(null);
+        when(langConfig.getString("vote.prompt")).thenReturn("Vote for night skip in {world}");
+        when(langConfig.getString("vote.yes_button")).thenReturn("Yes");
+        when(langConfig.getString("vote.yes_hover")).thenReturn("Hover for yes");
+        when(langConfig.getString("vote.no_button")).thenReturn("No");
+        when(langConfig.getString("vote.no_hover")).thenReturn("Hover for no");
+        useLanguage();
 
         // Mock player.spigot() for interactive components
-        @SuppressWarnings("unused")
-        net.md_5.bungee.api.chat.BaseComponent[] components = new net.md_5.bungee.api.chat.BaseComponent[0];
         Player.Spigot spigot = mock(Player.Spigot.class);
         when(player.spigot()).thenReturn(spigot);
 
@@ -98,28 +121,137 @@ public class MessageUtilsTest {
         messageUtils.sendVoteMessage(player, "testworld");
 
         // Verify spigot().sendMessage was called (can't verify exact components easily)
-        verify(player.spigot()).sendMessage(any(net.md_5.bungee.api.chat.BaseComponent[].class));
+        verify(spigot).sendMessage(any(net.md_5.bungee.api.chat.BaseComponent[].class));
+    }
+
+    @Test
+    void broadcastVotePrompt_sendsSameComponentsToEveryone() {
+        when(langConfig.getString(anyString())).thenReturn("text");
+        useLanguage();
+
+        Player other = mock(Player.class);
+        Player.Spigot spigot = mock(Player.Spigot.class);
+        Player.Spigot otherSpigot = mock(Player.Spigot.class);
+        when(player.spigot()).thenReturn(spigot);
+        when(other.spigot()).thenReturn(otherSpigot);
+
+        messageUtils.broadcastVotePrompt("testworld", java.util.List.of(player, other));
+        messageUtils.sendVoteMessage(player, "testworld");
+
+        BaseComponent[] prompt = messageUtils.getCatalog().getVotePrompt("testworld");
+        verify(spigot, times(2)).sendMessage(same(prompt));
+        verify(otherSpigot).sendMessage(same(prompt));
+    }
+
+    @Test
+    void broadcastVotePrompt_serverBehind_sendsPlainChat() {
+        when(tickHealth.isDegraded()).thenReturn(true);
+        when(langConfig.getString(anyString())).thenReturn(null);
+        when(langConfig.getString("vote.prompt")).thenReturn("Skip the night in {world}?");
+        when(langConfig.getString("vote.yes_button")).thenReturn("[YES]");
+        when(langConfig.getString("vote.no_button")).thenReturn("[NO]");
+        useLanguage();
+
+        messageUtils.broadcastVotePrompt("testworld", List.of(player));
+        messageUtils.sendVoteMessage(player, "testworld");
+
+        verify(player, times(2)).sendMessage("Skip the night in testworld? [YES]§7 /sleepmanager yes§r | [NO]§7 /sleepmanager no");
+        verify(player, never()).spigot();
     }
 
     @Test
     void sendVoteResult_sendsPassed() {
-        // Setup the test data
+        when(langConfig.getString(anyString())).thenReturn(null);
+        when(langConfig.getString("vote.passed")).thenReturn("Vote passed with {yes_percent}% in {world}");
+        useLanguage();
         when(voteManager.getLastVoteYesPercentage("testworld")).thenReturn(75.0);
-        doReturn("Vote passed with 75% approval").when(messageUtils).getMessage("vote.passed");
 
         messageUtils.sendVoteResult(player, true, "testworld");
 
-        verify(player).sendMessage(anyString());
+        verify(player).sendMessage("Vote passed with 75% in testworld");
     }
 
     @Test
     void sendVoteResult_sendsFailed() {
-        // Setup the test data
-        when(voteManager.getLastVoteYesPercentage("testworld")).thenReturn(25.0);
-        doReturn("Vote failed with only 25% approval").when(messageUtils).getMessage("vote.failed");
+        when(langConfig.getString(anyString())).thenReturn(null);
+        when(langConfig.getString("vote.failed")).thenReturn("Vote failed with only {yes_percent}%");
+        useLanguage();
+        when(voteManager.getLastVoteYesPercentage("testworld")).thenReturn(62.5);
 
         messageUtils.sendVoteResult(player, false, "testworld");
 
-        verify(player).sendMessage(anyString());
+        verify(player).sendMessage("Vote failed with only 63%");
+    }
+
+    @Test
+    void broadcastVotePrompt_rendersOncePerLanguage() throws IOException {
+        writeBundle("de");
+        when(configManager.isPerPlayerLanguage()).thenReturn(true);
+        when(langConfig.getString(anyString())).thenReturn("text");
+        useLanguage();
+
+        Player english = localePlayer("en_us");
+        Player german = localePlayer("de_de");
+        Player austrian = localePlayer("de_at");
+        messageUtils.broadcastVotePrompt("testworld", List.of(english, german, austrian));
+
+        BaseComponent[] defaultPrompt = messageUtils.getCatalog().getVotePrompt("testworld");
+        BaseComponent[] germanPrompt = messageUtils.getCatalog(german).getVotePrompt("testworld");
+        assertNotSame(defaultPrompt, germanPrompt);
+        verify(english.spigot()).sendMessage(same(defaultPrompt));
+        verify(german.spigot()).sendMessage(same(germanPrompt));
+        verify(austrian.spigot()).sendMessage(same(germanPrompt));
+    }
+
+    @Test
+    void getCatalog_overrideTakesPrecedenceOverClientLocale() throws IOException {
+        writeBundle("de");
+        when(configManager.isPerPlayerLanguage()).thenReturn(true);
+        PersistentDataContainer data = mock(PersistentDataContainer.class);
+        when(player.getPersistentDataContainer()).thenReturn(data);
+        when(player.getUniqueId()).thenReturn(java.util.UUID.randomUUID());
+        when(data.get(any(), any())).thenReturn("de");
+
+        messageUtils.updatePlayerLocale(player, "en_us");
+
+        assertNotSame(messageUtils.getCatalog(), messageUtils.getCatalog(player));
+        assertSame(messageUtils.getCatalog(localePlayer("de_ch")), messageUtils.getCatalog(player));
+    }
+
+    @Test
+    void compiledMessage_rendersPlaceholdersInOrder() {
+        CompiledMessage message = CompiledMessage.compile("{yes_percent}% in {world}, {world}!");
+
+        assertEquals("40% in nether, nether!", message.render("nether", "40"));
+        assertEquals("plain", CompiledMessage.compile("plain").render("world", "1"));
+    }
+
+    private void writeBundle(String language) throws IOException {
+        File file = new File(dataFolder, "lang/" + language + ".yml");
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), "vote:\n  prompt: \"" + language + "\"\n");
+    }
+
+    private Player localePlayer(String locale) {
+        Player localePlayer = mock(Player.class);
+        Player.Spigot spigot = mock(Player.Spigot.class);
+        lenient().when(localePlayer.spigot()).thenReturn(spigot);
+        lenient().when(localePlayer.getUniqueId()).thenReturn(java.util.UUID.randomUUID());
+        lenient().when(localePlayer.getLocale()).thenReturn(locale);
+        return localePlayer;
+    }
+
+    // Swap in the mocked language file and compile it like loadLanguage does
+    private void useLanguage() {
+        try {
+            java.lang.reflect.Field languageField = MessageUtils.class.getDeclaredField("language");
+            languageField.setAccessible(true);
+            MessageUtils.Language current = (MessageUtils.Language) languageField.get(messageUtils);
+            languageField.set(messageUtils, new MessageUtils.Language(MessageCatalog.compile(langConfig),
+                    current.bundles, current.file, langConfig));
+        } catch (Exception e) {
+            // Handle the exception or fail the test
+            throw new RuntimeException(e);
+        }
     }
 }